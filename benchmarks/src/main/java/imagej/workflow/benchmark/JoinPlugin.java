@@ -0,0 +1,58 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.benchmark;
+
+import imagej.workflow.plugin.AbstractPlugin;
+import imagej.workflow.plugin.IPlugin;
+import imagej.workflow.plugin.annotations.Input;
+import imagej.workflow.plugin.annotations.Item;
+import imagej.workflow.plugin.annotations.Output;
+
+/**
+ * Fan-in plugin, waits for a pair of inputs and passes the first on.
+ *
+ * @author Aivar Grislis
+ */
+@Input({
+    @Item(name = JoinPlugin.FIRST, type = Item.Type.ITEM),
+    @Item(name = JoinPlugin.SECOND, type = Item.Type.ITEM)
+})
+@Output
+public class JoinPlugin extends AbstractPlugin implements IPlugin {
+    static final String FIRST = "FIRST";
+    static final String SECOND = "SECOND";
+
+    public void process() {
+        Object first = get(FIRST);
+        get(SECOND);
+        put(first);
+    }
+}
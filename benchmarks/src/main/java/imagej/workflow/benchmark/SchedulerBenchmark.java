@@ -0,0 +1,114 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.benchmark;
+
+import imagej.workflow.plugin.ItemQueue;
+import imagej.workflow.plugin.ItemWrapper;
+import imagej.workflow.plugin.PluginScheduler;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the raw cost of passing items through PluginScheduler, without
+ * any plugins or launcher threads.  Each benchmark thread has a queue of its
+ * own; run with -t to see how the scheduler scales with threads, e.g.
+ *   java -jar target/benchmarks.jar SchedulerBenchmark -t 1 -t 4
+ *
+ * @author Aivar Grislis
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SchedulerBenchmark {
+    private static final int BATCH = 100;
+
+    @Param({ "16", "65536" })
+    int payloadSize;
+
+    private PluginScheduler m_scheduler;
+    private ItemQueue m_queue;
+    private byte[] m_payload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        m_payload = new byte[payloadSize];
+        m_scheduler = new PluginScheduler();
+        m_queue = m_scheduler.resolve(Thread.currentThread().getName() + ".INPUT");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        m_scheduler.quit();
+    }
+
+    /**
+     * Puts one item and gets it back.
+     */
+    @Benchmark
+    public Object putGet() {
+        m_scheduler.put("benchmark", "OUTPUT", m_queue, new ItemWrapper(m_payload));
+        return m_scheduler.get(m_queue);
+    }
+
+    /**
+     * Puts a batch of items, then gets them all back.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object putGetBatch() {
+        Object last = null;
+        for (int i = 0; i < BATCH; ++i) {
+            m_scheduler.put("benchmark", "OUTPUT", m_queue, new ItemWrapper(m_payload));
+        }
+        for (int i = 0; i < BATCH; ++i) {
+            last = m_scheduler.get(m_queue);
+        }
+        return last;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.benchmark;
+
+import imagej.workflow.PluginModule;
+import imagej.workflow.Workflow;
+import imagej.workflow.plugin.ItemWrapper;
+import imagej.workflow.plugin.annotations.Input;
+import imagej.workflow.plugin.annotations.Output;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures items per second and per-item latency through a running workflow,
+ * for three shapes of workflow:
+ * <p>
+ * LINEAR:  a chain of pass-through plugins ending in a sink.
+ * FAN_IN:  a split plugin feeding both inputs of a two-input join plugin.
+ * FAN_OUT: one pass-through plugin output wired to two sinks.
+ * <p>
+ * Payload size and the parallelism of every plugin vary as parameters, for
+ * example:
+ *   java -jar target/benchmarks.jar WorkflowBenchmark -p topology=LINEAR -p parallelism=1,8
+ *
+ * @author Aivar Grislis
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class WorkflowBenchmark {
+    private static final int BATCH = 1000;
+
+    public enum Topology { LINEAR, FAN_IN, FAN_OUT };
+
+    @Param({ "LINEAR", "FAN_IN", "FAN_OUT" })
+    Topology topology;
+
+    @Param({ "4" })
+    int stages;
+
+    @Param({ "16", "65536" })
+    int payloadSize;
+
+    @Param({ "1", "4" })
+    int parallelism;
+
+    // sets of inputs each plugin takes at once, without lingering
+    @Param({ "1", "32" })
+    int batchSize;
+
+    // one prioritized pool for the workflow, or threads per plugin
+    @Param({ "true", "false" })
+    boolean sharedPool;
+
+    // single-input plugins run on the thread before them, or queue in between;
+    // only LINEAR with a batch size of 1 has plugins that can be fused
+    @Param({ "true", "false" })
+    boolean fusion;
+
+    private Workflow m_workflow;
+    private byte[] m_payload;
+    private int m_arrivalsPerItem;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        m_payload = new byte[payloadSize];
+        m_workflow = new Workflow();
+        m_workflow.setName("benchmark");
+        m_workflow.setSharedPool(sharedPool);
+        m_workflow.setFusion(fusion);
+        switch (topology) {
+            case LINEAR:
+                buildLinear();
+                break;
+            case FAN_IN:
+                buildFanIn();
+                break;
+            case FAN_OUT:
+                buildFanOut();
+                break;
+        }
+        m_workflow.finalize();
+        SinkPlugin.reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        m_workflow.quit();
+    }
+
+    /**
+     * Pushes a batch of items in and waits until they all come out.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH)
+    public void throughput() throws InterruptedException {
+        for (int i = 0; i < BATCH; ++i) {
+            m_workflow.input(new ItemWrapper(m_payload));
+        }
+        SinkPlugin.await(BATCH * m_arrivalsPerItem);
+    }
+
+    /**
+     * Pushes one item in and waits until it comes out.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void latency() throws InterruptedException {
+        m_workflow.input(new ItemWrapper(m_payload));
+        SinkPlugin.await(m_arrivalsPerItem);
+    }
+
+    private void buildLinear() {
+        PluginModule previous = null;
+        for (int i = 0; i < stages; ++i) {
+            PluginModule pass = add(PassThroughPlugin.class, "pass" + i);
+            if (null != previous) {
+                m_workflow.wire(previous, pass);
+            }
+            previous = pass;
+        }
+        m_workflow.wire(previous, add(SinkPlugin.class, "sink"));
+        m_arrivalsPerItem = 1;
+    }
+
+    private void buildFanIn() {
+        PluginModule split = add(SplitPlugin.class, "split");
+        PluginModule join = add(JoinPlugin.class, "join");
+        m_workflow.wire(split, SplitPlugin.FIRST, join, JoinPlugin.FIRST);
+        m_workflow.wire(split, SplitPlugin.SECOND, join, JoinPlugin.SECOND);
+        m_workflow.wire(join, add(SinkPlugin.class, "sink"));
+        m_arrivalsPerItem = 1;
+    }
+
+    private void buildFanOut() {
+        PluginModule pass = add(PassThroughPlugin.class, "pass");
+        m_workflow.wire(pass, Output.DEFAULT, add(SinkPlugin.class, "sink1"), Input.DEFAULT);
+        m_workflow.wire(pass, Output.DEFAULT, add(SinkPlugin.class, "sink2"), Input.DEFAULT);
+        m_arrivalsPerItem = 2;
+    }
+
+    private PluginModule add(Class<?> pluginClass, String name) {
+        PluginModule module = new PluginModule(pluginClass);
+        module.setName(name);
+        module.setParallelism(parallelism);
+        module.setBatch(batchSize, 0);
+        m_workflow.add(module);
+        return module;
+    }
+}
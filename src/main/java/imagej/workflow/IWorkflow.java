@@ -92,6 +92,42 @@ public interface IWorkflow extends IModule {
      */
     void wire(IModule source, String sourceName, IModule dest, String destName);
 
+    /**
+     * Chains named output of one component to named input of another, through
+     * a queue that holds at most capacity items.  When the queue is full the
+     * source blocks until the destination catches up.
+     * Phase II.
+     *
+     * @param source
+     * @param sourceName
+     * @param dest
+     * @param destName
+     * @param capacity maximum number of waiting items, or Wire.UNBOUNDED,
+     *   which is 0, for no limit
+     * @throws IllegalArgumentException if capacity is negative
+     */
+    void wire(IModule source, String sourceName, IModule dest, String destName, int capacity);
+
+    /**
+     * Chains named output of one component to named input of another, through
+     * a queue that holds at most capacity items.  The destination takes up
+     * to batchSize items from the queue at once, waiting at most lingerMicros
+     * for a batch to fill up, and processes them as one unit.
+     * Phase II.
+     *
+     * @param source
+     * @param sourceName
+     * @param dest
+     * @param destName
+     * @param capacity maximum number of waiting items, or Wire.UNBOUNDED,
+     *   which is 0, for no limit
+     * @param batchSize maximum number of items taken at once or Wire.NO_BATCH
+     * @param lingerMicros how long to wait for a batch to fill up
+     * @throws IllegalArgumentException if capacity or lingerMicros is
+     *   negative, or batchSize is less than 1
+     */
+    void wire(IModule source, String sourceName, IModule dest, String destName, int capacity, int batchSize, int lingerMicros);
+
     /**
      * Gets the current chains.  Should be called after Phase II.
      *
@@ -101,7 +137,11 @@ public interface IWorkflow extends IModule {
 
     /**
      * Leftover, un-wired module inputs and outputs become workflow inputs and
-     * outputs.  Phase II -> III.
+     * outputs.  Phase II -> III.  Only the first successful call before
+     * quit() has any effect.
+     *
+     * @throws IllegalStateException if a wire or workflow input doesn't end
+     *   at a module input or output, or the wires form a cycle
      */
     void finalize();
 
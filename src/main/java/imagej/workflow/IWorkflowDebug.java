@@ -73,4 +73,24 @@ public interface IWorkflowDebug {
      * @return list of preview information
      */
     public List<PreviewInfo> getPreviewInfoList(String instanceId);
+
+    /**
+     * Gets the previews that became ready after a given serial number.  Pass
+     * the serial number of the last preview returned to the next call,
+     * starting with 0.
+     *
+     * @param serial serial number already seen
+     * @return list of new preview information
+     */
+    public List<PreviewInfo> getPreviewInfoListSince(long serial);
+
+    /**
+     * Gets the previews for a given instance that became ready after a given
+     * serial number.
+     *
+     * @param instanceId identifies the instance
+     * @param serial serial number already seen
+     * @return list of new preview information
+     */
+    public List<PreviewInfo> getPreviewInfoListSince(String instanceId, long serial);
 }
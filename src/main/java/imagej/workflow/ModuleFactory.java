@@ -30,10 +30,14 @@
 
 package imagej.workflow;
 
+import imagej.workflow.util.binary.BinaryException;
+import imagej.workflow.util.binary.BinaryReader;
+import imagej.workflow.util.binary.BinaryWriter;
+import imagej.workflow.util.binary.IBinaryWritable;
 import imagej.workflow.util.xmllight.XMLException;
-import imagej.workflow.util.xmllight.XMLParser;
-import imagej.workflow.util.xmllight.XMLTag;
+import imagej.workflow.util.xmllight.XMLReader;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -42,8 +46,11 @@ import java.util.Map;
  * @author Aivar Grislis
  */
 public class ModuleFactory implements IModuleFactory {
+    public static final String XML = "xml";
     private static ModuleFactory s_instance;
     private Map<String, IModuleFactory> m_factories = new HashMap<String, IModuleFactory>();
+    private Map<String, IBinaryModuleFactory> m_binaryFactories = new HashMap<String, IBinaryModuleFactory>();
+    private Map<String, IXMLModuleFactory> m_xmlFactories = new HashMap<String, IXMLModuleFactory>();
     
     private ModuleFactory() {
         register(Workflow.WORKFLOW, WorkflowFactory.getInstance());
@@ -63,8 +70,28 @@ public class ModuleFactory implements IModuleFactory {
         return s_instance;
     }
 
+    /**
+     * Registers a factory for modules with the given tag.  If the factory is
+     * also an IBinaryModuleFactory it is used for binary records with that
+     * tag, if an IXMLModuleFactory for modules nested in XML.
+     *
+     * @param tagName
+     * @param factory
+     */
     public void register(String tagName, IModuleFactory factory) {
         m_factories.put(tagName, factory);
+        if (factory instanceof IBinaryModuleFactory) {
+            m_binaryFactories.put(tagName, (IBinaryModuleFactory) factory);
+        }
+        else {
+            m_binaryFactories.remove(tagName);
+        }
+        if (factory instanceof IXMLModuleFactory) {
+            m_xmlFactories.put(tagName, (IXMLModuleFactory) factory);
+        }
+        else {
+            m_xmlFactories.remove(tagName);
+        }
     }
     
     /**
@@ -88,15 +115,113 @@ public class ModuleFactory implements IModuleFactory {
      */
     public IModule create(String xml, String instanceId) throws XMLException {
         IModule module = null;
-        XMLParser xmlHelper = new XMLParser();
-        XMLTag tag = xmlHelper.getNextTag(xml);
-        IModuleFactory factory = m_factories.get(tag.getName());
+        String name = new XMLReader(xml).peekTag();
+        IModuleFactory factory = m_factories.get(name);
         if (null != factory) {
             module = factory.create(xml, instanceId);
         }
         else {
-            throw new XMLException("Invalid tag " + tag.getName());
+            throw new XMLException("Invalid tag " + name);
+        }
+        return module;
+    }
+
+    /**
+     * Creates a module from the next tag of an XML reader, given the unique
+     * instance identifier.  Leaves the reader just past the module.
+     *
+     * Modules without an XML reader factory get a copy of their own XML.
+     *
+     * @param reader
+     * @param instanceId
+     * @return
+     * @throws XMLException
+     */
+    public IModule create(XMLReader reader, String instanceId) throws XMLException {
+        IModule module = null;
+        String name = reader.peekTag();
+        IXMLModuleFactory xmlFactory = m_xmlFactories.get(name);
+        if (null != xmlFactory) {
+            module = xmlFactory.create(reader, instanceId);
+        }
+        else {
+            IModuleFactory factory = m_factories.get(name);
+            if (null != factory) {
+                module = factory.create(reader.readElement(), instanceId);
+            }
+            else {
+                throw new XMLException("Invalid tag " + name);
+            }
         }
         return module;
     }
+
+    /**
+     * Creates a module from the binary format, given the unique instance
+     * identifier.
+     *
+     * @param buffer header and module record, may be memory-mapped
+     * @param instanceId
+     * @return
+     * @throws BinaryException
+     */
+    public IModule create(ByteBuffer buffer, String instanceId) throws BinaryException {
+        BinaryReader reader = new BinaryReader(buffer);
+        reader.readHeader();
+        return create(reader, instanceId);
+    }
+
+    /**
+     * Creates a module from the next binary record, given the unique instance
+     * identifier.
+     *
+     * Modules without a binary factory are stored as an "xml" record with
+     * their XML inside.
+     *
+     * @param reader
+     * @param instanceId
+     * @return
+     * @throws BinaryException
+     */
+    public IModule create(BinaryReader reader, String instanceId) throws BinaryException {
+        IModule module = null;
+        BinaryReader.Record record = reader.readRecord();
+        if (XML.equals(record.getTag())) {
+            try {
+                module = create(reader.readString(), instanceId);
+            }
+            catch (XMLException e) {
+                throw new BinaryException("Invalid XML record " + e.getMessage());
+            }
+        }
+        else {
+            IBinaryModuleFactory factory = m_binaryFactories.get(record.getTag());
+            if (null != factory) {
+                module = factory.create(reader, instanceId);
+            }
+            else {
+                throw new BinaryException("Invalid record " + record.getTag());
+            }
+        }
+        reader.skipRecord(record);
+        return module;
+    }
+
+    /**
+     * Writes a module as a binary record.  Modules that aren't
+     * IBinaryWritable are written as an "xml" record.
+     *
+     * @param writer
+     * @param module
+     */
+    public static void toBinary(BinaryWriter writer, IModule module) {
+        if (module instanceof IBinaryWritable) {
+            ((IBinaryWritable) module).toBinary(writer);
+        }
+        else {
+            int record = writer.startRecord(XML);
+            writer.writeString(module.toXML());
+            writer.endRecord(record);
+        }
+    }
 }
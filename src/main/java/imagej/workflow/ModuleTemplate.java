@@ -0,0 +1,92 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow;
+
+import imagej.workflow.util.xmllight.XMLException;
+
+/**
+ * Compiled, immutable template for a module.  Creating an instance from a
+ * template doesn't parse XML, load classes or scan annotations again.
+ *
+ * @author Aivar Grislis
+ */
+abstract class ModuleTemplate {
+
+    /**
+     * Creates a new module instance.
+     *
+     * @param instanceId null or unique instance identifier
+     * @return module
+     */
+    abstract IModule instantiate(String instanceId);
+
+    /**
+     * Compiles a template from a module.
+     *
+     * @param module
+     * @return template
+     */
+    static ModuleTemplate compile(IModule module) {
+        ModuleTemplate template;
+        if (module instanceof Workflow) {
+            template = ((Workflow) module).toTemplate();
+        }
+        else if (module instanceof PluginModule) {
+            template = ((PluginModule) module).toTemplate();
+        }
+        else {
+            template = new XMLModuleTemplate(module.toXML());
+        }
+        return template;
+    }
+
+    /**
+     * Template for other modules, which just keeps their XML.
+     */
+    private static class XMLModuleTemplate extends ModuleTemplate {
+        private final String m_xml;
+
+        XMLModuleTemplate(String xml) {
+            m_xml = xml;
+        }
+
+        IModule instantiate(String instanceId) {
+            IModule module = null;
+            try {
+                module = ModuleFactory.getInstance().create(m_xml, instanceId);
+            }
+            catch (XMLException e) {
+                System.out.println("internal XML problem " + e.getMessage());
+            }
+            return module;
+        }
+    }
+}
@@ -36,19 +36,27 @@ import imagej.workflow.plugin.IPluginLauncher;
 import imagej.workflow.plugin.ItemWrapper;
 import imagej.workflow.plugin.PluginAnnotations;
 import imagej.workflow.plugin.PluginClassException;
+import imagej.workflow.plugin.PluginExecutorFactory;
 import imagej.workflow.plugin.PluginLauncher;
+import imagej.workflow.plugin.PluginScheduler;
 import imagej.workflow.plugin.annotations.Input;
 import imagej.workflow.plugin.annotations.Output;
+import imagej.workflow.util.binary.BinaryException;
+import imagej.workflow.util.binary.BinaryReader;
+import imagej.workflow.util.binary.BinaryWriter;
+import imagej.workflow.util.binary.IBinaryWritable;
+import imagej.workflow.util.xmllight.IXMLWritable;
 import imagej.workflow.util.xmllight.XMLException;
-import imagej.workflow.util.xmllight.XMLParser;
-import imagej.workflow.util.xmllight.XMLTag;
+import imagej.workflow.util.xmllight.XMLReader;
 import imagej.workflow.util.xmllight.XMLWriter;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 //TODO
 /*
@@ -63,9 +71,10 @@ import java.util.UUID;
  *
  * @author Aivar Grislis
  */
-public class PluginModule implements IModule {
+public class PluginModule implements IModule, IXMLWritable, IBinaryWritable {
     public static final String PLUGIN = "plugin";
     public static final String CLASSNAME = "classname";
+    Class<?> m_pluginClass;
     String m_pluginClassName;
     String m_name;
     String m_instanceId;
@@ -73,7 +82,10 @@ public class PluginModule implements IModule {
     IPluginLauncher m_launcher;
     Set<String> m_inputNames = Collections.EMPTY_SET;
     Set<String> m_outputNames = Collections.EMPTY_SET;
-    Map<String, IOutputListener> m_listenerMap = new HashMap<String, IOutputListener>();
+    Map<String, IOutputListener> m_listenerMap = new ConcurrentHashMap<String, IOutputListener>();
+    private final Set<String> m_listening = new HashSet<String>();
+    private final IOutputListener m_dispatcher = new OutputDispatcher();
+    private PluginScheduler m_listenScheduler;
 
     /**
      * Create a plugin module instance.  Generates a unique instance identifier.
@@ -97,10 +109,23 @@ public class PluginModule implements IModule {
      * @param className
      * @param instanceId null or unique identifier for this instance
      */
-    public PluginModule(Class pluginClass) {
+    public PluginModule(Class<?> pluginClass) {
         init(pluginClass);
     }
 
+    /**
+     * Create an instance from a compiled template, reusing the plugin class
+     * and its annotations.
+     *
+     * @param pluginClass
+     * @param annotations
+     * @param instanceId null or unique identifier for this instance
+     */
+    PluginModule(Class<?> pluginClass, PluginAnnotations annotations, String instanceId) {
+        m_instanceId = instanceId;
+        init(pluginClass, annotations);
+    }
+
     /**
      * Initializes given a plugin class name.
      *
@@ -109,7 +134,7 @@ public class PluginModule implements IModule {
     private void init(String pluginClassName) {
 
         // get associated class
-        Class pluginClass = null;
+        Class<?> pluginClass = null;
         try {
             pluginClass = Class.forName(pluginClassName);
         }
@@ -158,17 +183,28 @@ public class PluginModule implements IModule {
      * @param pluginClass
      * @param instanceId null or unique instance identifier
      */
-    private void init(Class pluginClass) {
+    private void init(Class<?> pluginClass) {
+        init(pluginClass, PluginAnnotations.getInstance(pluginClass));
+    }
+
+    /**
+     * Initializes given a plugin class and its annotations.
+     *
+     * @param pluginClass
+     * @param annotations
+     */
+    private void init(Class<?> pluginClass, PluginAnnotations annotations) {
 
         if (null == m_instanceId) {
             m_instanceId = UUID.randomUUID().toString();
         }
+        m_pluginClass = pluginClass;
         m_pluginClassName = pluginClass.getName();
         int lastDotIndex = m_pluginClassName.lastIndexOf('.');
         m_name = m_pluginClassName.substring(lastDotIndex + 1, m_pluginClassName.length());
 
         // examine annotations
-        m_annotations = new PluginAnnotations(pluginClass);
+        m_annotations = annotations;
         m_inputNames = m_annotations.getInputNames();
         m_outputNames = m_annotations.getOutputNames();
 
@@ -214,8 +250,16 @@ public class PluginModule implements IModule {
      */
     public String toXML() {
         StringBuilder xmlBuilder = new StringBuilder();
-        XMLWriter xmlHelper = new XMLWriter(xmlBuilder);
+        toXML(new XMLWriter(xmlBuilder));
+        return xmlBuilder.toString();
+    }
 
+    /**
+     * Writes component as XML, straight into the given writer.
+     *
+     * @param xmlHelper
+     */
+    public void toXML(XMLWriter xmlHelper) {
         // add workflow tag, name, and class name
         xmlHelper.addTag(PLUGIN);
         xmlHelper.addTagWithContent(Workflow.NAME, getName());
@@ -241,8 +285,6 @@ public class PluginModule implements IModule {
 
         // end workflow
         xmlHelper.addEndTag(PLUGIN);
-
-        return xmlBuilder.toString();
     }
 
     /**
@@ -253,106 +295,8 @@ public class PluginModule implements IModule {
      */
     public boolean fromXML(String xml) {
         boolean success = false;
-        XMLParser xmlHelper = new XMLParser();
-
         try {
-            // handle test tag and name
-            //
-            // <plugin>
-            //   <name>A</name>
-
-            XMLTag tag = xmlHelper.getNextTag(xml);
-            if (!PLUGIN.equals(tag.getName())) {
-                throw new XMLException("Missing <plugin> tag");
-            }
-            xml = tag.getContent();
-            tag = xmlHelper.getNextTag(xml);
-            if (!Workflow.NAME.equals(tag.getName())) {
-                throw new XMLException("Missing <name> for <plugin>");
-            }
-            setName(tag.getContent());
-            xml = tag.getRemainder();
-
-            // handle class name
-            tag = xmlHelper.getNextTag(xml);
-            if (!CLASSNAME.equals(tag.getName())) {
-                throw new XMLException("Missing <classname> for <plugin>");
-            }
-            init(tag.getContent());
-            if (true) return true; //TODO the follow code analyzes given input/output names, which are merely a descriptive nicety; could compare with annotated input/output names.
-
-            // handle inputs
-            //
-            //  <inputs>
-            //    <input>
-            //      <name>RED</name>
-            //   </input>
-            // </inputs>
-
-            tag = xmlHelper.getNextTag(xml);
-            if (!Workflow.INPUTS.equals(tag.getName())) {
-                throw new XMLException("Missing <inputs> within <plugin>");
-            }
-            String inputsXML = tag.getContent();
-            xml = tag.getRemainder();
-            while (!inputsXML.isEmpty()) {
-                tag = xmlHelper.getNextTag(inputsXML);
-                inputsXML = tag.getRemainder();
-
-                if (tag.getName().isEmpty()) { //TODO don't think these are necessary
-                    break;
-                }
-
-                if (!Workflow.INPUT.equals(tag.getName())) {
-                    throw new XMLException("Missing <input> within <inputs>");
-                }
-                String inputXML = tag.getContent();
-
-                tag = xmlHelper.getNextTag(inputXML);
-                inputXML = tag.getRemainder();
-
-                if (!Workflow.NAME.equals(tag.getName())) {
-                    throw new XMLException("Missing <name> within <input>");
-                }
-                String inName = tag.getContent();
-
-                m_inputNames.add(inName);
-            }
-
-            // handle outputs
-            //  <outputs>
-            //    <output>
-            //      <name>OUTPUT</name>
-            //    </output>
-            //  </outputs>
-            tag = xmlHelper.getNextTag(xml);
-            if (!Workflow.OUTPUTS.equals(tag.getName())) {
-                throw new XMLException("Missing <outputs> within <plugin>");
-            }
-            String outputsXML = tag.getContent();
-            xml = tag.getRemainder();
-            while (!outputsXML.isEmpty()) {
-                tag = xmlHelper.getNextTag(outputsXML);
-                outputsXML = tag.getRemainder();
-
-                if (tag.getName().isEmpty()) { //TODO don't think these are necessary
-                    break;
-                }
-
-                if (!Workflow.OUTPUT.equals(tag.getName())) {
-                    throw new XMLException("Missing <output> within <outputs>");
-                }
-                String outputXML = tag.getContent();
-
-                tag = xmlHelper.getNextTag(outputXML);
-                outputXML = tag.getRemainder();
-
-                if (!Workflow.NAME.equals(tag.getName())) {
-                    throw new XMLException("Missing <name> within <output>");
-                }
-                String outName = tag.getContent();
-                m_outputNames.add(outName);
-            }
+            fromXML(new XMLReader(xml));
             success = true;
         }
         catch (XMLException e) {
@@ -361,6 +305,100 @@ public class PluginModule implements IModule {
         return success;
     }
 
+    /**
+     * Restores component from the next tag of an XML reader.
+     *
+     * @param reader positioned at the plugin tag, left just past it
+     * @throws XMLException
+     */
+    public void fromXML(XMLReader reader) throws XMLException {
+        // handle test tag and name
+        //
+        // <plugin>
+        //   <name>A</name>
+
+        if (!PLUGIN.equals(reader.peekTag())) {
+            throw new XMLException("Missing <plugin> tag");
+        }
+        reader.startTag(PLUGIN);
+        if (!Workflow.NAME.equals(reader.peekTag())) {
+            throw new XMLException("Missing <name> for <plugin>");
+        }
+        String name = reader.readContent(Workflow.NAME);
+
+        // handle class name
+        if (!CLASSNAME.equals(reader.peekTag())) {
+            throw new XMLException("Missing <classname> for <plugin>");
+        }
+        init(reader.readContent(CLASSNAME));
+
+        // init() names the module after its class, so set name after
+        setName(name);
+
+        // skip inputs and outputs
+        //
+        //  <inputs>
+        //    <input>
+        //      <name>RED</name>
+        //   </input>
+        // </inputs>
+        //  <outputs>
+        //    <output>
+        //      <name>OUTPUT</name>
+        //    </output>
+        //  </outputs>
+        //
+        //TODO these names come from the plugin annotations and are merely a descriptive nicety; could compare with annotated input/output names.
+        while (!reader.isEndTag()) {
+            reader.skipElement();
+        }
+        reader.endTag(PLUGIN);
+    }
+
+    /**
+     * Writes component as a binary record.  Only the name and class name
+     * are written; inputs and outputs come from the plugin annotations.
+     *
+     * @param writer
+     */
+    public void toBinary(BinaryWriter writer) {
+        int record = writer.startRecord(PLUGIN);
+        writer.writeString(getName());
+        writer.writeString(m_pluginClassName);
+        writer.endRecord(record);
+    }
+
+    /**
+     * Restores component from a binary record.
+     *
+     * @param reader positioned at the start of the record body
+     * @return whether successfully read
+     */
+    public boolean fromBinary(BinaryReader reader) {
+        boolean success = false;
+        try {
+            // init() names the module after its class, so set name after
+            String name = reader.readString();
+            init(reader.readString());
+            setName(name);
+            success = true;
+        }
+        catch (BinaryException e) {
+            System.out.println("Binary Exception " + e.getMessage());
+        }
+        return success;
+    }
+
+    /**
+     * Compiles an immutable template of this module, for fast creation of
+     * further instances.
+     *
+     * @return template
+     */
+    ModuleTemplate toTemplate() {
+        return new PluginModuleTemplate(m_pluginClass, m_annotations, m_name);
+    }
+
     /**
      * Gets input image names.
      *
@@ -389,6 +427,36 @@ public class PluginModule implements IModule {
         m_launcher.setInputs(inputs);
     }
 
+    /**
+     * Sets the kind of executor used to run plugin instances.
+     *
+     * @param type
+     */
+    public void setExecutorType(PluginExecutorFactory.Type type) {
+        m_launcher.setExecutorType(type);
+    }
+
+    /**
+     * Sets the maximum number of plugin instances that run concurrently.
+     * A parallelism of one runs a single plugin instance at a time.
+     *
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism) {
+        m_launcher.setParallelism(parallelism);
+    }
+
+    /**
+     * Sets how many sets of inputs the plugin takes at once, and how long
+     * to wait for that many.  Overrides the batch settings of the wires.
+     *
+     * @param batchSize 1 for no batching
+     * @param lingerMicros
+     */
+    public void setBatch(int batchSize, int lingerMicros) {
+        m_launcher.setBatch(batchSize, lingerMicros);
+    }
+
     /**
      * Furnish input image.
      *
@@ -405,6 +473,12 @@ public class PluginModule implements IModule {
      * @param name
      */
     public void input(ItemWrapper image, String name) {
+        synchronized (m_listening) {
+            if (null == m_listenScheduler) {
+                // used on its own, not added to a workflow
+                attachListeners(m_launcher.getScheduler());
+            }
+        }
         m_launcher.externalPut(name, image); //TODO order inconsistency!
     }
 
@@ -425,7 +499,52 @@ public class PluginModule implements IModule {
      */
     public void setOutputListener(String name, IOutputListener listener) {
         m_listenerMap.put(name, listener);
-        //TODO hook up the listener
+        synchronized (m_listening) {
+            // otherwise wait until the scheduler is known
+            if (null != m_listenScheduler) {
+                listen(name);
+            }
+        }
+    }
+
+    /**
+     * Hooks up the output listeners, now and as they are set, through the
+     * given scheduler.  Called once the scheduler that will run this module
+     * is known, i.e. when added to a workflow.
+     *
+     * @param scheduler
+     */
+    void attachListeners(PluginScheduler scheduler) {
+        synchronized (m_listening) {
+            m_listenScheduler = scheduler;
+            for (String name : m_listenerMap.keySet()) {
+                listen(name);
+            }
+        }
+    }
+
+    /**
+     * Dispatches output images for a name to its listener, once per name.
+     *
+     * @param name
+     */
+    private void listen(String name) {
+        if (null != m_launcher && m_listening.add(name)) {
+            m_listenScheduler.listen(m_launcher, name, m_dispatcher);
+        }
+    }
+
+    /**
+     * Passes output images on to whichever listener is current for the name.
+     */
+    private class OutputDispatcher implements IOutputListener {
+
+        public void outputImage(String name, ItemWrapper image) {
+            IOutputListener listener = m_listenerMap.get(name);
+            if (null != listener) {
+                listener.outputImage(name, image);
+            }
+        }
     }
 
 }
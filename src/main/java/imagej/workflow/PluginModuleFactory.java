@@ -30,11 +30,15 @@
 
 package imagej.workflow;
 
+import imagej.workflow.util.binary.BinaryReader;
+import imagej.workflow.util.xmllight.XMLException;
+import imagej.workflow.util.xmllight.XMLReader;
+
 /**
  *
  * @author aivar
  */
-public class PluginModuleFactory implements IModuleFactory {
+public class PluginModuleFactory implements IBinaryModuleFactory, IXMLModuleFactory {
     private static PluginModuleFactory s_instance = null;
 
     private PluginModuleFactory() {
@@ -72,4 +76,39 @@ public class PluginModuleFactory implements IModuleFactory {
         module.fromXML(xml);
         return module;
     }
+
+    /**
+     * Creates a plugin module from XML, read in place, given a unique
+     * instance identifier.
+     *
+     * @param reader positioned at the plugin's start tag
+     * @param instanceId null or unique instance identifier
+     * @return the module
+     * @throws XMLException
+     */
+    public IModule create(XMLReader reader, String instanceId) throws XMLException {
+        PluginModule module = new PluginModule();
+        if (null != instanceId) {
+            module.setInstanceId(instanceId);
+        }
+        module.fromXML(reader);
+        return module;
+    }
+
+    /**
+     * Creates a plugin module from a binary record, given a unique instance
+     * identifier.
+     *
+     * @param reader positioned at the start of the record body
+     * @param instanceId null or unique instance identifler
+     * @return the module
+     */
+    public IModule create(BinaryReader reader, String instanceId) {
+        PluginModule module = new PluginModule();
+        if (null != instanceId) {
+            module.setInstanceId(instanceId);
+        }
+        module.fromBinary(reader);
+        return module;
+    }
 }
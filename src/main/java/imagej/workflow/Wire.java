@@ -30,22 +30,40 @@
 
 package imagej.workflow;
 
+import imagej.workflow.plugin.PluginScheduler;
+
 /**
  * Data structure that describes a chained connection.
  *
  * @author Aivar Grislis
  */
 public class Wire {
+    public static final int UNBOUNDED = PluginScheduler.UNBOUNDED;  // capacity 0 means no limit
+    public static final int NO_BATCH = 1;
     final IModule m_source;
     final String m_sourceName;
     final IModule m_dest;
     final String m_destName;
+    final int m_capacity;
+    final int m_batchSize;
+    final int m_lingerMicros;
 
     Wire(IModule source, String sourceName, IModule dest, String destName) {
+        this(source, sourceName, dest, destName, UNBOUNDED);
+    }
+
+    Wire(IModule source, String sourceName, IModule dest, String destName, int capacity) {
+        this(source, sourceName, dest, destName, capacity, NO_BATCH, 0);
+    }
+
+    Wire(IModule source, String sourceName, IModule dest, String destName, int capacity, int batchSize, int lingerMicros) {
         m_source = source;
         m_sourceName = sourceName;
         m_dest = dest;
         m_destName = destName;
+        m_capacity = capacity;
+        m_batchSize = batchSize;
+        m_lingerMicros = lingerMicros;
     }
 
     IModule getSource() {
@@ -63,5 +81,32 @@ public class Wire {
     String getDestName() {
         return m_destName;
     }
-}
 
+    /**
+     * Gets the maximum number of items that may wait on this wire.
+     *
+     * @return capacity or UNBOUNDED
+     */
+    int getCapacity() {
+        return m_capacity;
+    }
+
+    /**
+     * Gets the maximum number of items the destination takes from this wire
+     * at once.
+     *
+     * @return batch size or NO_BATCH
+     */
+    int getBatchSize() {
+        return m_batchSize;
+    }
+
+    /**
+     * Gets how long the destination waits for a batch to fill up.
+     *
+     * @return microseconds
+     */
+    int getLingerMicros() {
+        return m_lingerMicros;
+    }
+}
@@ -40,12 +40,26 @@ public class WireInfo {
     final String m_sourceName;
     final String m_destModuleName;
     final String m_destName;
+    final int m_capacity;
+    final int m_batchSize;
+    final int m_lingerMicros;
 
     WireInfo(String sourceModuleName, String sourceName, String destModuleName, String destName) {
+        this(sourceModuleName, sourceName, destModuleName, destName, Wire.UNBOUNDED);
+    }
+
+    WireInfo(String sourceModuleName, String sourceName, String destModuleName, String destName, int capacity) {
+        this(sourceModuleName, sourceName, destModuleName, destName, capacity, Wire.NO_BATCH, 0);
+    }
+
+    WireInfo(String sourceModuleName, String sourceName, String destModuleName, String destName, int capacity, int batchSize, int lingerMicros) {
         m_sourceModuleName = sourceModuleName;
         m_sourceName = sourceName;
         m_destModuleName = destModuleName;
         m_destName = destName;
+        m_capacity = capacity;
+        m_batchSize = batchSize;
+        m_lingerMicros = lingerMicros;
     }
 
     String getSourceModuleName() {
@@ -63,4 +77,16 @@ public class WireInfo {
     String getDestName() {
         return m_destName;
     }
+
+    int getCapacity() {
+        return m_capacity;
+    }
+
+    int getBatchSize() {
+        return m_batchSize;
+    }
+
+    int getLingerMicros() {
+        return m_lingerMicros;
+    }
 }
@@ -32,21 +32,35 @@ package imagej.workflow;
 
 import imagej.workflow.debug.PreviewInfo;
 import imagej.workflow.debug.WorkflowDebugger;
+import imagej.workflow.metrics.Counter;
+import imagej.workflow.metrics.MetricsRegistry;
 import imagej.workflow.plugin.IPluginLauncher;
 import imagej.workflow.plugin.ItemWrapper;
+import imagej.workflow.plugin.PluginExecutorFactory;
 import imagej.workflow.plugin.PluginScheduler;
 import imagej.workflow.plugin.annotations.Input;
 import imagej.workflow.plugin.annotations.Output;
+import imagej.workflow.trace.Tracer;
+import imagej.workflow.util.binary.BinaryException;
+import imagej.workflow.util.binary.BinaryReader;
+import imagej.workflow.util.binary.BinaryWriter;
+import imagej.workflow.util.binary.IBinaryWritable;
+import imagej.workflow.util.xmllight.IXMLWritable;
 import imagej.workflow.util.xmllight.XMLException;
-import imagej.workflow.util.xmllight.XMLParser;
-import imagej.workflow.util.xmllight.XMLTag;
+import imagej.workflow.util.xmllight.XMLReader;
 import imagej.workflow.util.xmllight.XMLWriter;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Builds a workflow consisting of chained components.  A component could also
@@ -54,8 +68,11 @@ import java.util.UUID;
  *
  * @author Aivar Grislis
  */
-public class Workflow implements IModule, IWorkflow, IWorkflowDebug {
+public class Workflow implements IModule, IWorkflow, IWorkflowDebug, IXMLWritable, IBinaryWritable {
     public static final String WORKFLOW = "workflow";
+    public static final String METRICS_TYPE = "Workflow";
+    public static final String INPUT_COUNT = "workflow.inputs";
+    public static final String OUTPUT_COUNT = "workflow.outputs";
     public static final String NAME = "name";
     public static final String MODULES = "modules";
     public static final String MODULE = "module";
@@ -63,12 +80,15 @@ public class Workflow implements IModule, IWorkflow, IWorkflowDebug {
     public static final String WIRE = "wire";
     public static final String DST = "dst";
     public static final String SRC = "src";
+    public static final String CAPACITY = "capacity";
+    public static final String BATCH = "batch";
+    public static final String LINGER = "linger";
     public static final String INPUTS = "inputs";
     public static final String INPUT = "input";
     public static final String OUTPUTS = "outputs";
     public static final String OUTPUT = "output";
 
-    private IModuleFactory m_moduleFactory = ModuleFactory.getInstance();
+    private ModuleFactory m_moduleFactory = ModuleFactory.getInstance();
     private String m_name;
     private String m_instanceId;
     private Map<String, IModule> m_moduleMap = new HashMap<String, IModule>();
@@ -83,7 +103,20 @@ public class Workflow implements IModule, IWorkflow, IWorkflowDebug {
     private IOutputListener m_listener = new OutputListener();
     private Object m_synchObject = new Object();
     private WorkflowDebugger m_workflowDebugger = null;
-    
+    private final PluginScheduler m_scheduler = new PluginScheduler();
+    private final Counter m_inputCount = m_scheduler.getMetrics().getCounter(INPUT_COUNT);
+    private final Counter m_outputCount = m_scheduler.getMetrics().getCounter(OUTPUT_COUNT);
+    private boolean m_fusion = true;
+    private boolean m_sharedPool = false;
+    private boolean m_ordered = false;
+    private ConcurrentHashMap<String, AtomicLong> m_sequences = new ConcurrentHashMap<String, AtomicLong>();
+    private ExecutorService m_pool = null;
+    private Map<IModule, Integer> m_priorities = new HashMap<IModule, Integer>();
+    private final Object m_lifecycleLock = new Object();
+    private boolean m_finalized = false;
+    private boolean m_quit = false;
+    private volatile boolean m_registered = false;
+
     public Workflow() {
         m_instanceId = UUID.randomUUID().toString();
     }
@@ -130,243 +163,269 @@ public class Workflow implements IModule, IWorkflow, IWorkflowDebug {
 
     public boolean fromXML(String xml) {
         boolean success = false;
-        XMLParser xmlHelper = new XMLParser();
-
         try {
-            // handle workflow tag and name
-            //
-            // <workflow>
-            //   <name>workFlow1</name>
-        
-            XMLTag tag = xmlHelper.getNextTag(xml);
-            if (!WORKFLOW.equals(tag.getName())) {
-                throw new XMLException("Missing <workflow> tag");
-            }
-            xml = tag.getContent();
-            tag = xmlHelper.getNextTag(xml);
-            if (!NAME.equals(tag.getName())) {
-                throw new XMLException("Missing <name> for <workflow>");
-            }
-            setName(tag.getContent());
-            xml = tag.getRemainder();
-            
-            // handle modules
-            //
-            //  <modules>
-            //    <module>
-            //      <name>A</name>
-            //      <testA>whatever</testA>
-            //    </module>
-            //    <module>
-            //      <name>B</name>
-            //      <testB>whatever</testB>
-            //    </module>
-            //  </modules>
-
-            tag = xmlHelper.getNextTag(xml);
-            if (!MODULES.equals(tag.getName())) {
-                throw new XMLException("Missing <modules> for <workflow>");
-            }
-            String modulesXML = tag.getContent();
-            xml = tag.getRemainder();
-            while (!modulesXML.isEmpty()) {
-                tag = xmlHelper.getNextTag(modulesXML);
-                modulesXML = tag.getRemainder();
-
-                if (tag.getName().isEmpty()) {
-                    break;
-                }
-                if (!MODULE.equals(tag.getName())) {
-                    throw new XMLException("Missing <module> within <modules>");
-                }
-                String moduleXML = tag.getContent();
-                tag = xmlHelper.getNextTag(moduleXML);
-                if (!NAME.equals(tag.getName())) {
-                    throw new XMLException("Missing <name> within <module>");
-                }
-                IModule module = m_moduleFactory.create(tag.getRemainder());
-                add(module);
-            }
-
-            // handle wires
-            //
-            //  <wires>
-            //    <wire>
-            //      <src>
-            //        <module>A</module>
-            //        <name>OUTPUT</name>
-            //      </src>
-            //      <dst>
-            //        <module>B</module>
-            //        <name>INPUT</name>
-            //      </dst>
-            //    </wire>
-            //  </wires>
-
-            tag = xmlHelper.getNextTag(xml);
-            if (!WIRES.equals(tag.getName())) {
-                throw new XMLException("Missing <wires> within <workflow>");
-            }
-            String wiresXML = tag.getContent();
-            xml = tag.getRemainder();
-            while (!wiresXML.isEmpty()) {
-                tag = xmlHelper.getNextTag(wiresXML);
-                wiresXML = tag.getRemainder();
-
-                if (tag.getName().isEmpty()) {
-                    break;
-                }
-                if (!WIRE.equals(tag.getName())) {
-                    throw new XMLException("Missing <wire> within <wires>");
-                }
-                String wireXML = tag.getContent();
-                tag = xmlHelper.getNextTag(wireXML);
-                wireXML = tag.getRemainder();
-                if (!SRC.equals(tag.getName())) {
-                    throw new XMLException("Missing <src> within <wire>");
-                }
-                String srcXML = tag.getContent();
-                ModuleAndName srcMAN = parseModuleAndName(xmlHelper, srcXML);
-                
-                tag = xmlHelper.getNextTag(wireXML);
-                if (!DST.equals(tag.getName())) {
-                    throw new XMLException("Missing <dst> within <wire>");
-                }
-                String dstXML = tag.getContent();
-                ModuleAndName dstMAN = parseModuleAndName(xmlHelper, dstXML);
-
-                // do the wiring
-                wire(srcMAN.getModule(), srcMAN.getName(), dstMAN.getModule(), dstMAN.getName());
-            }
-            
-            // handle inputs
-            //
-            //  <inputs>
-            //    <input>
-            //      <name>RED</name>
-            //      <dst>
-            //        <module>A</module>
-            //        <name>ONE</name>
-            //      </dst>
-            //   </input>
-            // </inputs>
-
-            tag = xmlHelper.getNextTag(xml);
-            if (!INPUTS.equals(tag.getName())) {
-                throw new XMLException("Missing <inputs> within <workflow>");
-            }
-            String inputsXML = tag.getContent();
-            xml = tag.getRemainder();
-            while (!inputsXML.isEmpty()) {
-                tag = xmlHelper.getNextTag(inputsXML);
-                inputsXML = tag.getRemainder();
-
-                if (tag.getName().isEmpty()) { //TODO don't think these are necessary
-                    break;
-                }
-
-                if (!INPUT.equals(tag.getName())) {
-                    throw new XMLException("Missing <input> within <inputs>");
-                }
-                String inputXML = tag.getContent();
-
-                tag = xmlHelper.getNextTag(inputXML);
-                inputXML = tag.getRemainder();
-
-                if (!NAME.equals(tag.getName())) {
-                    throw new XMLException("Missing <name> within <input>");
-                }
-                String inName = tag.getContent();
-
-                tag = xmlHelper.getNextTag(inputXML);
-                if (!DST.equals(tag.getName())) {
-                    throw new XMLException("Missing <dest> within <input>");
-                }
-                String destXML = tag.getContent();
-                ModuleAndName destMAN = parseModuleAndName(xmlHelper, destXML);
-
-                wireInput(inName, destMAN.getModule(), destMAN.getName());
-            }
-
-
-            // handle outputs
-            //  <outputs>
-            //    <output>
-            //      <name>OUTPUT</name>
-            //      <src>
-            //        <module>B</module>
-            //        <name>OUTPUT</name>
-            //      </src>
-            //    </output>
-            //  </outputs>
-            tag = xmlHelper.getNextTag(xml);
-            if (!OUTPUTS.equals(tag.getName())) {
-                throw new XMLException("Missing <outputs> within <workflow>");
-            }
-            String outputsXML = tag.getContent();
-            xml = tag.getRemainder();
-            while (!outputsXML.isEmpty()) {
-                tag = xmlHelper.getNextTag(outputsXML);
-                outputsXML = tag.getRemainder();
-
-                if (tag.getName().isEmpty()) { //TODO don't think these are necessary
-                    break;
-                }
+            fromXML(new XMLReader(xml));
+            success = true;
+        }
+        catch (XMLException e) {
+            System.out.println("XML Exception " + e.getMessage());
+        }
+        return success;
+    }
 
-                if (!OUTPUT.equals(tag.getName())) {
-                    throw new XMLException("Missing <output> within <outputs>");
-                }
-                String outputXML = tag.getContent();
+    /**
+     * Restores chained components from the next tag of an XML reader.
+     * Nested modules are read in place from the same reader.
+     *
+     * @param reader positioned at the workflow tag, left just past it
+     * @throws XMLException
+     */
+    public void fromXML(XMLReader reader) throws XMLException {
+        // handle workflow tag and name
+        //
+        // <workflow>
+        //   <name>workFlow1</name>
+
+        if (!WORKFLOW.equals(reader.peekTag())) {
+            throw new XMLException("Missing <workflow> tag");
+        }
+        reader.startTag(WORKFLOW);
+        if (!NAME.equals(reader.peekTag())) {
+            throw new XMLException("Missing <name> for <workflow>");
+        }
+        setName(reader.readContent(NAME));
+
+        // handle modules
+        //
+        //  <modules>
+        //    <module>
+        //      <name>A</name>
+        //      <testA>whatever</testA>
+        //    </module>
+        //    <module>
+        //      <name>B</name>
+        //      <testB>whatever</testB>
+        //    </module>
+        //  </modules>
+
+        if (!MODULES.equals(reader.peekTag())) {
+            throw new XMLException("Missing <modules> for <workflow>");
+        }
+        reader.startTag(MODULES);
+        while (!reader.isEndTag()) {
+            if (!MODULE.equals(reader.peekTag())) {
+                throw new XMLException("Missing <module> within <modules>");
+            }
+            reader.startTag(MODULE);
+            if (!NAME.equals(reader.peekTag())) {
+                throw new XMLException("Missing <name> within <module>");
+            }
+            reader.readContent(NAME);
+            IModule module = m_moduleFactory.create(reader, null);
+            reader.endTag(MODULE);
+            add(module);
+        }
+        reader.endTag(MODULES);
+
+        // handle wires
+        //
+        //  <wires>
+        //    <wire>
+        //      <src>
+        //        <module>A</module>
+        //        <name>OUTPUT</name>
+        //      </src>
+        //      <dst>
+        //        <module>B</module>
+        //        <name>INPUT</name>
+        //      </dst>
+        //      <capacity>10</capacity>
+        //      <batch>16</batch>
+        //      <linger>200</linger>
+        //    </wire>
+        //  </wires>
+        //
+        // where capacity, batch size and linger time (in microseconds)
+        // are optional.
+
+        if (!WIRES.equals(reader.peekTag())) {
+            throw new XMLException("Missing <wires> within <workflow>");
+        }
+        reader.startTag(WIRES);
+        while (!reader.isEndTag()) {
+            if (!WIRE.equals(reader.peekTag())) {
+                throw new XMLException("Missing <wire> within <wires>");
+            }
+            reader.startTag(WIRE);
+            if (!SRC.equals(reader.peekTag())) {
+                throw new XMLException("Missing <src> within <wire>");
+            }
+            reader.startTag(SRC);
+            ModuleAndName srcMAN = parseModuleAndName(reader);
+            reader.endTag(SRC);
 
-                tag = xmlHelper.getNextTag(outputXML);
-                outputXML = tag.getRemainder();
+            if (!DST.equals(reader.peekTag())) {
+                throw new XMLException("Missing <dst> within <wire>");
+            }
+            reader.startTag(DST);
+            ModuleAndName dstMAN = parseModuleAndName(reader);
+            reader.endTag(DST);
+
+            // optional capacity and batching
+            int capacity = parseWireOption(reader, CAPACITY, Wire.UNBOUNDED);
+            int batchSize = parseWireOption(reader, BATCH, Wire.NO_BATCH);
+            int lingerMicros = parseWireOption(reader, LINGER, 0);
+            endWire(reader);
+
+            // do the wiring
+            wire(srcMAN.getModule(), srcMAN.getName(), dstMAN.getModule(), dstMAN.getName(),
+                    capacity, batchSize, lingerMicros);
+        }
+        reader.endTag(WIRES);
+
+        // handle inputs
+        //
+        //  <inputs>
+        //    <input>
+        //      <name>RED</name>
+        //      <dst>
+        //        <module>A</module>
+        //        <name>ONE</name>
+        //      </dst>
+        //   </input>
+        // </inputs>
+
+        if (!INPUTS.equals(reader.peekTag())) {
+            throw new XMLException("Missing <inputs> within <workflow>");
+        }
+        reader.startTag(INPUTS);
+        while (!reader.isEndTag()) {
+            if (!INPUT.equals(reader.peekTag())) {
+                throw new XMLException("Missing <input> within <inputs>");
+            }
+            reader.startTag(INPUT);
+            if (!NAME.equals(reader.peekTag())) {
+                throw new XMLException("Missing <name> within <input>");
+            }
+            String inName = reader.readContent(NAME);
 
-                if (!NAME.equals(tag.getName())) {
-                    throw new XMLException("Missing <name> within <output>");
-                }
-                String outName = tag.getContent();
+            if (!DST.equals(reader.peekTag())) {
+                throw new XMLException("Missing <dest> within <input>");
+            }
+            reader.startTag(DST);
+            ModuleAndName destMAN = parseModuleAndName(reader);
+            reader.endTag(DST);
+            reader.endTag(INPUT);
 
-                tag = xmlHelper.getNextTag(outputXML);
-                if (!SRC.equals(tag.getName())) {
-                    throw new XMLException("Missing <src> within <output>");
-                }
-                String srcXML = tag.getContent();
-                ModuleAndName srcMAN = parseModuleAndName(xmlHelper, srcXML);
+            wireInput(inName, destMAN.getModule(), destMAN.getName());
+        }
+        reader.endTag(INPUTS);
+
+        // handle outputs
+        //  <outputs>
+        //    <output>
+        //      <name>OUTPUT</name>
+        //      <src>
+        //        <module>B</module>
+        //        <name>OUTPUT</name>
+        //      </src>
+        //    </output>
+        //  </outputs>
+        if (!OUTPUTS.equals(reader.peekTag())) {
+            throw new XMLException("Missing <outputs> within <workflow>");
+        }
+        reader.startTag(OUTPUTS);
+        while (!reader.isEndTag()) {
+            if (!OUTPUT.equals(reader.peekTag())) {
+                throw new XMLException("Missing <output> within <outputs>");
+            }
+            reader.startTag(OUTPUT);
+            if (!NAME.equals(reader.peekTag())) {
+                throw new XMLException("Missing <name> within <output>");
+            }
+            String outName = reader.readContent(NAME);
 
-                wireOutput(outName, srcMAN.getModule(), srcMAN.getName());
+            if (!SRC.equals(reader.peekTag())) {
+                throw new XMLException("Missing <src> within <output>");
             }
-            
-            // finish the wiring
-            finalize();
-            
-            success = true;
-        }
-        catch (XMLException e) {
-            System.out.println("XML Exception " + e.getMessage());
+            reader.startTag(SRC);
+            ModuleAndName srcMAN = parseModuleAndName(reader);
+            reader.endTag(SRC);
+            reader.endTag(OUTPUT);
+
+            wireOutput(outName, srcMAN.getModule(), srcMAN.getName());
         }
-        return success;
+        reader.endTag(OUTPUTS);
+        reader.endTag(WORKFLOW);
+        
+        // finish the wiring
+        finalize();
     }
     
-    private ModuleAndName parseModuleAndName(XMLParser xmlHelper, String xml) throws XMLException {
-        XMLTag tag = xmlHelper.getNextTag(xml);
-        if (!MODULE.equals(tag.getName())) {
+    private ModuleAndName parseModuleAndName(XMLReader reader) throws XMLException {
+        if (!MODULE.equals(reader.peekTag())) {
             throw new XMLException("Missing <module> tag");
         }
-        String moduleName = tag.getContent();
-        xml = tag.getRemainder();
-        tag = xmlHelper.getNextTag(xml);
-        if (!NAME.equals(tag.getName())) {
+        String moduleName = reader.readContent(MODULE);
+        if (!NAME.equals(reader.peekTag())) {
             throw new XMLException("Missing <name> tag");
         }
-        String name = tag.getContent();
+        String name = reader.readContent(NAME);
 
         return new ModuleAndName(m_moduleMap.get(moduleName), name);
     }
 
+    /**
+     * Parses one of the optional wire settings that follow the <dst> tag.
+     * They must appear in the order capacity, batch, linger.
+     *
+     * @param reader positioned after the <dst> tag or a previous setting
+     * @param tag
+     * @param defaultValue if the setting is absent
+     * @return value
+     * @throws XMLException
+     */
+    static int parseWireOption(XMLReader reader, String tag, int defaultValue) throws XMLException {
+        int value = defaultValue;
+        if (tag.equals(reader.peekTag())) {
+            String content = reader.readContent(tag);
+            try {
+                value = Integer.parseInt(content);
+            }
+            catch (NumberFormatException e) {
+                throw new XMLException("Invalid <" + tag + "> " + content);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Ends the <wire> tag, after the optional settings.
+     *
+     * @param reader
+     * @throws XMLException
+     */
+    static void endWire(XMLReader reader) throws XMLException {
+        String name = reader.peekTag();
+        if (!name.isEmpty()) {
+            throw new XMLException("Unexpected <" + name + "> within <wire>");
+        }
+        reader.endTag(WIRE);
+    }
+
     public String toXML() {
         StringBuilder xmlBuilder = new StringBuilder();
-        XMLWriter xmlHelper = new XMLWriter(xmlBuilder);
+        toXML(new XMLWriter(xmlBuilder));
+        return xmlBuilder.toString();
+    }
 
+    /**
+     * Writes chained components as XML, straight into the given writer.
+     * Nested modules that are IXMLWritable write into the same writer.
+     *
+     * @param xmlHelper
+     */
+    public void toXML(XMLWriter xmlHelper) {
         // add workflow tag and name
         xmlHelper.addTag(WORKFLOW);
         xmlHelper.addTagWithContent(NAME, getName());
@@ -376,8 +435,13 @@ public class Workflow implements IModule, IWorkflow, IWorkflowDebug {
         for (String name: m_moduleMap.keySet()) {
             xmlHelper.addTag(MODULE);
             xmlHelper.addTagWithContent(NAME, name);
-            String moduleXML = m_moduleMap.get(name).toXML();
-            xmlHelper.add(moduleXML);
+            IModule module = m_moduleMap.get(name);
+            if (module instanceof IXMLWritable) {
+                xmlHelper.add((IXMLWritable) module);
+            }
+            else {
+                xmlHelper.add(module.toXML());
+            }
             xmlHelper.addEndTag(MODULE);
         }
         xmlHelper.addEndTag(MODULES);
@@ -394,6 +458,15 @@ public class Workflow implements IModule, IWorkflow, IWorkflowDebug {
             xmlHelper.addTagWithContent(MODULE, wire.getDest().getName());
             xmlHelper.addTagWithContent(NAME, wire.getDestName());
             xmlHelper.addEndTag(DST);
+            if (Wire.UNBOUNDED != wire.getCapacity()) {
+                xmlHelper.addTagWithContent(CAPACITY, Integer.toString(wire.getCapacity()));
+            }
+            if (Wire.NO_BATCH != wire.getBatchSize()) {
+                xmlHelper.addTagWithContent(BATCH, Integer.toString(wire.getBatchSize()));
+            }
+            if (0 != wire.getLingerMicros()) {
+                xmlHelper.addTagWithContent(LINGER, Integer.toString(wire.getLingerMicros()));
+            }
             xmlHelper.addEndTag(WIRE);
         }
         xmlHelper.addEndTag(WIRES);
@@ -426,12 +499,179 @@ public class Workflow implements IModule, IWorkflow, IWorkflowDebug {
 
         // end workflow
         xmlHelper.addEndTag(WORKFLOW);
+    }
 
-        return xmlBuilder.toString();
+    /**
+     * Saves chained components in the compact binary format.
+     *
+     * @return header and workflow record
+     */
+    public ByteBuffer toBinary() {
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeHeader();
+        toBinary(writer);
+        return writer.toByteBuffer();
+    }
+
+    /**
+     * Writes chained components as a binary record.  The layout follows the
+     * XML: name, modules, wires, inputs and outputs, each list preceded by
+     * its count.
+     *
+     * @param writer
+     */
+    public void toBinary(BinaryWriter writer) {
+        int record = writer.startRecord(WORKFLOW);
+        writer.writeString(getName());
+
+        // modules
+        writer.writeInt(m_moduleMap.size());
+        for (String name: m_moduleMap.keySet()) {
+            writer.writeString(name);
+            ModuleFactory.toBinary(writer, m_moduleMap.get(name));
+        }
+
+        // wires
+        writer.writeInt(m_wires.size());
+        for (Wire wire: m_wires) {
+            writer.writeString(wire.getSource().getName());
+            writer.writeString(wire.getSourceName());
+            writer.writeString(wire.getDest().getName());
+            writer.writeString(wire.getDestName());
+            writer.writeInt(wire.getCapacity());
+            writer.writeInt(wire.getBatchSize());
+            writer.writeInt(wire.getLingerMicros());
+        }
+
+        // inputs
+        writer.writeInt(m_inputNames.size());
+        for (String name : m_inputNames) {
+            writer.writeString(name);
+            writer.writeString(m_inputModules.get(name).getName());
+            writer.writeString(m_inputModuleNames.get(name));
+        }
+
+        // outputs
+        writer.writeInt(m_outputNames.size());
+        for (String name : m_outputNames) {
+            writer.writeString(name);
+            writer.writeString(m_outputModules.get(name).getName());
+            writer.writeString(m_outputModuleNames.get(name));
+        }
+        writer.endRecord(record);
+    }
+
+    /**
+     * Restores chained components from a binary record.
+     * Accomplishes Phases I-III.
+     *
+     * @param reader positioned at the start of the record body
+     * @return whether successfully read
+     */
+    public boolean fromBinary(BinaryReader reader) {
+        boolean success = false;
+        try {
+            setName(reader.readString());
+
+            // modules
+            int count = reader.readInt();
+            for (int i = 0; i < count; ++i) {
+                reader.readString();
+                add(ModuleFactory.getInstance().create(reader, null));
+            }
+
+            // wires
+            count = reader.readInt();
+            for (int i = 0; i < count; ++i) {
+                IModule source = m_moduleMap.get(reader.readString());
+                String sourceName = reader.readString();
+                IModule dest = m_moduleMap.get(reader.readString());
+                String destName = reader.readString();
+                int capacity = reader.readInt();
+                int batchSize = Wire.NO_BATCH;
+                int lingerMicros = 0;
+                if (reader.getVersion() >= 2) {
+                    batchSize = reader.readInt();
+                    lingerMicros = reader.readInt();
+                }
+                wire(source, sourceName, dest, destName, capacity, batchSize, lingerMicros);
+            }
+
+            // inputs
+            count = reader.readInt();
+            for (int i = 0; i < count; ++i) {
+                String inName = reader.readString();
+                IModule dest = m_moduleMap.get(reader.readString());
+                wireInput(inName, dest, reader.readString());
+            }
+
+            // outputs
+            count = reader.readInt();
+            for (int i = 0; i < count; ++i) {
+                String outName = reader.readString();
+                IModule source = m_moduleMap.get(reader.readString());
+                wireOutput(outName, source, reader.readString());
+            }
+
+            // finish the wiring
+            finalize();
+
+            success = true;
+        }
+        catch (BinaryException e) {
+            System.out.println("Binary Exception " + e.getMessage());
+        }
+        return success;
+    }
+
+    /**
+     * Compiles an immutable template of this workflow, for fast creation of
+     * further instances.
+     *
+     * @return template
+     */
+    ModuleTemplate toTemplate() {
+        List<ModuleTemplate> modules = new ArrayList<ModuleTemplate>();
+        for (IModule module : m_moduleMap.values()) {
+            modules.add(ModuleTemplate.compile(module));
+        }
+        List<WireInfo> wires = new ArrayList<WireInfo>();
+        for (Wire wire: m_wires) {
+            wires.add(new WireInfo(
+                    wire.getSource().getName(), wire.getSourceName(),
+                    wire.getDest().getName(), wire.getDestName(),
+                    wire.getCapacity(), wire.getBatchSize(), wire.getLingerMicros()));
+        }
+        List<WireInfo> inputs = new ArrayList<WireInfo>();
+        for (String name : m_inputNames) {
+            inputs.add(new WireInfo(null, name,
+                    m_inputModules.get(name).getName(), m_inputModuleNames.get(name)));
+        }
+        List<WireInfo> outputs = new ArrayList<WireInfo>();
+        for (String name : m_outputNames) {
+            outputs.add(new WireInfo(
+                    m_outputModules.get(name).getName(), m_outputModuleNames.get(name),
+                    null, name));
+        }
+        return new WorkflowTemplate(getName(),
+                modules.toArray(new ModuleTemplate[0]),
+                wires.toArray(new WireInfo[0]),
+                inputs.toArray(new WireInfo[0]),
+                outputs.toArray(new WireInfo[0]));
     }
 
     public void add(IModule component) {
         m_moduleMap.put(component.getName(), component);
+
+        // plugins pass images through this workflow's scheduler
+        IPluginLauncher launcher = component.getLauncher();
+        if (null != launcher) {
+            launcher.setScheduler(m_scheduler);
+        }
+        if (component instanceof PluginModule) {
+            // listeners set so far can now be hooked up
+            ((PluginModule) component).attachListeners(m_scheduler);
+        }
     }
 
     public void wire(IModule source, IModule dest) {
@@ -447,7 +687,24 @@ public class Workflow implements IModule, IWorkflow, IWorkflowDebug {
     }
 
     public void wire(IModule source, String sourceName, IModule dest, String destName) {
-        Wire wire = new Wire(source, sourceName, dest, destName);
+        wire(source, sourceName, dest, destName, Wire.UNBOUNDED);
+    }
+
+    public void wire(IModule source, String sourceName, IModule dest, String destName, int capacity) {
+        wire(source, sourceName, dest, destName, capacity, Wire.NO_BATCH, 0);
+    }
+
+    public void wire(IModule source, String sourceName, IModule dest, String destName, int capacity, int batchSize, int lingerMicros) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid wire capacity " + capacity);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Invalid wire batch size " + batchSize);
+        }
+        if (lingerMicros < 0) {
+            throw new IllegalArgumentException("Invalid wire linger time " + lingerMicros);
+        }
+        Wire wire = new Wire(source, sourceName, dest, destName, capacity, batchSize, lingerMicros);
         m_wires.add(wire);
     }
 
@@ -456,13 +713,55 @@ public class Workflow implements IModule, IWorkflow, IWorkflowDebug {
     }
 
     public void finalize() {
+        // this also overrides Object.finalize(), so the garbage collector
+        // calls it again; only the first call before quit() counts
+        synchronized (m_lifecycleLock) {
+            if (m_finalized || m_quit) {
+                return;
+            }
+
+            // find the critical paths, fails on cycles
+            m_priorities = analyzeGraph();
+            m_finalized = true;
+        }
+
         // do the wiring
         for (Wire wire: m_wires) {
             IPluginLauncher out = wire.getSource().getLauncher();
             String outName = wire.getSourceName();
             IPluginLauncher in = wire.getDest().getLauncher();
             String inName = wire.getDestName();
-            PluginScheduler.getInstance().chain(out, outName, in, inName);
+            if (!isFusable(wire) || !m_scheduler.fuse(out, outName, in, inName)) {
+                m_scheduler.chain(out, outName, in, inName, wire.getCapacity(),
+                        wire.getBatchSize(), wire.getLingerMicros());
+            }
+        }
+
+        // share a pool that runs the critical path first; not safe if some
+        // plugin could block the pool on a full queue
+        boolean shared = m_sharedPool;
+        for (Wire wire: m_wires) {
+            if (Wire.UNBOUNDED != wire.getCapacity()) {
+                shared = false;
+            }
+        }
+        if (shared && null == m_pool) {
+            m_pool = PluginExecutorFactory.createPrioritized(
+                    PluginExecutorFactory.DEFAULT_PARALLELISM,
+                    (null == getName()) ? WORKFLOW : getName());
+        }
+
+        // start waiting for inputs
+        for (IModule module: m_moduleMap.values()) {
+            IPluginLauncher launcher = module.getLauncher();
+            if (null != launcher) {
+                launcher.setPriority(m_priorities.get(module));
+                launcher.setOrdered(m_ordered);
+                if (shared) {
+                    launcher.setSharedExecutor(m_pool);
+                }
+                launcher.start();
+            }
         }
 
         // promote leftover inputs and outputs to workflow inputs and outputs
@@ -480,6 +779,158 @@ public class Workflow implements IModule, IWorkflow, IWorkflowDebug {
         }
     }
 
+    /**
+     * Analyses the graph of modules formed by the wires.  Wires and workflow
+     * inputs must end at an input or output of a module in this workflow,
+     * otherwise whatever they were meant to connect stays unconnected.
+     * Inputs with no wire at all are fine, they become workflow inputs.
+     *
+     * @return for each module, the number of modules on the longest path
+     *   from it to the end of the workflow
+     * @throws IllegalStateException if something is unconnected or the wires
+     *   form a cycle
+     */
+    private Map<IModule, Integer> analyzeGraph() {
+        List<String> unconnected = new ArrayList<String>();
+        Map<IModule, List<IModule>> successors = new HashMap<IModule, List<IModule>>();
+        for (Wire wire: m_wires) {
+            IModule source = wire.getSource();
+            IModule dest = wire.getDest();
+            if (!isEndpoint(source, source.getOutputNames(), wire.getSourceName())) {
+                unconnected.add("wire from " + source.getName() + '.' + wire.getSourceName());
+            }
+            if (!isEndpoint(dest, dest.getInputNames(), wire.getDestName())) {
+                unconnected.add("wire to " + dest.getName() + '.' + wire.getDestName());
+            }
+            List<IModule> next = successors.get(source);
+            if (null == next) {
+                next = new ArrayList<IModule>();
+                successors.put(source, next);
+            }
+            next.add(dest);
+        }
+        for (String inName : m_inputNames) {
+            IModule dest = m_inputModules.get(inName);
+            if (!isEndpoint(dest, dest.getInputNames(), m_inputModuleNames.get(inName))) {
+                unconnected.add("input " + inName + " to " + dest.getName() + '.' + m_inputModuleNames.get(inName));
+            }
+        }
+        if (!unconnected.isEmpty()) {
+            throw new IllegalStateException("Unconnected in workflow " + getName() + ": " + unconnected);
+        }
+
+        Map<IModule, Integer> lengths = new HashMap<IModule, Integer>();
+        Set<IModule> visiting = new HashSet<IModule>();
+        for (IModule module: m_moduleMap.values()) {
+            pathLength(module, successors, lengths, visiting);
+        }
+        return lengths;
+    }
+
+    /**
+     * Checks that a name belongs to a module of this workflow.
+     *
+     * @param module
+     * @param names the module's input or output names
+     * @param name
+     * @return whether found
+     */
+    private boolean isEndpoint(IModule module, String[] names, String name) {
+        return m_moduleMap.get(module.getName()) == module && contains(names, name);
+    }
+
+    /**
+     * Finds the length of the longest path from a module, depth first.
+     *
+     * @param module
+     * @param successors modules wired to from each module
+     * @param lengths lengths found so far
+     * @param visiting modules on the current path
+     * @return number of modules on the longest path
+     * @throws IllegalStateException if the wires form a cycle
+     */
+    private int pathLength(IModule module, Map<IModule, List<IModule>> successors,
+            Map<IModule, Integer> lengths, Set<IModule> visiting) {
+        Integer length = lengths.get(module);
+        if (null == length) {
+            if (!visiting.add(module)) {
+                throw new IllegalStateException("Workflow " + getName() + " has a cycle through " + module.getName());
+            }
+            int longest = 0;
+            List<IModule> next = successors.get(module);
+            if (null != next) {
+                for (IModule dest : next) {
+                    longest = Math.max(longest, pathLength(dest, successors, lengths, visiting));
+                }
+            }
+            visiting.remove(module);
+            length = longest + 1;
+            lengths.put(module, length);
+        }
+        return length;
+    }
+
+    /**
+     * Gets the scheduling priority given to a module by finalize(), the
+     * number of modules on the longest path from it to the end of the
+     * workflow.
+     *
+     * @param module
+     * @return priority or 0 if not analysed
+     */
+    int getPriority(IModule module) {
+        Integer priority = m_priorities.get(module);
+        return (null == priority) ? 0 : priority;
+    }
+
+    private static boolean contains(String[] names, String name) {
+        for (String other : names) {
+            if (other.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a wire is the only link between a module's single output and
+     * the next module's single input, with no queue settings of its own.
+     * Such a wire may be fused, if the launchers agree.
+     *
+     * @param wire
+     * @return
+     */
+    private boolean isFusable(Wire wire) {
+        if (!m_fusion
+                || m_ordered
+                || Wire.UNBOUNDED != wire.getCapacity()
+                || Wire.NO_BATCH != wire.getBatchSize()) {
+            return false;
+        }
+        IModule source = wire.getSource();
+        IModule dest = wire.getDest();
+        if (1 != source.getOutputNames().length || 1 != dest.getInputNames().length) {
+            return false;
+        }
+        for (Wire other : m_wires) {
+            if (other != wire
+                    && (other.getSource() == source || other.getDest() == dest)) {
+                return false;
+            }
+        }
+        for (String name : m_outputNames) {
+            if (m_outputModules.get(name) == source) {
+                return false;
+            }
+        }
+        for (String name : m_inputNames) {
+            if (m_inputModules.get(name) == dest) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private boolean isWiredAsInput(IModule module, String name) {
         boolean found = false;
 
@@ -576,6 +1027,23 @@ public class Workflow implements IModule, IWorkflow, IWorkflowDebug {
     
     public void input(ItemWrapper image, String name) {
         if (m_inputNames.contains(name)) {
+            if (!m_registered) {
+                register();
+            }
+            m_inputCount.increment();
+            Tracer tracer = m_scheduler.getTracer();
+            if (null != tracer && null == image.getTrace()) {
+                image.setTrace(tracer.startTrace());
+            }
+            if (m_ordered && ItemWrapper.NO_SEQUENCE == image.getSequence()) {
+                // number images in the order they arrive
+                AtomicLong sequence = m_sequences.get(name);
+                if (null == sequence) {
+                    m_sequences.putIfAbsent(name, new AtomicLong());
+                    sequence = m_sequences.get(name);
+                }
+                image.setSequence(sequence.getAndIncrement());
+            }
             IModule dest = m_inputModules.get(name);
             String destName = m_inputModuleNames.get(name);
             dest.input(image, destName);
@@ -585,6 +1053,20 @@ public class Workflow implements IModule, IWorkflow, IWorkflowDebug {
         }
     }
 
+    /**
+     * Exposes the metrics through JMX, once, when the first image comes in.
+     * Not done in finalize(), which the garbage collector calls too.
+     */
+    private void register() {
+        synchronized (m_lifecycleLock) {
+            if (!m_registered && !m_quit) {
+                String id = (null != m_instanceId) ? m_instanceId : Integer.toHexString(System.identityHashCode(this));
+                m_scheduler.getMetrics().register(METRICS_TYPE, getName(), id);
+                m_registered = true;
+            }
+        }
+    }
+
     public void setOutputListener(IOutputListener listener) {
         synchronized (m_synchObject) {
             setOutputListener(Output.DEFAULT, listener);
@@ -597,8 +1079,90 @@ public class Workflow implements IModule, IWorkflow, IWorkflowDebug {
         }
     }
     
+    /**
+     * Sets how an output wired to several inputs passes on its images.  The
+     * image itself is never copied.  By default each input gets its own
+     * wrapper and properties; when shared all inputs get the same wrapper and
+     * must not modify it.
+     *
+     * @param shared whether to share a single wrapper
+     */
+    public void setSharedFanOut(boolean shared) {
+        m_scheduler.setSharedFanOut(shared);
+    }
+
+    /**
+     * Sets whether finalize() fuses linear chains of plugins.  A plugin
+     * whose single input is fed only by another plugin's single output then
+     * runs on that plugin's thread, with no queue in between.  On by
+     * default; must be set before finalize().
+     *
+     * @param fusion
+     */
+    public void setFusion(boolean fusion) {
+        m_fusion = fusion;
+    }
+
+    /**
+     * Sets whether the plugins of this workflow share one pool of threads,
+     * which runs waiting plugins on the longest path through the workflow
+     * first.  Otherwise each plugin has threads of its own.  The pool is only
+     * used if no wire has a limited capacity.  Off by default; must be set
+     * before finalize().
+     *
+     * @param sharedPool
+     */
+    public void setSharedPool(boolean sharedPool) {
+        m_sharedPool = sharedPool;
+    }
+
+    /**
+     * Sets whether outputs of this workflow come out in the order the inputs
+     * went in, even when plugins run in parallel.  Images are numbered as
+     * they are input, and a plugin with several inputs matches them up by
+     * number.  Linear chains are not fused.  Off by default; must be set
+     * before finalize().
+     *
+     * @param ordered
+     */
+    public void setOrdered(boolean ordered) {
+        m_ordered = ordered;
+    }
+
+    /**
+     * Gets the metrics of this workflow:  the number of images input and
+     * output, queue depths and items per wire, and plugin wait and run times.
+     * Once finalized they are also available through JMX, until quit.
+     *
+     * @return
+     */
+    public MetricsRegistry getMetrics() {
+        return m_scheduler.getMetrics();
+    }
+
+    /**
+     * Stops processing for this workflow and any nested workflows.  Other
+     * workflows keep running.
+     */
     public void quit() {
-        PluginScheduler.getInstance().quit();
+        synchronized (m_lifecycleLock) {
+            m_quit = true;
+        }
+        m_scheduler.quit();
+        for (IModule module: m_moduleMap.values()) {
+            IPluginLauncher launcher = module.getLauncher();
+            if (null != launcher) {
+                launcher.quit();
+            }
+            else if (module instanceof IWorkflow) {
+                ((IWorkflow) module).quit();
+            }
+        }
+        if (null != m_pool) {
+            // plugins that are already running or waiting get to finish
+            m_pool.shutdown();
+        }
+        m_scheduler.getMetrics().unregister();
     }
 
     public void clear() {
@@ -624,7 +1188,56 @@ public class Workflow implements IModule, IWorkflow, IWorkflowDebug {
         else {
             m_workflowDebugger = null;
         }
-        PluginScheduler.getInstance().setDebugger(m_workflowDebugger);
+        setDebugger(m_workflowDebugger);
+    }
+
+    /**
+     * Shares a debugger with this workflow and any nested workflows.
+     *
+     * @param debugger null or workflow debugger
+     */
+    void setDebugger(WorkflowDebugger debugger) {
+        m_workflowDebugger = debugger;
+        m_scheduler.setDebugger(debugger);
+        for (IModule module: m_moduleMap.values()) {
+            if (module instanceof Workflow) {
+                ((Workflow) module).setDebugger(debugger);
+            }
+        }
+    }
+
+    /**
+     * Traces images through this workflow and any nested workflows:  how
+     * long each waits in each queue and runs in each plugin.  Each input
+     * image starts a trace, unless already traced or not sampled.
+     *
+     * @param tracer null to stop tracing
+     */
+    public void setTracer(Tracer tracer) {
+        m_scheduler.setTracer(tracer);
+        for (IModule module: m_moduleMap.values()) {
+            if (module instanceof Workflow) {
+                ((Workflow) module).setTracer(tracer);
+            }
+        }
+    }
+
+    /**
+     * Gets the tracer, if any.
+     *
+     * @return null or tracer
+     */
+    public Tracer getTracer() {
+        return m_scheduler.getTracer();
+    }
+
+    /**
+     * Gets the scheduler that passes images among this workflow's plugins.
+     *
+     * @return scheduler
+     */
+    public PluginScheduler getScheduler() {
+        return m_scheduler;
     }
 
     /**
@@ -669,6 +1282,38 @@ public class Workflow implements IModule, IWorkflow, IWorkflowDebug {
         return previewInfoList;
     }
 
+    /**
+     * Gets the previews that became ready after a given serial number.  Pass
+     * the serial number of the last preview returned to the next call,
+     * starting with 0.
+     *
+     * @param serial serial number already seen
+     * @return list of new preview information
+     */
+    public List<PreviewInfo> getPreviewInfoListSince(long serial) {
+        List<PreviewInfo> previewInfoList = null;
+        if (null != m_workflowDebugger) {
+            previewInfoList = m_workflowDebugger.getPreviewInfoListSince(serial);
+        }
+        return previewInfoList;
+    }
+
+    /**
+     * Gets the previews for a given instance that became ready after a given
+     * serial number.
+     *
+     * @param instanceId identifies the instance
+     * @param serial serial number already seen
+     * @return list of new preview information
+     */
+    public List<PreviewInfo> getPreviewInfoListSince(String instanceId, long serial) {
+        List<PreviewInfo> previewInfoList = null;
+        if (null != m_workflowDebugger) {
+            previewInfoList = m_workflowDebugger.getPreviewInfoListSince(instanceId, serial);
+        }
+        return previewInfoList;
+    }
+
     /**
      * Listens for output images, passes them on to external listeners.
      */
@@ -677,6 +1322,7 @@ public class Workflow implements IModule, IWorkflow, IWorkflowDebug {
         public void outputImage(String name, ItemWrapper image) {
             // get output name associated with this source name
             String outName = m_outputModuleNames.get(name);
+            m_outputCount.increment();
             IOutputListener listener = m_listeners.get(outName);
             if (null != listener) {
                 listener.outputImage(outName, image);
@@ -30,11 +30,15 @@
 
 package imagej.workflow;
 
+import imagej.workflow.util.binary.BinaryReader;
+import imagej.workflow.util.xmllight.XMLException;
+import imagej.workflow.util.xmllight.XMLReader;
+
 /**
  *
  * @author Aivar Grislis
  */
-public class WorkflowFactory implements IModuleFactory {
+public class WorkflowFactory implements IBinaryModuleFactory, IXMLModuleFactory {
     private static WorkflowFactory s_instance = null;
 
     private WorkflowFactory() {
@@ -70,4 +74,30 @@ public class WorkflowFactory implements IModuleFactory {
         return workFlow;
     }
 
+    /**
+     * Creates a workflow from XML, read in place.
+     *
+     * @param reader positioned at the workflow's start tag
+     * @param instanceId null or unique instance identifier
+     * @return
+     * @throws XMLException
+     */
+    public IWorkflow create(XMLReader reader, String instanceId) throws XMLException {
+        Workflow workFlow = new Workflow(instanceId);
+        workFlow.fromXML(reader);
+        return workFlow;
+    }
+
+    /**
+     * Creates a workflow from a binary record.
+     *
+     * @param reader positioned at the start of the record body
+     * @param instanceId null or unique instance identifier
+     * @return
+     */
+    public IWorkflow create(BinaryReader reader, String instanceId) {
+        Workflow workFlow = new Workflow(instanceId);
+        workFlow.fromBinary(reader);
+        return workFlow;
+    }
 }
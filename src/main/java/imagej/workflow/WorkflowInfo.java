@@ -30,10 +30,12 @@
 
 package imagej.workflow;
 
+import imagej.workflow.util.binary.BinaryException;
+import imagej.workflow.util.binary.BinaryReader;
 import imagej.workflow.util.xmllight.XMLException;
-import imagej.workflow.util.xmllight.XMLParser;
-import imagej.workflow.util.xmllight.XMLTag;
+import imagej.workflow.util.xmllight.XMLReader;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 /**
@@ -47,17 +49,31 @@ public class WorkflowInfo implements IWorkflowInfo {
     String[] m_outputNames = new String[0];
     String[] m_moduleNames = new String[0];
     WireInfo[] m_wireInfos;
+    volatile ByteBuffer m_binary;
 
     /**
      * Constructor
      *
-     * @param fullName full package and class name of plugin
+     * @param xml
      */
     WorkflowInfo(String xml) {
         m_xml = xml;
         fromXML(xml);
     }
 
+    /**
+     * Constructor, given both representations.  Information is read from
+     * the binary one.
+     *
+     * @param xml
+     * @param binary
+     */
+    WorkflowInfo(String xml, ByteBuffer binary) {
+        m_xml = xml;
+        m_binary = binary;
+        fromBinary(binary);
+    }
+
     /**
      * Gets name of module.
      *
@@ -124,11 +140,93 @@ public class WorkflowInfo implements IWorkflowInfo {
         return m_xml;
     }
 
-    private boolean fromXML(String xml) {
+    /**
+     * Gets binary version of workflow.
+     *
+     * @return header and workflow record or null if not yet known
+     */
+    ByteBuffer getBinary() {
+        return m_binary;
+    }
+
+    /**
+     * Keeps binary version of workflow, so later instances need not parse
+     * the XML.
+     *
+     * @param binary
+     */
+    void setBinary(ByteBuffer binary) {
+        m_binary = binary;
+    }
+
+    private boolean fromBinary(ByteBuffer binary) {
         boolean success = false;
-        XMLParser xmlHelper = new XMLParser();
+        BinaryReader reader = new BinaryReader(binary);
+
+        try {
+            reader.readHeader();
+            BinaryReader.Record record = reader.readRecord();
+            if (!Workflow.WORKFLOW.equals(record.getTag())) {
+                throw new BinaryException("Missing workflow record");
+            }
+            m_name = reader.readString();
+
+            // module names; skip the modules themselves
+            int count = reader.readInt();
+            m_moduleNames = new String[count];
+            for (int i = 0; i < count; ++i) {
+                m_moduleNames[i] = reader.readString();
+                reader.skipRecord(reader.readRecord());
+            }
+
+            // wires
+            count = reader.readInt();
+            m_wireInfos = new WireInfo[count];
+            for (int i = 0; i < count; ++i) {
+                String sourceModuleName = reader.readString();
+                String sourceName = reader.readString();
+                String destModuleName = reader.readString();
+                String destName = reader.readString();
+                int capacity = reader.readInt();
+                int batchSize = Wire.NO_BATCH;
+                int lingerMicros = 0;
+                if (reader.getVersion() >= 2) {
+                    batchSize = reader.readInt();
+                    lingerMicros = reader.readInt();
+                }
+                m_wireInfos[i] = new WireInfo(sourceModuleName, sourceName, destModuleName, destName,
+                        capacity, batchSize, lingerMicros);
+            }
+
+            // inputs; skip module and name they go to
+            count = reader.readInt();
+            m_inputNames = new String[count];
+            for (int i = 0; i < count; ++i) {
+                m_inputNames[i] = reader.readString();
+                reader.readString();
+                reader.readString();
+            }
 
-        System.out.println("WorkflowInfo.fromXML >" + xml + "<");
+            // outputs; skip module and name they come from
+            count = reader.readInt();
+            m_outputNames = new String[count];
+            for (int i = 0; i < count; ++i) {
+                m_outputNames[i] = reader.readString();
+                reader.readString();
+                reader.readString();
+            }
+
+            success = true;
+        }
+        catch (BinaryException e) {
+            System.out.println("Binary Exception " + e.getMessage());
+        }
+        return success;
+    }
+
+    private boolean fromXML(String xml) {
+        boolean success = false;
+        XMLReader reader = new XMLReader(xml);
 
         try {
             // handle workflow tag and name
@@ -136,18 +234,14 @@ public class WorkflowInfo implements IWorkflowInfo {
             // <workflow>
             //   <name>workFlow1</name>
 
-            XMLTag tag = xmlHelper.getNextTag(xml);
-            if (!Workflow.WORKFLOW.equals(tag.getName())) {
+            if (!Workflow.WORKFLOW.equals(reader.peekTag())) {
                 throw new XMLException("Missing <workflow> tag");
             }
-            xml = tag.getContent();
-            tag = xmlHelper.getNextTag(xml);
-            if (!Workflow.NAME.equals(tag.getName())) {
+            reader.startTag(Workflow.WORKFLOW);
+            if (!Workflow.NAME.equals(reader.peekTag())) {
                 throw new XMLException("Missing <name> for <workflow>");
             }
-            m_name = tag.getContent();
-            System.out.println("parsed name as " + m_name);
-            xml = tag.getRemainder();
+            m_name = reader.readContent(Workflow.NAME);
 
             // handle modules
             //
@@ -164,31 +258,26 @@ public class WorkflowInfo implements IWorkflowInfo {
 
             List<String> modules = new ArrayList<String>();
 
-            tag = xmlHelper.getNextTag(xml);
-            if (!Workflow.MODULES.equals(tag.getName())) {
+            if (!Workflow.MODULES.equals(reader.peekTag())) {
                 throw new XMLException("Missing <modules> for <workflow>");
             }
-            String modulesXML = tag.getContent();
-            xml = tag.getRemainder();
-            while (!modulesXML.isEmpty()) {
-                tag = xmlHelper.getNextTag(modulesXML);
-                modulesXML = tag.getRemainder();
-
-                //if (tag.getName().isEmpty()) {
-                //    break;
-                //}
-                if (!Workflow.MODULE.equals(tag.getName())) {
+            reader.startTag(Workflow.MODULES);
+            while (!reader.isEndTag()) {
+                if (!Workflow.MODULE.equals(reader.peekTag())) {
                     throw new XMLException("Missing <module> within <modules>");
                 }
-                String moduleXML = tag.getContent();
-                tag = xmlHelper.getNextTag(moduleXML);
-                if (!Workflow.NAME.equals(tag.getName())) {
+                reader.startTag(Workflow.MODULE);
+                if (!Workflow.NAME.equals(reader.peekTag())) {
                     throw new XMLException("Missing <name> within <module>");
                 }
-                modules.add(tag.getName());
+                modules.add(reader.readContent(Workflow.NAME));
+
+                // skip the module itself
+                reader.skipElement();
+                reader.endTag(Workflow.MODULE);
             }
+            reader.endTag(Workflow.MODULES);
             m_moduleNames = modules.toArray(new String[0]);
-            System.out.println("# mod names is " + m_moduleNames.length);
 
             // handle wires
             //
@@ -202,45 +291,43 @@ public class WorkflowInfo implements IWorkflowInfo {
             //        <module>B</module>
             //        <name>INPUT</name>
             //      </dst>
+            //      <capacity>10</capacity>
             //    </wire>
             //  </wires>
 
             List<WireInfo> wireInfos = new ArrayList<WireInfo>();
 
-            tag = xmlHelper.getNextTag(xml);
-            if (!Workflow.WIRES.equals(tag.getName())) {
+            if (!Workflow.WIRES.equals(reader.peekTag())) {
                 throw new XMLException("Missing <wires> within <workflow>");
             }
-            String wiresXML = tag.getContent();
-            xml = tag.getRemainder();
-            while (!wiresXML.isEmpty()) {
-                tag = xmlHelper.getNextTag(wiresXML);
-                wiresXML = tag.getRemainder();
-
-                //if (tag.getName().isEmpty()) {
-                //    break;
-                //}
-                if (!Workflow.WIRE.equals(tag.getName())) {
+            reader.startTag(Workflow.WIRES);
+            while (!reader.isEndTag()) {
+                if (!Workflow.WIRE.equals(reader.peekTag())) {
                     throw new XMLException("Missing <wire> within <wires>");
                 }
-                String wireXML = tag.getContent();
-                tag = xmlHelper.getNextTag(wireXML);
-                wireXML = tag.getRemainder();
-                if (!Workflow.SRC.equals(tag.getName())) {
+                reader.startTag(Workflow.WIRE);
+                if (!Workflow.SRC.equals(reader.peekTag())) {
                     throw new XMLException("Missing <src> within <wire>");
                 }
-                String srcXML = tag.getContent();
-                ModuleNameAndName srcMNAN = parseModuleNameAndName(xmlHelper, srcXML);
+                reader.startTag(Workflow.SRC);
+                ModuleNameAndName srcMNAN = parseModuleNameAndName(reader);
+                reader.endTag(Workflow.SRC);
 
-                tag = xmlHelper.getNextTag(wireXML);
-                if (!Workflow.DST.equals(tag.getName())) {
+                if (!Workflow.DST.equals(reader.peekTag())) {
                     throw new XMLException("Missing <dst> within <wire>");
                 }
-                String dstXML = tag.getContent();
-                ModuleNameAndName dstMNAN = parseModuleNameAndName(xmlHelper, dstXML);
-
-                wireInfos.add(new WireInfo(srcMNAN.getModuleName(), srcMNAN.getName(), dstMNAN.getModuleName(), dstMNAN.getName()));
+                reader.startTag(Workflow.DST);
+                ModuleNameAndName dstMNAN = parseModuleNameAndName(reader);
+                reader.endTag(Workflow.DST);
+                int capacity = Workflow.parseWireOption(reader, Workflow.CAPACITY, Wire.UNBOUNDED);
+                int batchSize = Workflow.parseWireOption(reader, Workflow.BATCH, Wire.NO_BATCH);
+                int lingerMicros = Workflow.parseWireOption(reader, Workflow.LINGER, 0);
+                Workflow.endWire(reader);
+
+                wireInfos.add(new WireInfo(srcMNAN.getModuleName(), srcMNAN.getName(), dstMNAN.getModuleName(), dstMNAN.getName(),
+                        capacity, batchSize, lingerMicros));
             }
+            reader.endTag(Workflow.WIRES);
             m_wireInfos = wireInfos.toArray(new WireInfo[0]);
 
             // handle inputs
@@ -257,44 +344,33 @@ public class WorkflowInfo implements IWorkflowInfo {
 
             List<String> inputs = new ArrayList<String>();
 
-            tag = xmlHelper.getNextTag(xml);
-            if (!Workflow.INPUTS.equals(tag.getName())) {
+            if (!Workflow.INPUTS.equals(reader.peekTag())) {
                 throw new XMLException("Missing <inputs> within <workflow>");
             }
-            String inputsXML = tag.getContent();
-            xml = tag.getRemainder();
-            while (!inputsXML.isEmpty()) {
-                tag = xmlHelper.getNextTag(inputsXML);
-                inputsXML = tag.getRemainder();
-
-                if (tag.getName().isEmpty()) { //TODO don't think these are necessary
-                    break;
-                }
-
-                if (!Workflow.INPUT.equals(tag.getName())) {
+            reader.startTag(Workflow.INPUTS);
+            while (!reader.isEndTag()) {
+                if (!Workflow.INPUT.equals(reader.peekTag())) {
                     throw new XMLException("Missing <input> within <inputs>");
                 }
-                String inputXML = tag.getContent();
-
-                tag = xmlHelper.getNextTag(inputXML);
-                inputXML = tag.getRemainder();
-
-                if (!Workflow.NAME.equals(tag.getName())) {
+                reader.startTag(Workflow.INPUT);
+                if (!Workflow.NAME.equals(reader.peekTag())) {
                     throw new XMLException("Missing <name> within <input>");
                 }
-                String inName = tag.getContent();
+                String inName = reader.readContent(Workflow.NAME);
 
-                tag = xmlHelper.getNextTag(inputXML);
-                if (!Workflow.DST.equals(tag.getName())) {
+                if (!Workflow.DST.equals(reader.peekTag())) {
                     throw new XMLException("Missing <dest> within <input>");
                 }
-                String destXML = tag.getContent();
-                ModuleNameAndName destMNAN = parseModuleNameAndName(xmlHelper, destXML);
+                reader.startTag(Workflow.DST);
+                ModuleNameAndName destMNAN = parseModuleNameAndName(reader);
+                reader.endTag(Workflow.DST);
+                reader.endTag(Workflow.INPUT);
 
                 //TODO input is described by:
                 //    inName, destMNAN.getModuleName(), destMNAN.getName()
                 inputs.add(inName);
             }
+            reader.endTag(Workflow.INPUTS);
             m_inputNames = inputs.toArray(new String[0]);
 
             // handle outputs
@@ -310,45 +386,35 @@ public class WorkflowInfo implements IWorkflowInfo {
             
             List<String> outputs = new ArrayList<String>();
 
-            tag = xmlHelper.getNextTag(xml);
-            if (!Workflow.OUTPUTS.equals(tag.getName())) {
+            if (!Workflow.OUTPUTS.equals(reader.peekTag())) {
                 throw new XMLException("Missing <outputs> within <workflow>");
             }
-            String outputsXML = tag.getContent();
-            xml = tag.getRemainder();
-            while (!outputsXML.isEmpty()) {
-                tag = xmlHelper.getNextTag(outputsXML);
-                outputsXML = tag.getRemainder();
-
-                if (tag.getName().isEmpty()) { //TODO don't think these are necessary
-                    break;
-                }
-
-                if (!Workflow.OUTPUT.equals(tag.getName())) {
+            reader.startTag(Workflow.OUTPUTS);
+            while (!reader.isEndTag()) {
+                if (!Workflow.OUTPUT.equals(reader.peekTag())) {
                     throw new XMLException("Missing <output> within <outputs>");
                 }
-                String outputXML = tag.getContent();
-
-                tag = xmlHelper.getNextTag(outputXML);
-                outputXML = tag.getRemainder();
-
-                if (!Workflow.NAME.equals(tag.getName())) {
+                reader.startTag(Workflow.OUTPUT);
+                if (!Workflow.NAME.equals(reader.peekTag())) {
                     throw new XMLException("Missing <name> within <output>");
                 }
-                String outName = tag.getContent();
+                String outName = reader.readContent(Workflow.NAME);
 
-                tag = xmlHelper.getNextTag(outputXML);
-                if (!Workflow.SRC.equals(tag.getName())) {
+                if (!Workflow.SRC.equals(reader.peekTag())) {
                     throw new XMLException("Missing <src> within <output>");
                 }
-                String srcXML = tag.getContent();
-                ModuleNameAndName srcMNAN = parseModuleNameAndName(xmlHelper, srcXML);
+                reader.startTag(Workflow.SRC);
+                ModuleNameAndName srcMNAN = parseModuleNameAndName(reader);
+                reader.endTag(Workflow.SRC);
+                reader.endTag(Workflow.OUTPUT);
 
                 //TODO input is described by:
                 //    outName, srcMAN.getModule(), srcMAN.getName()
 
                 outputs.add(outName);
             }
+            reader.endTag(Workflow.OUTPUTS);
+            reader.endTag(Workflow.WORKFLOW);
             m_outputNames = outputs.toArray(new String[0]);
 
             success = true;
@@ -359,18 +425,15 @@ public class WorkflowInfo implements IWorkflowInfo {
         return success;
     }
 
-    private ModuleNameAndName parseModuleNameAndName(XMLParser xmlHelper, String xml) throws XMLException {
-        XMLTag tag = xmlHelper.getNextTag(xml);
-        if (!Workflow.MODULE.equals(tag.getName())) {
+    private ModuleNameAndName parseModuleNameAndName(XMLReader reader) throws XMLException {
+        if (!Workflow.MODULE.equals(reader.peekTag())) {
             throw new XMLException("Missing <module> tag");
         }
-        String moduleName = tag.getContent();
-        xml = tag.getRemainder();
-        tag = xmlHelper.getNextTag(xml);
-        if (!Workflow.NAME.equals(tag.getName())) {
+        String moduleName = reader.readContent(Workflow.MODULE);
+        if (!Workflow.NAME.equals(reader.peekTag())) {
             throw new XMLException("Missing <name> tag");
         }
-        String name = tag.getContent();
+        String name = reader.readContent(Workflow.NAME);
 
         return new ModuleNameAndName(moduleName, name);
     }
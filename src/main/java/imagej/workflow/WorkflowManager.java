@@ -34,14 +34,17 @@ import imagej.workflow.plugin.IPlugin;
 import imagej.workflow.plugin.annotations.Input;
 import imagej.workflow.plugin.annotations.Item;
 import imagej.workflow.plugin.annotations.Output;
+import imagej.workflow.util.binary.BinaryException;
 import imagej.workflow.util.xmllight.XMLException;
-import imagej.workflow.util.xmllight.XMLParser;
-import imagej.workflow.util.xmllight.XMLTag;
+import imagej.workflow.util.xmllight.XMLReader;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.prefs.Preferences;
 
 import net.java.sezpoz.Index;
@@ -59,6 +62,7 @@ public class WorkflowManager implements IWorkflowManager {
     private Preferences m_prefs = Preferences.userNodeForPackage(getClass());
     private Map<String, IWorkflowInfo> m_workflows;
     private Map<String, IModuleInfo> m_plugins;
+    private ConcurrentMap<IModuleInfo, ModuleTemplate> m_templates = new ConcurrentHashMap<IModuleInfo, ModuleTemplate>();
 
     /**
      * Gets singleton instance.
@@ -86,7 +90,19 @@ public class WorkflowManager implements IWorkflowManager {
      * @param workflow
      */
     public void addWorkflow(IWorkflow workflow) {
-        m_workflows.put(workflow.getName(), new WorkflowInfo(workflow.toXML())); //TODO going to XML and back is odd
+        WorkflowInfo workflowInfo;
+        if (workflow instanceof Workflow) {
+            // XML is kept for saving, binary for creating instances
+            Workflow workflowImpl = (Workflow) workflow;
+            workflowInfo = new WorkflowInfo(workflowImpl.toXML(), workflowImpl.toBinary());
+        }
+        else {
+            workflowInfo = new WorkflowInfo(workflow.toXML());
+        }
+        IWorkflowInfo previous = m_workflows.put(workflow.getName(), workflowInfo);
+        if (null != previous) {
+            m_templates.remove(previous);
+        }
     }
 
     /**
@@ -95,7 +111,10 @@ public class WorkflowManager implements IWorkflowManager {
      * @param name
      */
     public void deleteWorkflow(String name) {
-        m_workflows.remove(name);
+        IWorkflowInfo previous = m_workflows.remove(name);
+        if (null != previous) {
+            m_templates.remove(previous);
+        }
     }
 
     /**
@@ -155,13 +174,43 @@ public class WorkflowManager implements IWorkflowManager {
      * @return
      */
     public IModule createInstance(IModuleInfo moduleInfo, String instanceId) {
-        String xml = moduleInfo.toXML();
+        // after the first instance, copy from compiled template
+        ModuleTemplate template = m_templates.get(moduleInfo);
+        if (null != template) {
+            return template.instantiate(instanceId);
+        }
+
         IModule module = null;
-        try {
-            module = ModuleFactory.getInstance().create(xml, instanceId);
+
+        // workflows are created from the binary format when possible
+        ByteBuffer binary = null;
+        if (moduleInfo instanceof WorkflowInfo) {
+            binary = ((WorkflowInfo) moduleInfo).getBinary();
         }
-        catch (XMLException e) {
-            System.out.println("internal XML problem " + e.getMessage());
+        if (null != binary) {
+            try {
+                module = ModuleFactory.getInstance().create(binary, instanceId);
+            }
+            catch (BinaryException e) {
+                System.out.println("internal binary problem " + e.getMessage());
+            }
+        }
+        else {
+            String xml = moduleInfo.toXML();
+            try {
+                module = ModuleFactory.getInstance().create(xml, instanceId);
+            }
+            catch (XMLException e) {
+                System.out.println("internal XML problem " + e.getMessage());
+            }
+
+            // parse XML only once
+            if (moduleInfo instanceof WorkflowInfo && module instanceof Workflow) {
+                ((WorkflowInfo) moduleInfo).setBinary(((Workflow) module).toBinary());
+            }
+        }
+        if (null != module) {
+            m_templates.putIfAbsent(moduleInfo, ModuleTemplate.compile(module));
         }
         return module;
     }
@@ -177,18 +226,16 @@ public class WorkflowManager implements IWorkflowManager {
            System.out.println("Parsing workflow XML>" + xml + "<");
         }
         Map<String, IWorkflowInfo> map = new HashMap<String, IWorkflowInfo>();
-        XMLParser xmlHelper = new XMLParser();
+        XMLReader reader = new XMLReader(xml);
 
         try {
-            while (!xml.isEmpty()) {
+            while (!reader.isAtEnd()) {
                 // look for workflow tag
-                XMLTag tag = xmlHelper.getNextTag(xml);
-                if (!Workflow.WORKFLOW.equals(tag.getName())) {
+                if (!Workflow.WORKFLOW.equals(reader.peekTag())) {
                     throw new XMLException("Missing <workflow> tag");
                 }
-                IWorkflowInfo workflowInfo = new WorkflowInfo(xml);
+                IWorkflowInfo workflowInfo = new WorkflowInfo(reader.readElement());
                 map.put(workflowInfo.getName(), workflowInfo);
-                xml = tag.getRemainder();
             }
         }
         catch (XMLException e) {
@@ -0,0 +1,94 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled template for a workflow.  Keeps templates for the modules and
+ * the wiring plan.
+ *
+ * @author Aivar Grislis
+ */
+class WorkflowTemplate extends ModuleTemplate {
+    private final String m_name;
+    private final ModuleTemplate[] m_modules;
+    private final WireInfo[] m_wires;
+    private final WireInfo[] m_inputs;
+    private final WireInfo[] m_outputs;
+
+    /**
+     * Constructor.
+     *
+     * @param name
+     * @param modules
+     * @param wires
+     * @param inputs source module name is null, source name is input name
+     * @param outputs dest module name is null, dest name is output name
+     */
+    WorkflowTemplate(String name, ModuleTemplate[] modules, WireInfo[] wires,
+            WireInfo[] inputs, WireInfo[] outputs) {
+        m_name = name;
+        m_modules = modules;
+        m_wires = wires;
+        m_inputs = inputs;
+        m_outputs = outputs;
+    }
+
+    IModule instantiate(String instanceId) {
+        Workflow workflow = new Workflow(instanceId);
+        workflow.setName(m_name);
+
+        Map<String, IModule> moduleMap = new HashMap<String, IModule>();
+        for (ModuleTemplate template : m_modules) {
+            IModule module = template.instantiate(null);
+            moduleMap.put(module.getName(), module);
+            workflow.add(module);
+        }
+        for (WireInfo wire : m_wires) {
+            workflow.wire(
+                    moduleMap.get(wire.getSourceModuleName()), wire.getSourceName(),
+                    moduleMap.get(wire.getDestModuleName()), wire.getDestName(),
+                    wire.getCapacity(), wire.getBatchSize(), wire.getLingerMicros());
+        }
+        for (WireInfo input : m_inputs) {
+            workflow.wireInput(input.getSourceName(),
+                    moduleMap.get(input.getDestModuleName()), input.getDestName());
+        }
+        for (WireInfo output : m_outputs) {
+            workflow.wireOutput(output.getDestName(),
+                    moduleMap.get(output.getSourceModuleName()), output.getSourceName());
+        }
+        workflow.finalize();
+        return workflow;
+    }
+}
@@ -41,6 +41,7 @@ public class DebugInfo {
     private final String m_instanceId;
     private final String m_desc;
     private final ItemWrapper m_itemWrapper;
+    private long m_sequence;
 
     /**
      * Creates debugging information instance.
@@ -81,4 +82,22 @@ public class DebugInfo {
     public ItemWrapper getItemWrapper() {
         return m_itemWrapper;
     }
+
+    /**
+     * Sets order in which this was captured.
+     *
+     * @param sequence
+     */
+    void setSequence(long sequence) {
+        m_sequence = sequence;
+    }
+
+    /**
+     * Gets order in which this was captured.
+     *
+     * @return sequence
+     */
+    long getSequence() {
+        return m_sequence;
+    }
 }
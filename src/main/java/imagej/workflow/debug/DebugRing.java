@@ -0,0 +1,137 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.debug;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size ring of debugging information.  Adding never blocks or
+ * allocates:  a writer claims the next slot with an atomic increment and
+ * overwrites whatever was there.  Once full the oldest entries are lost.
+ *
+ * @author Aivar Grislis
+ */
+class DebugRing {
+    private final AtomicReferenceArray<DebugInfo> m_slots;
+    private final int m_mask;
+    private final AtomicLong m_next = new AtomicLong();
+    private long m_lastDrained = -1;
+    private long m_lost = 0;
+
+    /**
+     * Creates a ring.
+     *
+     * @param capacity rounded up to a power of two
+     */
+    DebugRing(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        m_slots = new AtomicReferenceArray<DebugInfo>(size);
+        m_mask = size - 1;
+    }
+
+    /**
+     * Gets the number of slots.
+     *
+     * @return
+     */
+    int getCapacity() {
+        return m_slots.length();
+    }
+
+    /**
+     * Adds debugging information, overwriting the oldest if full.
+     *
+     * @param debugInfo
+     */
+    void add(DebugInfo debugInfo) {
+        long sequence = m_next.getAndIncrement();
+        debugInfo.setSequence(sequence);
+        m_slots.set((int) (sequence & m_mask), debugInfo);
+    }
+
+    /**
+     * Removes all debugging information, oldest first.  Only one thread may
+     * drain at a time.
+     * <p>
+     * Entries missing between the ones drained were overwritten.  A writer
+     * may not have filled its slot yet, in which case the entry is drained
+     * late, next time, and no longer counts as lost.
+     *
+     * @return
+     */
+    List<DebugInfo> drain() {
+        List<DebugInfo> debugInfoList = new ArrayList<DebugInfo>();
+        for (int i = 0; i < m_slots.length(); ++i) {
+            DebugInfo debugInfo = m_slots.getAndSet(i, null);
+            if (null != debugInfo) {
+                debugInfoList.add(debugInfo);
+            }
+        }
+        Collections.sort(debugInfoList, new Comparator<DebugInfo>() {
+            public int compare(DebugInfo info1, DebugInfo info2) {
+                long sequence1 = info1.getSequence();
+                long sequence2 = info2.getSequence();
+                return (sequence1 < sequence2) ? -1 : ((sequence1 == sequence2) ? 0 : 1);
+            }
+        });
+        for (DebugInfo debugInfo : debugInfoList) {
+            long sequence = debugInfo.getSequence();
+            if (sequence > m_lastDrained) {
+                m_lost += sequence - m_lastDrained - 1;
+                m_lastDrained = sequence;
+            }
+            else {
+                // counted as lost in an earlier gap
+                --m_lost;
+            }
+        }
+        return debugInfoList;
+    }
+
+    /**
+     * Gets the number of entries overwritten before they could be drained.
+     * Only up to date as of the last drain, and only counts entries older
+     * than the newest one drained.
+     *
+     * @return
+     */
+    long getLost() {
+        return m_lost;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.debug;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which items passing along one wire get captured for debugging:
+ * every Nth item, or at most one item per interval of time.
+ *
+ * @author Aivar Grislis
+ */
+class DebugSampler {
+    private final int m_everyNth;
+    private final long m_intervalNanos;
+    private final AtomicLong m_count = new AtomicLong();
+    private final AtomicLong m_nextNanos = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Creates a sampler.
+     *
+     * @param everyNth capture every Nth item, 1 for all; ignored if an
+     * interval is given
+     * @param intervalNanos capture at most one item per interval, or 0
+     */
+    DebugSampler(int everyNth, long intervalNanos) {
+        m_everyNth = Math.max(1, everyNth);
+        m_intervalNanos = intervalNanos;
+    }
+
+    /**
+     * Decides whether to capture the next item.
+     *
+     * @return
+     */
+    boolean sample() {
+        if (0 < m_intervalNanos) {
+            long now = System.nanoTime();
+            long next = m_nextNanos.get();
+            // only one of several racing threads gets the sample
+            return (Long.MIN_VALUE == next || now - next >= 0)
+                    && m_nextNanos.compareAndSet(next, now + m_intervalNanos);
+        }
+        return 1 == m_everyNth || 0 == m_count.getAndIncrement() % m_everyNth;
+    }
+}
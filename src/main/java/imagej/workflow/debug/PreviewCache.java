@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.debug;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of preview files on disk.
+ * <p>
+ * The number of files and their total size are limited.  When either limit
+ * is exceeded the oldest files are deleted.
+ * <p>
+ * Not thread safe, the debugger synchronizes access.
+ *
+ * @author Aivar Grislis
+ */
+class PreviewCache {
+    private final Map<File, Long> m_sizes = new LinkedHashMap<File, Long>();
+    private int m_maxFiles;
+    private long m_maxBytes;
+    private long m_bytes = 0;
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxFiles maximum number of files
+     * @param maxBytes maximum total size of files
+     */
+    PreviewCache(int maxFiles, long maxBytes) {
+        m_maxFiles = maxFiles;
+        m_maxBytes = maxBytes;
+    }
+
+    /**
+     * Changes the limits.  Evicts files if necessary.
+     *
+     * @param maxFiles
+     * @param maxBytes
+     * @return evicted files, already deleted
+     */
+    List<File> setLimits(int maxFiles, long maxBytes) {
+        m_maxFiles = maxFiles;
+        m_maxBytes = maxBytes;
+        return evict();
+    }
+
+    /**
+     * Adds a newly written preview file.
+     *
+     * @param file
+     * @return evicted files, already deleted
+     */
+    List<File> add(File file) {
+        long size = file.length();
+        m_sizes.put(file, size);
+        m_bytes += size;
+        return evict();
+    }
+
+    /**
+     * Checks whether a file is still cached.
+     *
+     * @param file
+     * @return
+     */
+    boolean contains(File file) {
+        return m_sizes.containsKey(file);
+    }
+
+    /**
+     * Deletes all files.
+     */
+    void clear() {
+        for (File file : m_sizes.keySet()) {
+            file.delete();
+        }
+        m_sizes.clear();
+        m_bytes = 0;
+    }
+
+    /**
+     * Deletes oldest files until within limits.
+     *
+     * @return deleted files
+     */
+    private List<File> evict() {
+        List<File> evicted = new ArrayList<File>();
+        Iterator<Map.Entry<File, Long>> iterator = m_sizes.entrySet().iterator();
+        while (iterator.hasNext() && (m_sizes.size() > m_maxFiles || m_bytes > m_maxBytes)) {
+            Map.Entry<File, Long> entry = iterator.next();
+            iterator.remove();
+            m_bytes -= entry.getValue();
+            entry.getKey().delete();
+            evicted.add(entry.getKey());
+        }
+        return evicted;
+    }
+}
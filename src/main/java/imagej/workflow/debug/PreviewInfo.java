@@ -39,6 +39,7 @@ public class PreviewInfo {
     private final String m_instanceId;
     private final String m_desc;
     private final String m_content;
+    private long m_serial;
 
     /**
      * Creates preview information instance.
@@ -79,4 +80,22 @@ public class PreviewInfo {
     public String getContent() {
         return m_content;
     }
+
+    /**
+     * Sets serial number, in the order previews became ready.
+     *
+     * @param serial
+     */
+    void setSerial(long serial) {
+        m_serial = serial;
+    }
+
+    /**
+     * Get serial number, in the order previews became ready.
+     *
+     * @return serial number, starting with 1
+     */
+    public long getSerial() {
+        return m_serial;
+    }
 }
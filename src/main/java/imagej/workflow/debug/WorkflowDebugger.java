@@ -32,11 +32,28 @@ package imagej.workflow.debug;
 
 import imagej.workflow.plugin.ItemWrapper;
 
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.imageio.ImageIO;
 
@@ -46,6 +63,22 @@ import javax.imageio.ImageIO;
  * information is used to display the debugging information on a web page.  In
  * particular, images are saved to the file system to be displayed on the web
  * page.
+ * <p>
+ * Debugging information is captured in a ring of fixed size, without locking,
+ * so a busy workflow may overwrite entries before they are previewed.  The
+ * preview list is bounded the same way, oldest previews are dropped.  Each
+ * wire may capture only a sample of its items, every Nth item or at most one
+ * item per interval of time.
+ * <p>
+ * Images are previewed as small thumbnails, rendered by a background thread.
+ * The preview list only includes previews that are ready.  An image captured
+ * along several wires at once is rendered once, for all of them.  The oldest
+ * preview files are deleted once there are too many or they take up too much
+ * space.
+ * <p>
+ * Previews are indexed by instance.  Each preview gets a serial number once
+ * it is ready, so a client that polls can ask for just the previews since the
+ * last serial number it saw.
  *
  * @author Aivar Grislis
  */
@@ -56,87 +89,243 @@ public class WorkflowDebugger {
     private static final String IMAGE = "image";
     private static final String PREVIEW_FILE_DIR = WEB_DIR + "/" + PREVIEW_DIR;
     private static final String PREVIEW_FILE_NAME = PREVIEW_FILE_DIR + "/" + IMAGE;
-    private static final String PREVIEW_WEB_NAME = PREVIEW_DIR + '/' + IMAGE;
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_THUMBNAIL_SIZE = 256;
+    public static final long DEFAULT_MAX_PREVIEW_BYTES = 16 * 1024 * 1024;
     private Object m_synchObject = new Object();
-    private List<DebugInfo> m_debugInfoList = new ArrayList<DebugInfo>();
-    private List<PreviewInfo> m_previewInfoList = new ArrayList<PreviewInfo>();
-    private List<File> m_previewFileList = new ArrayList<File>();
+    private final DebugRing m_debugInfoRing;
+    private final int m_capacity;
+    private final PreviewList m_previewList = new PreviewList();
+    private final Map<String, PreviewList> m_instancePreviewLists = new HashMap<String, PreviewList>();
+    private long m_serial = 0;
+    private final PreviewCache m_previewCache;
+    private final ThreadPoolExecutor m_renderer;
+    private int m_pendingCount = 0;
+    private int m_thumbnailSize = DEFAULT_THUMBNAIL_SIZE;
     private int m_ordinal = 0;
+    private volatile int m_everyNth = 1;
+    private volatile long m_intervalNanos = 0;
+    private final ConcurrentMap<String, ConcurrentMap<String, DebugSampler>> m_samplers
+            = new ConcurrentHashMap<String, ConcurrentMap<String, DebugSampler>>();
 
     /**
      * Creates a debugger.
      */
     public WorkflowDebugger() {
-        (new File(PREVIEW_FILE_DIR)).mkdir();
+        this(DEFAULT_CAPACITY);
     }
 
     /**
-     * Adds debugging information.
+     * Creates a debugger that keeps a limited amount of debugging and preview
+     * information.
+     *
+     * @param capacity maximum number of entries kept
+     */
+    public WorkflowDebugger(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid debugger capacity " + capacity);
+        }
+        m_debugInfoRing = new DebugRing(capacity);
+        m_capacity = capacity;
+        m_previewCache = new PreviewCache(capacity, DEFAULT_MAX_PREVIEW_BYTES);
+
+        // one rendering thread, only while there is work
+        m_renderer = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "WorkflowDebugger-preview");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        m_renderer.allowCoreThreadTimeOut(true);
+        (new File(PREVIEW_FILE_DIR)).mkdirs();
+    }
+
+    /**
+     * Sets the size of preview thumbnails.
+     *
+     * @param thumbnailSize maximum width and height in pixels
+     */
+    public void setThumbnailSize(int thumbnailSize) {
+        synchronized (m_synchObject) {
+            m_thumbnailSize = thumbnailSize;
+        }
+    }
+
+    /**
+     * Limits the preview files on disk.  The oldest files are deleted first,
+     * and their previews dropped.
+     *
+     * @param maxFiles maximum number of files
+     * @param maxBytes maximum total size of files
+     */
+    public void setPreviewLimits(int maxFiles, long maxBytes) {
+        synchronized (m_synchObject) {
+            dropPreviews(m_previewCache.setLimits(maxFiles, maxBytes));
+        }
+    }
+
+    /**
+     * Captures every Nth item on all wires.  Replaces any per-wire settings.
+     *
+     * @param everyNth 1 to capture all items
+     */
+    public void setSampling(int everyNth) {
+        m_everyNth = everyNth;
+        m_intervalNanos = 0;
+        m_samplers.clear();
+    }
+
+    /**
+     * Captures at most one item per interval on each wire.  Replaces any
+     * per-wire settings.
+     *
+     * @param intervalMillis
+     */
+    public void setSamplingInterval(long intervalMillis) {
+        m_intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        m_samplers.clear();
+    }
+
+    /**
+     * Captures every Nth item on the wires from one output.
+     *
+     * @param instanceId identifies the source instance
+     * @param outName source output name
+     * @param everyNth 1 to capture all items
+     */
+    public void setSampling(String instanceId, String outName, int everyNth) {
+        getSamplers(instanceId).put(outName, new DebugSampler(everyNth, 0));
+    }
+
+    /**
+     * Captures at most one item per interval on the wires from one output.
+     *
+     * @param instanceId identifies the source instance
+     * @param outName source output name
+     * @param intervalMillis
+     */
+    public void setSamplingInterval(String instanceId, String outName, long intervalMillis) {
+        getSamplers(instanceId).put(outName,
+                new DebugSampler(1, TimeUnit.MILLISECONDS.toNanos(intervalMillis)));
+    }
+
+    /**
+     * Decides whether to capture an item passing from one output.  Checked
+     * before building any debugging information.
+     * <p>
+     * Called during workflow execution.
+     *
+     * @param instanceId identifies the source instance
+     * @param outName source output name
+     * @return whether to capture
+     */
+    public boolean sample(String instanceId, String outName) {
+        ConcurrentMap<String, DebugSampler> samplers = getSamplers(instanceId);
+        DebugSampler sampler = samplers.get(outName);
+        if (null == sampler) {
+            samplers.putIfAbsent(outName, new DebugSampler(m_everyNth, m_intervalNanos));
+            sampler = samplers.get(outName);
+        }
+        return sampler.sample();
+    }
+
+    /**
+     * Adds debugging information.  Overwrites the oldest information if the
+     * debugger is full.
      * <p>
      * Called during workflow execution.
      *
      * @param debugInfo debugging information
      */
     public void addDebugInfo(DebugInfo debugInfo) {
+        m_debugInfoRing.add(debugInfo);
+    }
+
+    /**
+     * Gets the number of debugging information entries overwritten before
+     * they could be previewed, as of the last preview.
+     *
+     * @return
+     */
+    public long getLostCount() {
         synchronized (m_synchObject) {
-            //System.out.println("add debuginfo " + debugInfo.getInstanceId() + " " + debugInfo.getDesc());
-            m_debugInfoList.add(debugInfo);
+            return m_debugInfoRing.getLost();
         }
     }
 
     /**
      * Gets a snapshot of the preview information list.  Processes the debugging
-     * information list.
+     * information list.  Images are previewed in the background; they are
+     * only included once ready.
      * <p>
      * Called during or after workflow execution.
      *
      * @return list of preview information.
      */
     public List<PreviewInfo> getPreviewInfoList() {
-        List<PreviewInfo> previewInfoList = new ArrayList<PreviewInfo>();
         synchronized (m_synchObject) {
-            // are we up to date?
-            if (!m_debugInfoList.isEmpty()) {
-                for (DebugInfo debugInfo : m_debugInfoList) {
-                    System.out.println("debugInfo " + debugInfo.getDesc() + " " + debugInfo.getInstanceId());
-                    ItemWrapper itemWrapper = debugInfo.getItemWrapper();
-                    Object item = itemWrapper.getItem();
-                    if (null != item) {
-                        String content = "";
-                        if (item instanceof RenderedImage) {
-                            // save images to local file system web site for preview
-                            String fileSuffix = m_ordinal++ + "." + FORMAT;
-                            String fileName = PREVIEW_FILE_NAME + fileSuffix;
-                            String webName = PREVIEW_WEB_NAME + fileSuffix;
-                            File file = makePreviewFile(
-                                    (RenderedImage) item,
-                                    fileName,
-                                    FORMAT);
-                            m_previewFileList.add(file);
-                            content = "<html><body>"
-                                    +   "<a href='" + webName
-                                    +       "' target='_blank'>"    // open link in new window
-                                    +     "<img src='" + webName + "'/>"
-                                    +   "</a>"
-                                    + "</body></html>";
-                        }
-                        else {
-                            content = item.toString();
-                        }
-                        m_previewInfoList.add(
-                                new PreviewInfo(
-                                        debugInfo.getInstanceId(),
-                                        debugInfo.getDesc(),
-                                        content));
-                    }
-                }
+            update();
+            return m_previewList.getReady();
+        }
+    }
+
+    /**
+     * Gets the previews that became ready after a given serial number, in
+     * the order they became ready.  Pass the serial number of the last
+     * preview returned to the next call, starting with 0.
+     * <p>
+     * Called during or after workflow execution.
+     *
+     * @param serial serial number already seen
+     * @return list of new preview information
+     */
+    public List<PreviewInfo> getPreviewInfoListSince(long serial) {
+        synchronized (m_synchObject) {
+            update();
+            return m_previewList.getReadySince(serial);
+        }
+    }
 
-                // processed this debugging information
-                m_debugInfoList.clear();
+    /**
+     * Gets the previews for a given instance that became ready after a given
+     * serial number, in the order they became ready.
+     * <p>
+     * Called during or after workflow execution.
+     *
+     * @param instanceId identifies the instance
+     * @param serial serial number already seen
+     * @return list of new preview information
+     */
+    public List<PreviewInfo> getPreviewInfoListSince(String instanceId, long serial) {
+        synchronized (m_synchObject) {
+            update();
+            PreviewList previewList = m_instancePreviewLists.get(instanceId);
+            return (null == previewList)
+                    ? new ArrayList<PreviewInfo>()
+                    : previewList.getReadySince(serial);
+        }
+    }
+
+    /**
+     * Waits for images already in the preview list to be rendered.
+     *
+     * @param timeoutMillis
+     * @return whether all were rendered
+     */
+    public boolean awaitPreviews(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (m_synchObject) {
+            while (0 < m_pendingCount) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                m_synchObject.wait(remaining);
             }
-            // return snapshot of preview list
-            previewInfoList.addAll(m_previewInfoList);
-            return previewInfoList;
+            return true;
         }
     }
 
@@ -150,15 +339,13 @@ public class WorkflowDebugger {
      * @return list of preview information
      */
     public List<PreviewInfo> getPreviewInfoList(String instanceId) {
-        //dump("full list" , getPreviewInfoList());
-        List<PreviewInfo> previewInfoList = new ArrayList<PreviewInfo>();
-        for (PreviewInfo previewInfo : getPreviewInfoList()) {
-            if (instanceId.equals(previewInfo.getInstanceId())) {
-                previewInfoList.add(previewInfo);
-            }
+        synchronized (m_synchObject) {
+            update();
+            PreviewList previewList = m_instancePreviewLists.get(instanceId);
+            return (null == previewList)
+                    ? new ArrayList<PreviewInfo>()
+                    : previewList.getReady();
         }
-        //dump(instanceId, previewInfoList);
-        return previewInfoList;
     }
 
     void dump(String title, List<PreviewInfo> list) {
@@ -176,29 +363,374 @@ public class WorkflowDebugger {
      */
     public void clear() {
         synchronized (m_synchObject) {
-            for (File file : m_previewFileList) {
-                file.delete();
+            m_debugInfoRing.drain();
+            for (Preview preview : m_previewList.m_previews) {
+                preview.cancel();
+            }
+            m_previewList.clear();
+            m_instancePreviewLists.clear();
+            m_previewCache.clear();
+        }
+    }
+
+    /**
+     * Gets the sampling settings for the outputs of a source instance.
+     *
+     * @param instanceId
+     * @return map of output name to sampler
+     */
+    private ConcurrentMap<String, DebugSampler> getSamplers(String instanceId) {
+        ConcurrentMap<String, DebugSampler> samplers = m_samplers.get(instanceId);
+        if (null == samplers) {
+            m_samplers.putIfAbsent(instanceId, new ConcurrentHashMap<String, DebugSampler>());
+            samplers = m_samplers.get(instanceId);
+        }
+        return samplers;
+    }
+
+    /**
+     * Processes the debugging information captured since the last update.
+     * Called while synchronized.
+     */
+    private void update() {
+        List<DebugInfo> debugInfoList = m_debugInfoRing.drain();
+
+        // an image put along several wires is captured for each of them; the
+        // image may change later on, so only share within this capture
+        Map<Object, RenderTask> renderTasks = new IdentityHashMap<Object, RenderTask>();
+        for (DebugInfo debugInfo : debugInfoList) {
+            ItemWrapper itemWrapper = debugInfo.getItemWrapper();
+            Object item = itemWrapper.getItem();
+            if (null != item) {
+                Preview preview = new Preview(debugInfo.getInstanceId(), debugInfo.getDesc());
+                m_previewList.add(preview);
+                getInstancePreviewList(preview.m_instanceId).add(preview);
+                if (item instanceof RenderedImage) {
+                    // render a thumbnail in the background
+                    preview.m_image = (RenderedImage) item;
+                    RenderTask renderTask = renderTasks.get(item);
+                    if (null == renderTask) {
+                        renderTask = new RenderTask();
+                        renderTasks.put(item, renderTask);
+                    }
+                    renderTask.add(preview);
+                }
+                else {
+                    ready(preview, item.toString());
+                }
+
+                // drop oldest preview
+                if (m_previewList.size() > m_capacity) {
+                    dropPreview(m_previewList.m_previews.getFirst());
+                }
+            }
+        }
+        for (RenderTask renderTask : renderTasks.values()) {
+            ++m_pendingCount;
+            m_renderer.execute(renderTask);
+        }
+    }
+
+    /**
+     * Makes a preview ready, with the next serial number.  Called while
+     * synchronized.
+     *
+     * @param preview
+     * @param content
+     */
+    private void ready(Preview preview, String content) {
+        PreviewInfo previewInfo = new PreviewInfo(preview.m_instanceId, preview.m_desc, content);
+        previewInfo.setSerial(++m_serial);
+        preview.m_info = previewInfo;
+        m_previewList.ready(preview);
+        getInstancePreviewList(preview.m_instanceId).ready(preview);
+    }
+
+    /**
+     * Gets the preview list for an instance, creating it if necessary.
+     * Called while synchronized.
+     *
+     * @param instanceId
+     * @return
+     */
+    private PreviewList getInstancePreviewList(String instanceId) {
+        PreviewList previewList = m_instancePreviewLists.get(instanceId);
+        if (null == previewList) {
+            previewList = new PreviewList();
+            m_instancePreviewLists.put(instanceId, previewList);
+        }
+        return previewList;
+    }
+
+    /**
+     * Drops a preview from all lists.  Called while synchronized.
+     *
+     * @param preview
+     */
+    private void dropPreview(Preview preview) {
+        preview.cancel();
+        m_previewList.remove(preview);
+        PreviewList previewList = m_instancePreviewLists.get(preview.m_instanceId);
+        if (null != previewList) {
+            previewList.remove(preview);
+            if (previewList.isEmpty()) {
+                m_instancePreviewLists.remove(preview.m_instanceId);
+            }
+        }
+    }
+
+    /**
+     * Drops the previews that show deleted files.  Called while synchronized.
+     *
+     * @param files deleted files
+     */
+    private void dropPreviews(List<File> files) {
+        if (!files.isEmpty()) {
+            List<Preview> dropped = new ArrayList<Preview>();
+            for (Preview preview : m_previewList.m_previews) {
+                if (null != preview.m_file && files.contains(preview.m_file)) {
+                    dropped.add(preview);
+                }
+            }
+            for (Preview preview : dropped) {
+                dropPreview(preview);
             }
-            m_previewFileList.clear();
-            m_ordinal = 0;
         }
     }
 
     /**
-     * Creates a preview file version of an image.
+     * Creates a preview file version of an image.  The image is scaled down
+     * to fit the thumbnail size.
      *
      * @param image the image
-     * @param fileName file name to use
-     * @return the file
+     * @param file file to write
+     * @param thumbnailSize maximum width and height
+     * @return whether written
      */
-    private File makePreviewFile(RenderedImage image, String fileName, String format) {
-        File file = null;
+    private boolean makePreviewFile(RenderedImage image, File file, int thumbnailSize) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double scale = Math.min(1.0, (double) thumbnailSize / Math.max(width, height));
+        int thumbnailWidth = Math.max(1, (int) Math.round(width * scale));
+        int thumbnailHeight = Math.max(1, (int) Math.round(height * scale));
+
+        // JPEG has no alpha channel
+        BufferedImage thumbnail = new BufferedImage(thumbnailWidth, thumbnailHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = thumbnail.createGraphics();
         try {
-            file = new File(fileName);
-            ImageIO.write(image, "png", file);
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawRenderedImage(image, AffineTransform.getScaleInstance(
+                    (double) thumbnailWidth / width, (double) thumbnailHeight / height));
+        }
+        finally {
+            graphics.dispose();
+        }
+        try {
+            return ImageIO.write(thumbnail, FORMAT, file);
         }
         catch (IOException e) {
+            System.out.println("Unable to write preview " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * One entry of the preview list.  Guarded by the debugger's lock.
+     */
+    private static class Preview {
+        final String m_instanceId;
+        final String m_desc;
+        RenderedImage m_image;  // until rendered
+        File m_file;
+        PreviewInfo m_info;     // once ready
+        boolean m_cancelled = false;
+
+        Preview(String instanceId, String desc) {
+            m_instanceId = instanceId;
+            m_desc = desc;
+        }
+
+        void cancel() {
+            m_cancelled = true;
+            m_image = null;
+        }
+    }
+
+    /**
+     * Previews in the order captured, and the ready ones in the order they
+     * became ready.  Guarded by the debugger's lock.
+     */
+    private static class PreviewList {
+        final Deque<Preview> m_previews = new ArrayDeque<Preview>();
+        private final Deque<Preview> m_readyPreviews = new ArrayDeque<Preview>();
+
+        void add(Preview preview) {
+            m_previews.addLast(preview);
+        }
+
+        void ready(Preview preview) {
+            m_readyPreviews.addLast(preview);
+        }
+
+        /**
+         * Removes a cancelled preview.  Usually the oldest, so this is quick.
+         * Ready previews are pruned lazily.
+         *
+         * @param preview
+         */
+        void remove(Preview preview) {
+            m_previews.removeFirstOccurrence(preview);
+            while (!m_readyPreviews.isEmpty() && m_readyPreviews.getFirst().m_cancelled) {
+                m_readyPreviews.removeFirst();
+            }
+            if (m_readyPreviews.size() > 2 * m_previews.size() + 16) {
+                Iterator<Preview> iterator = m_readyPreviews.iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next().m_cancelled) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+
+        int size() {
+            return m_previews.size();
+        }
+
+        boolean isEmpty() {
+            return m_previews.isEmpty();
+        }
+
+        void clear() {
+            m_previews.clear();
+            m_readyPreviews.clear();
+        }
+
+        /**
+         * Gets ready previews in capture order.
+         *
+         * @return
+         */
+        List<PreviewInfo> getReady() {
+            List<PreviewInfo> previewInfoList = new ArrayList<PreviewInfo>();
+            for (Preview preview : m_previews) {
+                if (null != preview.m_info) {
+                    previewInfoList.add(preview.m_info);
+                }
+            }
+            return previewInfoList;
+        }
+
+        /**
+         * Gets previews that became ready after a serial number.  Only looks
+         * at those, walking back from the newest.
+         *
+         * @param serial
+         * @return
+         */
+        List<PreviewInfo> getReadySince(long serial) {
+            List<PreviewInfo> previewInfoList = new ArrayList<PreviewInfo>();
+            Iterator<Preview> iterator = m_readyPreviews.descendingIterator();
+            while (iterator.hasNext()) {
+                Preview preview = iterator.next();
+                if (preview.m_info.getSerial() <= serial) {
+                    break;
+                }
+                if (!preview.m_cancelled) {
+                    previewInfoList.add(preview.m_info);
+                }
+            }
+            Collections.reverse(previewInfoList);
+            return previewInfoList;
+        }
+    }
+
+    /**
+     * Renders one image on the background thread, for all the previews that
+     * captured it.
+     */
+    private class RenderTask implements Runnable {
+        private final List<Preview> m_previews = new ArrayList<Preview>();
+
+        void add(Preview preview) {
+            m_previews.add(preview);
+        }
+
+        public void run() {
+            try {
+                render();
+            }
+            catch (RuntimeException e) {
+                // some images can't be drawn
+                System.out.println("Unable to preview image " + e.getMessage());
+            }
+            finally {
+                synchronized (m_synchObject) {
+                    for (Preview preview : m_previews) {
+                        preview.m_image = null;
+                    }
+                    --m_pendingCount;
+                    m_synchObject.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Checks whether any of the previews is still wanted.  Called while
+         * synchronized.
+         *
+         * @return
+         */
+        private boolean isWanted() {
+            for (Preview preview : m_previews) {
+                if (!preview.m_cancelled) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void render() {
+            RenderedImage image;
+            File file;
+            int thumbnailSize;
+            synchronized (m_synchObject) {
+                if (!isWanted()) {
+                    return;
+                }
+                image = m_previews.get(0).m_image;
+                thumbnailSize = m_thumbnailSize;
+                file = new File(PREVIEW_FILE_NAME + m_ordinal++ + "." + FORMAT);
+            }
+
+            // render outside the lock, so capture and polling continue
+            if (!makePreviewFile(image, file, thumbnailSize)) {
+                return;
+            }
+
+            synchronized (m_synchObject) {
+                if (!isWanted()) {
+                    file.delete();
+                    return;
+                }
+                dropPreviews(m_previewCache.add(file));
+                if (m_previewCache.contains(file)) {
+                    String webName = PREVIEW_DIR + '/' + file.getName();
+                    String content = "<html><body>"
+                            +   "<a href='" + webName
+                            +       "' target='_blank'>"    // open link in new window
+                            +     "<img src='" + webName + "'/>"
+                            +   "</a>"
+                            + "</body></html>";
+                    for (Preview preview : m_previews) {
+                        if (!preview.m_cancelled) {
+                            preview.m_file = file;
+                            ready(preview, content);
+                        }
+                    }
+                }
+            }
         }
-        return file;
     }
 }
@@ -0,0 +1,155 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the distribution of durations, such as plugin run times.
+ * <p>
+ * Durations are counted in power-of-two buckets of nanoseconds, so recording
+ * takes a few atomic increments and no allocation or lock.  Percentiles are
+ * accurate to within a factor of two, which is plenty to tell milliseconds
+ * from seconds.
+ *
+ * @author Aivar Grislis
+ */
+public class Histogram {
+    private static final int BUCKETS = 64;
+    private final AtomicLongArray m_buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong m_count = new AtomicLong();
+    private final AtomicLong m_total = new AtomicLong();
+    private final AtomicLong m_max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        m_buckets.incrementAndGet(bucket(nanos));
+        m_count.incrementAndGet();
+        m_total.addAndGet(nanos);
+        long max = m_max.get();
+        while (nanos > max && !m_max.compareAndSet(max, nanos)) {
+            max = m_max.get();
+        }
+    }
+
+    /**
+     * Gets the number of durations recorded.
+     *
+     * @return
+     */
+    public long getCount() {
+        return m_count.get();
+    }
+
+    /**
+     * Gets the sum of all durations.
+     *
+     * @return nanoseconds
+     */
+    public long getTotal() {
+        return m_total.get();
+    }
+
+    /**
+     * Gets the longest duration.
+     *
+     * @return nanoseconds
+     */
+    public long getMax() {
+        return m_max.get();
+    }
+
+    /**
+     * Gets the average duration.
+     *
+     * @return nanoseconds, 0 if none recorded
+     */
+    public long getMean() {
+        long count = m_count.get();
+        return (0 == count) ? 0 : m_total.get() / count;
+    }
+
+    /**
+     * Gets a duration that the given fraction of durations do not exceed.
+     * This is the upper bound of the bucket the percentile falls in.
+     *
+     * @param fraction between 0 and 1, for example 0.99
+     * @return nanoseconds, 0 if none recorded
+     */
+    public long getPercentile(double fraction) {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            counts[i] = m_buckets.get(i);
+            count += counts[i];
+        }
+        if (0 == count) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts[i];
+            if (seen >= rank && 0 < counts[i]) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Gets the bucket for a duration.  Bucket n holds durations below 2^n.
+     *
+     * @param nanos
+     * @return
+     */
+    private static int bucket(long nanos) {
+        return Math.min(BUCKETS - Long.numberOfLeadingZeros(nanos), BUCKETS - 1);
+    }
+
+    /**
+     * Gets the largest duration a bucket holds.
+     *
+     * @param bucket
+     * @return
+     */
+    private static long upperBound(int bucket) {
+        return (bucket >= BUCKETS - 1) ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
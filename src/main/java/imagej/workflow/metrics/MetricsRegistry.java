@@ -0,0 +1,214 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Keeps the counters, gauges and histograms of one workflow by name.
+ * <p>
+ * Metrics are created on first use and then kept for good.  Callers look a
+ * metric up once and hold on to it, so that updating it costs no more than
+ * an atomic increment or two.
+ * <p>
+ * The current values may be queried by name, or through a JMX MBean.
+ *
+ * @author Aivar Grislis
+ */
+public class MetricsRegistry {
+    public static final String DOMAIN = "imagej.workflow";
+    public static final String COUNT = ".count";
+    public static final String MEAN = ".mean";
+    public static final String P50 = ".p50";
+    public static final String P99 = ".p99";
+    public static final String MAX = ".max";
+    private final ConcurrentMap<String, Counter> m_counters = new ConcurrentHashMap<String, Counter>();
+    private final ConcurrentMap<String, IGauge> m_gauges = new ConcurrentHashMap<String, IGauge>();
+    private final ConcurrentMap<String, Histogram> m_histograms = new ConcurrentHashMap<String, Histogram>();
+    private ObjectName m_objectName;
+
+    /**
+     * Gets the named counter, creating it if necessary.
+     *
+     * @param name
+     * @return
+     */
+    public Counter getCounter(String name) {
+        Counter counter = m_counters.get(name);
+        if (null == counter) {
+            m_counters.putIfAbsent(name, new Counter());
+            counter = m_counters.get(name);
+        }
+        return counter;
+    }
+
+    /**
+     * Gets the named histogram, creating it if necessary.
+     *
+     * @param name
+     * @return
+     */
+    public Histogram getHistogram(String name) {
+        Histogram histogram = m_histograms.get(name);
+        if (null == histogram) {
+            m_histograms.putIfAbsent(name, new Histogram());
+            histogram = m_histograms.get(name);
+        }
+        return histogram;
+    }
+
+    /**
+     * Sets the named gauge, replacing any previous one.
+     *
+     * @param name
+     * @param gauge
+     */
+    public void setGauge(String name, IGauge gauge) {
+        m_gauges.put(name, gauge);
+    }
+
+    /**
+     * Gets the named gauge.
+     *
+     * @param name
+     * @return gauge or null if none
+     */
+    public IGauge getGauge(String name) {
+        return m_gauges.get(name);
+    }
+
+    /**
+     * Gets the current values of all metrics.  Counters and gauges appear
+     * under their own names.  Each histogram appears as its count, and as its
+     * mean, median, 99th percentile and maximum in nanoseconds, with COUNT,
+     * MEAN, P50, P99 and MAX appended to its name.
+     *
+     * @return values sorted by name
+     */
+    public SortedMap<String, Long> getValues() {
+        SortedMap<String, Long> values = new TreeMap<String, Long>();
+        for (Map.Entry<String, Counter> entry : m_counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().getCount());
+        }
+        for (Map.Entry<String, IGauge> entry : m_gauges.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().getValue());
+        }
+        for (Map.Entry<String, Histogram> entry : m_histograms.entrySet()) {
+            String name = entry.getKey();
+            Histogram histogram = entry.getValue();
+            values.put(name + COUNT, histogram.getCount());
+            values.put(name + MEAN, histogram.getMean());
+            values.put(name + P50, histogram.getPercentile(0.5));
+            values.put(name + P99, histogram.getPercentile(0.99));
+            values.put(name + MAX, histogram.getMax());
+        }
+        return values;
+    }
+
+    /**
+     * Gets the current value of a metric, named as in getValues().
+     *
+     * @param name
+     * @return value or null if no such metric
+     */
+    public Long getValue(String name) {
+        Counter counter = m_counters.get(name);
+        if (null != counter) {
+            return counter.getCount();
+        }
+        IGauge gauge = m_gauges.get(name);
+        if (null != gauge) {
+            return gauge.getValue();
+        }
+        return getValues().get(name);
+    }
+
+    /**
+     * Exposes the metrics through the platform MBean server, as one MBean
+     * with a read-only attribute per value.  Does nothing if already
+     * exposed.
+     *
+     * @param type MBean type, for example "Workflow"
+     * @param name MBean name
+     * @param id distinguishes MBeans of the same name
+     */
+    public synchronized void register(String type, String name, String id) {
+        if (null != m_objectName) {
+            return;
+        }
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type
+                    + ",name=" + ObjectName.quote(String.valueOf(name))
+                    + ",id=" + ObjectName.quote(String.valueOf(id)));
+            getServer().registerMBean(new MetricsMBean(this), objectName);
+            m_objectName = objectName;
+        }
+        catch (JMException e) {
+            System.out.println("Unable to register metrics " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops exposing the metrics through JMX.
+     */
+    public synchronized void unregister() {
+        if (null != m_objectName) {
+            try {
+                getServer().unregisterMBean(m_objectName);
+            }
+            catch (JMException e) {
+                System.out.println("Unable to unregister metrics " + e.getMessage());
+            }
+            m_objectName = null;
+        }
+    }
+
+    /**
+     * Gets the name under which the metrics are exposed.
+     *
+     * @return name or null if not exposed
+     */
+    public synchronized ObjectName getObjectName() {
+        return m_objectName;
+    }
+
+    private MBeanServer getServer() {
+        return ManagementFactory.getPlatformMBeanServer();
+    }
+}
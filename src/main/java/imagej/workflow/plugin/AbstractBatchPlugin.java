@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.plugin;
+
+/**
+ * Abstract base class for a plugin that processes a batch of input sets in
+ * one call.
+ *
+ * @author Aivar Grislis
+ */
+public abstract class AbstractBatchPlugin extends AbstractPlugin implements IBatchPlugin {
+
+    /**
+     * Gets the number of input sets in the current batch.  Called from
+     * subclass.
+     *
+     * @return
+     */
+    public int getBatchSize() {
+        return (null == m_inputBatch) ? 1 : m_batchCount;
+    }
+
+    /**
+     * Gets the input object in a given slot, for one set of inputs in the
+     * current batch.  Called from subclass.
+     *
+     * @param slot from getInputSlot()
+     * @param index from 0 to getBatchSize() - 1
+     * @return object
+     */
+    public Object get(int slot, int index) {
+        if (null == m_inputBatch) {
+            // single set of inputs
+            if (0 != index) {
+                throw new IndexOutOfBoundsException("Batch index " + index);
+            }
+            return m_inputImages[slot].getItem();
+        }
+        if (index >= m_batchCount) {
+            throw new IndexOutOfBoundsException("Batch index " + index);
+        }
+        return m_inputBatch[slot][index].getItem();
+    }
+
+    /**
+     * Puts output object in a given slot, for one set of inputs in the
+     * current batch.  Called from subclass.
+     *
+     * @param slot from getOutputSlot()
+     * @param index from 0 to getBatchSize() - 1
+     * @param object
+     */
+    public void put(int slot, int index, Object object) {
+        if (null == m_inputBatch) {
+            put(slot, object, getSequence(m_inputImages), getTrace(m_inputImages));
+        }
+        else {
+            put(slot, object, getSequence(m_inputBatch, index), getTrace(m_inputBatch, index));
+        }
+    }
+
+    /**
+     * Processes the current batch.
+     */
+    public final void process() {
+        processBatch();
+    }
+}
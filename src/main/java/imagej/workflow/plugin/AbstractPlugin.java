@@ -32,34 +32,65 @@ package imagej.workflow.plugin;
 
 import imagej.workflow.plugin.annotations.Input;
 import imagej.workflow.plugin.annotations.Output;
+import imagej.workflow.trace.TraceContext;
 
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * Abstract base class for plugin.  Starts up plugin processing, gets and
  * puts images for the plugin.
+ * <p>
+ * Inputs and outputs may be named, or given by slot number for less overhead
+ * per item.  Slots are numbered in annotation order.
+ * <p>
+ * When the launcher hands over a batch of input sets, process() is called for
+ * each set in turn on the same instance, and the outputs are held back and
+ * passed on together at the end of the batch.
+ * <p>
+ * Each output item carries the sequence number and trace of the inputs it
+ * was derived from, so that ordered workflows can keep items from the same
+ * input image together and traces can follow an image through the workflow.
  *
  * @author Aivar Grislis
  */
 public abstract class AbstractPlugin implements IPluginInternal, IPlugin {
+    PluginScheduler m_scheduler;
     String m_uniqueId;
-    Map<String, ItemWrapper> m_inputImages;
-    Map<String, String> m_outputNames;
+    PluginAnnotations m_annotations;
+    ItemWrapper[] m_inputImages;
+    IOutputTarget[][] m_outputQueues;
+    ItemWrapper[][] m_inputBatch;
+    int m_batchCount;
+    private ItemWrapper[] m_batchFrame;
+    private ItemWrapper[][] m_outputBatch;
+    private int[] m_outputCounts;
+    private boolean m_holding = false;
+    private long m_sequence = ItemWrapper.NO_SEQUENCE;
+    private TraceContext m_trace;
 
     /**
      * Starts up processing.  Called from plugin launcher.
      *
-     * @param inputImages maps each input name to an image
-     * @param outputNames maps each output name to a unique input name for
-     *   the next chained plugin.
+     * @param scheduler passes images on to the next chained plugin
+     * @param uniqueId
+     * @param annotations gives the slot for each input and output name
+     * @param inputImages image for each input slot
+     * @param outputQueues for each output slot, the queues for the next
+     *   chained plugins, or null if not chained.
      */
     public void start(
+            PluginScheduler scheduler,
             String uniqueId,
-            Map<String, ItemWrapper> inputImages,
-            Map<String, String> outputNames) {
+            PluginAnnotations annotations,
+            ItemWrapper[] inputImages,
+            IOutputTarget[][] outputQueues) {
+        m_scheduler = scheduler;
         m_uniqueId = uniqueId;
+        m_annotations = annotations;
         m_inputImages = inputImages;
-        m_outputNames = outputNames;
+        m_outputQueues = outputQueues;
+        m_sequence = getSequence(inputImages);
+        m_trace = getTrace(inputImages);
 
         try {
             // do the actual work of the plugin
@@ -72,6 +103,126 @@ public abstract class AbstractPlugin implements IPluginInternal, IPlugin {
         m_inputImages = null;
     }
 
+    /**
+     * Holds back outputs until releaseOutputs() is called.  Called from
+     * plugin launcher, before start.
+     *
+     * @param annotations gives the number of outputs
+     */
+    public void holdOutputs(PluginAnnotations annotations) {
+        if (null == m_outputBatch) {
+            m_outputBatch = new ItemWrapper[annotations.getOutputCount()][];
+            m_outputCounts = new int[annotations.getOutputCount()];
+        }
+        m_holding = true;
+    }
+
+    /**
+     * Passes on the outputs held back since holdOutputs(), each output's
+     * items together.  Called from plugin launcher.
+     */
+    public void releaseOutputs() {
+        m_holding = false;
+        try {
+            for (int slot = 0; slot < m_outputCounts.length; ++slot) {
+                int count = m_outputCounts[slot];
+                if (0 < count) {
+                    m_scheduler.put(m_uniqueId, m_annotations.getOutputName(slot),
+                            m_outputQueues[slot], m_outputBatch[slot], count);
+                }
+            }
+        }
+        finally {
+            // don't hold on to the images
+            for (int slot = 0; slot < m_outputCounts.length; ++slot) {
+                if (0 < m_outputCounts[slot]) {
+                    Arrays.fill(m_outputBatch[slot], 0, m_outputCounts[slot], null);
+                    m_outputCounts[slot] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts up processing of a batch of input sets.  Called from plugin
+     * launcher.
+     *
+     * @param scheduler passes images on to the next chained plugin
+     * @param uniqueId
+     * @param annotations gives the slot for each input and output name
+     * @param inputBatch images for each input slot, indexed within the batch
+     * @param count number of input sets in the batch
+     * @param outputQueues for each output slot, the queues for the next
+     *   chained plugins, or null if not chained.
+     */
+    public void startBatch(
+            PluginScheduler scheduler,
+            String uniqueId,
+            PluginAnnotations annotations,
+            ItemWrapper[][] inputBatch,
+            int count,
+            IOutputTarget[][] outputQueues) {
+        m_scheduler = scheduler;
+        m_uniqueId = uniqueId;
+        m_annotations = annotations;
+        m_outputQueues = outputQueues;
+
+        // unless the launcher holds them longer, hold outputs for the batch
+        boolean release = !m_holding;
+        holdOutputs(annotations);
+
+        try {
+            if (this instanceof IBatchPlugin) {
+                // the whole batch at once
+                m_inputBatch = inputBatch;
+                m_batchCount = count;
+                m_sequence = getSequence(inputBatch, 0);
+                m_trace = getTrace(inputBatch, 0);
+                try {
+                    process();
+                }
+                catch (Exception e) {
+                    System.out.println("Plugin exception " + e.getMessage());
+                }
+            }
+            else {
+                // one set of inputs at a time
+                if (null == m_batchFrame) {
+                    m_batchFrame = new ItemWrapper[inputBatch.length];
+                }
+                m_inputImages = m_batchFrame;
+                for (int i = 0; i < count; ++i) {
+                    for (int slot = 0; slot < inputBatch.length; ++slot) {
+                        m_batchFrame[slot] = inputBatch[slot][i];
+                    }
+                    m_sequence = getSequence(m_batchFrame);
+                    m_trace = getTrace(m_batchFrame);
+                    try {
+                        process();
+                    }
+                    catch (Exception e) {
+                        System.out.println("Plugin exception " + e.getMessage());
+                    }
+                }
+                Arrays.fill(m_batchFrame, null);
+            }
+            if (release) {
+                releaseOutputs();
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Plugin exception " + e.getMessage());
+        }
+        finally {
+            if (release) {
+                m_holding = false;
+            }
+            m_inputImages = null;
+            m_inputBatch = null;
+            m_batchCount = 0;
+        }
+    }
+
     /**
      * Gets the default input object from previous in chain.  Called from subclass.
      *
@@ -88,12 +239,24 @@ public abstract class AbstractPlugin implements IPluginInternal, IPlugin {
      * @return object
      */
     public Object get(String inName) {
-        ItemWrapper input = m_inputImages.get(inName);
-        if (null == input) {
+        int slot = m_annotations.getInputSlot(inName);
+        if (-1 == slot) {
             // run-time request disagrees with annotation
             PluginAnnotations.nameNotAnnotated(PluginAnnotations.InputOutput.INPUT, inName);
+            return null;
         }
-        return input.getItem();
+        return m_inputImages[slot].getItem();
+    }
+
+    /**
+     * Gets the input object in a given slot from previous in chain.  Called
+     * from subclass.
+     *
+     * @param slot from getInputSlot()
+     * @return object
+     */
+    public Object get(int slot) {
+        return m_inputImages[slot].getItem();
     }
 
     /**
@@ -112,21 +275,158 @@ public abstract class AbstractPlugin implements IPluginInternal, IPlugin {
      * @param object
      */
     public void put(String outName, Object object) {
-        //TODO how to check annotation?  No longer visible from here.
-        /*
-        if (isAnnotatedName(InputOutput.OUTPUT, outName)) {
-            System.out.println("was annotated");
-            // anyone interested in this output data?
-            String fullName = m_map.get(outName);
-            System.out.println("full name is " + fullName);
-            if (null != fullName) {
-                // yes, pass it on
-                NodeScheduler.getInstance().put(fullName, data);
+        int slot = m_annotations.getOutputSlot(outName);
+        if (-1 == slot) {
+            // run-time request disagrees with annotation
+            PluginAnnotations.nameNotAnnotated(PluginAnnotations.InputOutput.OUTPUT, outName);
+            return;
+        }
+
+        put(slot, object);
+    }
+
+    /**
+     * Puts output object in a given slot to next in chain (if any).  Called
+     * from subclass.
+     *
+     * @param slot from getOutputSlot()
+     * @param object
+     */
+    public void put(int slot, Object object) {
+        put(slot, object, m_sequence, m_trace);
+    }
+
+    /**
+     * Puts output object in a given slot, with a given sequence number and
+     * trace.
+     *
+     * @param slot
+     * @param object
+     * @param sequence
+     * @param trace
+     */
+    void put(int slot, Object object, long sequence, TraceContext trace) {
+        // anyone interested in this output data?
+        IOutputTarget[] queues = m_outputQueues[slot];
+        if (null != queues) {
+            ItemWrapper item = new ItemWrapper(object);
+            item.setSequence(sequence);
+            item.setTrace(trace);
+            if (m_holding) {
+                // hold back until the end of the batch
+                ItemWrapper[] items = m_outputBatch[slot];
+                int count = m_outputCounts[slot];
+                if (null == items) {
+                    items = m_outputBatch[slot] = new ItemWrapper[16];
+                }
+                else if (count == items.length) {
+                    items = m_outputBatch[slot] = Arrays.copyOf(items, 2 * count);
+                }
+                items[count] = item;
+                m_outputCounts[slot] = count + 1;
+            }
+            else {
+                m_scheduler.put(m_uniqueId, m_annotations.getOutputName(slot), queues, item);
+            }
+        }
+    }
+
+    /**
+     * Gets the slot for an input name.  Slots don't change, so a subclass
+     * may look them up once, i.e. in a @Setup method, and then use get(int).
+     *
+     * @param inName
+     * @return slot or -1 if not annotated
+     */
+    public int getInputSlot(String inName) {
+        return getAnnotations().getInputSlot(inName);
+    }
+
+    /**
+     * Gets the slot for an output name.  Slots don't change, so a subclass
+     * may look them up once, i.e. in a @Setup method, and then use
+     * put(int, Object).
+     *
+     * @param outName
+     * @return slot or -1 if not annotated
+     */
+    public int getOutputSlot(String outName) {
+        return getAnnotations().getOutputSlot(outName);
+    }
+
+    /**
+     * Gets the sequence number of a set of inputs.
+     *
+     * @param inputImages
+     * @return sequence number or ItemWrapper.NO_SEQUENCE
+     */
+    static long getSequence(ItemWrapper[] inputImages) {
+        for (ItemWrapper item : inputImages) {
+            if (null != item && ItemWrapper.NO_SEQUENCE != item.getSequence()) {
+                return item.getSequence();
             }
         }
-        */
-        ItemWrapper item = new ItemWrapper(object);
-        String fullInName = m_outputNames.get(outName);
-        PluginScheduler.getInstance().put(m_uniqueId, outName, fullInName, item);
+        return ItemWrapper.NO_SEQUENCE;
+    }
+
+    /**
+     * Gets the sequence number of one set of inputs in a batch.
+     *
+     * @param inputBatch
+     * @param index within the batch
+     * @return sequence number or ItemWrapper.NO_SEQUENCE
+     */
+    static long getSequence(ItemWrapper[][] inputBatch, int index) {
+        for (ItemWrapper[] items : inputBatch) {
+            if (null != items[index] && ItemWrapper.NO_SEQUENCE != items[index].getSequence()) {
+                return items[index].getSequence();
+            }
+        }
+        return ItemWrapper.NO_SEQUENCE;
+    }
+
+    /**
+     * Gets the trace of a set of inputs.
+     *
+     * @param inputImages
+     * @return trace context or null
+     */
+    static TraceContext getTrace(ItemWrapper[] inputImages) {
+        for (ItemWrapper item : inputImages) {
+            if (null != item && null != item.getTrace()) {
+                return item.getTrace();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the trace of one set of inputs in a batch.
+     *
+     * @param inputBatch
+     * @param index within the batch
+     * @return trace context or null
+     */
+    static TraceContext getTrace(ItemWrapper[][] inputBatch, int index) {
+        for (ItemWrapper[] items : inputBatch) {
+            if (null != items[index] && null != items[index].getTrace()) {
+                return items[index].getTrace();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the annotations for this plugin class.
+     *
+     * @return
+     */
+    private PluginAnnotations getAnnotations() {
+        PluginAnnotations annotations = m_annotations;
+        if (null == annotations) {
+            // not started yet
+            annotations = PluginAnnotations.getInstance(getClass());
+        }
+        return annotations;
     }
 }
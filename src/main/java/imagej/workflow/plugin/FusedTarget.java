@@ -0,0 +1,68 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.plugin;
+
+/**
+ * Stands in for the queue of a plugin that is fused to the plugin before it.
+ * Putting an item runs the fused plugin on it right away, on the calling
+ * thread, instead of queueing it for the fused plugin's launcher.
+ *
+ * @author Aivar Grislis
+ */
+class FusedTarget implements IOutputTarget {
+    private final String m_inName;
+    private final PluginLauncher m_launcher;
+
+    /**
+     * Creates a target that feeds a fused launcher.
+     *
+     * @param inName input name of the fused plugin
+     * @param launcher runs the fused plugin
+     */
+    FusedTarget(String inName, PluginLauncher launcher) {
+        m_inName = inName;
+        m_launcher = launcher;
+    }
+
+    public String getInName() {
+        return m_inName;
+    }
+
+    public void put(ItemWrapper item) {
+        m_launcher.runInline(item);
+    }
+
+    public void putAll(ItemWrapper[] items, int count) {
+        for (int i = 0; i < count; ++i) {
+            m_launcher.runInline(items[i]);
+        }
+    }
+}
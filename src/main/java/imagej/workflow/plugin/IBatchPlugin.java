@@ -0,0 +1,79 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.plugin;
+
+/**
+ * Interface for a plugin that processes a batch of input sets in one call.
+ * <p>
+ * Batches form when the plugin's launcher, or a wire feeding it, is set up to
+ * take several items at once.  Otherwise each batch holds a single set of
+ * inputs.  Outputs put during the call are passed on together when it
+ * returns.
+ *
+ * @author Aivar Grislis
+ */
+public interface IBatchPlugin extends IPlugin {
+
+    /**
+     * Gets the number of input sets in the current batch.  Called from within
+     * implementation.
+     *
+     * @return
+     */
+    int getBatchSize();
+
+    /**
+     * Gets the input object in a given slot, for one set of inputs in the
+     * current batch.  Called from within implementation.
+     *
+     * @param slot
+     * @param index from 0 to getBatchSize() - 1
+     * @return object
+     */
+    Object get(int slot, int index);
+
+    /**
+     * Puts output object in a given slot, for one set of inputs in the
+     * current batch.  Unlike put(int, Object) this keeps the output with its
+     * inputs in an ordered workflow.  Called from within implementation.
+     *
+     * @param slot
+     * @param index from 0 to getBatchSize() - 1
+     * @param object
+     */
+    void put(int slot, int index, Object object);
+
+    /**
+     * This is the body of the plugin, defined in implementation.  Processes
+     * the whole batch.
+     */
+    void processBatch();
+}
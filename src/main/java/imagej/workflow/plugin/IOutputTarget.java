@@ -0,0 +1,67 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package imagej.workflow.plugin;
+
+/**
+ * Where a plugin's output goes.  Usually this is the queue for another
+ * plugin's input, but it may also run a fused plugin or call a listener
+ * directly.  Targets are only ever put to; the launcher that owns an
+ * ItemQueue is the only one to take from it.
+ *
+ * @author Aivar Grislis
+ */
+public interface IOutputTarget {
+
+    /**
+     * Gets the name of whatever receives the items, for debugging.
+     *
+     * @return
+     */
+    public String getInName();
+
+    /**
+     * Passes on an item, waiting as long as necessary for room.
+     *
+     * @param item
+     * @throws InterruptedException
+     * @throws TeardownException if the target is shut down
+     */
+    public void put(ItemWrapper item) throws InterruptedException;
+
+    /**
+     * Passes on several items.
+     *
+     * @param items
+     * @param count number of items from the start of the array
+     * @throws InterruptedException
+     * @throws TeardownException if the target is shut down
+     */
+    public void putAll(ItemWrapper[] items, int count) throws InterruptedException;
+}
@@ -33,7 +33,7 @@ package imagej.workflow.plugin;
 /**
  * Interface for a Plugin.  Defines the main processing method that a plugin
  * implements, as well as methods that are available to the plugin internally
- * to get and put named objects.
+ * to get and put named objects, or objects by slot number.
  *
  * @author Aivar Grislis
  */
@@ -56,6 +56,15 @@ public interface IPlugin {
      */
     Object get(String inName);
 
+    /**
+     * Gets the input object in a given slot from previous in chain.  Called
+     * from within implementation.
+     *
+     * @param slot
+     * @return object
+     */
+    Object get(int slot);
+
     /**
      * This is the body of the plugin, defined in implemenation.
      */
@@ -77,4 +86,29 @@ public interface IPlugin {
      * @param object
      */
     void put(String outName, Object object);
+
+    /**
+     * Puts output object in a given slot to next in chain (if any).  Called
+     * from within implementation.
+     *
+     * @param slot
+     * @param object
+     */
+    void put(int slot, Object object);
+
+    /**
+     * Gets the slot for an input name.
+     *
+     * @param inName
+     * @return slot or -1 if not annotated
+     */
+    int getInputSlot(String inName);
+
+    /**
+     * Gets the slot for an output name.
+     *
+     * @param outName
+     * @return slot or -1 if not annotated
+     */
+    int getOutputSlot(String outName);
 }
@@ -30,8 +30,6 @@
 
 package imagej.workflow.plugin;
 
-import java.util.Map;
-
 /**
  * Defines an internal interface that is used to launch a plugin.
  *
@@ -42,12 +40,50 @@ public interface IPluginInternal {
     /**
      * Starts up processing.  Called from plugin launcher.
      *
+     * @param scheduler
      * @param uniqueId
-     * @param inputImages
-     * @param outputNames
+     * @param annotations gives the slot for each input and output name
+     * @param inputImages input images, indexed by input slot
+     * @param outputQueues queues for each output, indexed by output slot
      */
     public void start(
+            PluginScheduler scheduler,
+            String uniqueId,
+            PluginAnnotations annotations,
+            ItemWrapper[] inputImages,
+            IOutputTarget[][] outputQueues);
+
+    /**
+     * Starts up processing of a batch of input sets.  Called from plugin
+     * launcher.
+     *
+     * @param scheduler
+     * @param uniqueId
+     * @param annotations gives the slot for each input and output name
+     * @param inputBatch input images, indexed by input slot, then by index
+     *   within the batch
+     * @param count number of input sets in the batch
+     * @param outputQueues queues for each output, indexed by output slot
+     */
+    public void startBatch(
+            PluginScheduler scheduler,
             String uniqueId,
-            Map<String, ItemWrapper> inputImages,
-            Map<String, String> outputNames);
+            PluginAnnotations annotations,
+            ItemWrapper[][] inputBatch,
+            int count,
+            IOutputTarget[][] outputQueues);
+
+    /**
+     * Holds back outputs until releaseOutputs() is called.  Called from plugin
+     * launcher, before start.
+     *
+     * @param annotations gives the number of outputs
+     */
+    public void holdOutputs(PluginAnnotations annotations);
+
+    /**
+     * Passes on the outputs held back since holdOutputs().  Called from
+     * plugin launcher.
+     */
+    public void releaseOutputs();
 }
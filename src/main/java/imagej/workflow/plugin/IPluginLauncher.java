@@ -31,6 +31,7 @@
 package imagej.workflow.plugin;
 
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Interface to the plugin launcher.
@@ -43,6 +44,21 @@ import java.util.Map;
  * @author Aivar Grislis
  */
 public interface IPluginLauncher {
+    /**
+     * Sets the scheduler that passes images to and from this plugin.  Must be
+     * called before processing starts.
+     *
+     * @param scheduler
+     */
+    public void setScheduler(PluginScheduler scheduler);
+
+    /**
+     * Gets the scheduler.
+     *
+     * @return scheduler
+     */
+    public PluginScheduler getScheduler();
+
     /**
      * Sets input settings for this instance.
      *
@@ -50,6 +66,60 @@ public interface IPluginLauncher {
      */
     public void setInputs(Map<String, Object> inputs);
 
+    /**
+     * Sets the kind of executor used to run plugin instances.
+     *
+     * @param type
+     */
+    public void setExecutorType(PluginExecutorFactory.Type type);
+
+    /**
+     * Sets the maximum number of plugin instances that run concurrently.
+     *
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism);
+
+    /**
+     * Sets how many sets of inputs to take at once and hand to one plugin
+     * instance, and how long to wait for that many.
+     *
+     * @param batchSize 1 for no batching
+     * @param lingerMicros
+     */
+    public void setBatch(int batchSize, int lingerMicros);
+
+    /**
+     * Sets the priority of this plugin's instances on a shared executor.
+     *
+     * @param priority higher runs first
+     */
+    public void setPriority(int priority);
+
+    /**
+     * Sets an executor shared with other plugins, instead of one of its own.
+     *
+     * @param executor null for an executor of its own
+     */
+    public void setSharedExecutor(ExecutorService executor);
+
+    /**
+     * Sets whether outputs leave in the order inputs arrived.
+     *
+     * @param ordered
+     */
+    public void setOrdered(boolean ordered);
+
+    /**
+     * Fuses this plugin to the previous one, for a given input, so that it
+     * runs on the previous plugin's thread.
+     *
+     * @param inName
+     * @param previous
+     * @return target that runs this plugin when put to, or null if not fusable
+     */
+    public IOutputTarget fuse(String inName, IPluginLauncher previous);
+
     /**
      * Chains this plugin to the next one.
      *
@@ -87,13 +157,19 @@ public interface IPluginLauncher {
 
     /**
      * Used for plugin chaining.  Called from scheduler.  Tells launcher to
-     * associate this plugin's output name with an input name unique to a
-     * plugin launcher instance.
+     * associate this plugin's output name with the queue for an input name
+     * unique to a plugin launcher instance.  An output name may be associated
+     * with several queues.
      *
      * @param outName
-     * @param fullInName
+     * @param queue
+     */
+    public void associate(String outName, IOutputTarget queue);
+
+    /**
+     * Starts processing.  Does nothing if already started.
      */
-    public void associate(String outName, String fullInName);
+    public void start();
 
     /**
      * Used to shut down processing.
@@ -0,0 +1,372 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.plugin;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Queue of items waiting for one fully-qualified input name.
+ * <p>
+ * The scheduler resolves each wire to its queue once, when chaining.  The
+ * queue then serves as a handle:  plugins put to it and launchers get from it
+ * directly, without looking up names for every item.
+ * <p>
+ * Unlike LinkedBlockingQueue the capacity may be changed after the queue is
+ * created.  This matters because a launcher may already be waiting on the
+ * queue by the time the wire that feeds it is chained.
+ * <p>
+ * Producers and consumers block without timeouts, except that a consumer
+ * taking a batch may linger a while for the batch to fill up.  Closing the
+ * queue wakes all of them at once.
+ *
+ * @author Aivar Grislis
+ */
+public class ItemQueue implements IOutputTarget {
+    private final String m_fullInName;
+    private final String m_inName;
+    private final ReentrantLock m_lock = new ReentrantLock();
+    private final Condition m_notEmpty = m_lock.newCondition();
+    private final Condition m_notFull = m_lock.newCondition();
+    private final Deque<ItemWrapper> m_items = new ArrayDeque<ItemWrapper>();
+    private int m_capacity;
+    private boolean m_closed = false;
+    private volatile int m_batchSize = 1;
+    private volatile long m_lingerNanos = 0;
+    private long m_putCount = 0;
+    private volatile String m_label;
+
+    /**
+     * Creates a queue.
+     *
+     * @param fullInName fully-qualified input name
+     * @param capacity maximum number of waiting items or UNBOUNDED
+     */
+    ItemQueue(String fullInName, int capacity) {
+        m_fullInName = fullInName;
+        int index = fullInName.indexOf('.');
+        m_inName = (index > 0) ? fullInName.substring(index + 1) : fullInName;
+        m_label = m_inName;
+        m_capacity = capacity;
+    }
+
+    /**
+     * Gets the fully-qualified input name.
+     *
+     * @return
+     */
+    public String getFullInName() {
+        return m_fullInName;
+    }
+
+    /**
+     * Gets the input name, without the launcher's unique identifier.
+     *
+     * @return
+     */
+    public String getInName() {
+        return m_inName;
+    }
+
+    /**
+     * Gets a readable name, for tracing.
+     *
+     * @return
+     */
+    String getLabel() {
+        return m_label;
+    }
+
+    /**
+     * Sets a readable name, for tracing.
+     *
+     * @param label
+     */
+    void setLabel(String label) {
+        m_label = label;
+    }
+
+    /**
+     * Changes the capacity.  Producers waiting on a full queue are woken up if
+     * there is now room.
+     *
+     * @param capacity maximum number of waiting items or UNBOUNDED
+     */
+    void setCapacity(int capacity) {
+        m_lock.lock();
+        try {
+            m_capacity = capacity;
+            m_notFull.signalAll();
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the capacity.
+     *
+     * @return maximum number of waiting items or UNBOUNDED
+     */
+    int getCapacity() {
+        m_lock.lock();
+        try {
+            return m_capacity;
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Sets how many items the consumer should take at once, and how long it
+     * should wait for that many.  This only records the wire's settings; the
+     * launcher reading the queue decides how to use them.
+     *
+     * @param batchSize 1 for no batching
+     * @param lingerNanos
+     */
+    void setBatch(int batchSize, long lingerNanos) {
+        m_batchSize = batchSize;
+        m_lingerNanos = lingerNanos;
+    }
+
+    /**
+     * Gets how many items the consumer should take at once.
+     *
+     * @return 1 for no batching
+     */
+    int getBatchSize() {
+        return m_batchSize;
+    }
+
+    /**
+     * Gets how long the consumer should wait for a batch to fill up.
+     *
+     * @return nanoseconds
+     */
+    long getLingerNanos() {
+        return m_lingerNanos;
+    }
+
+    /**
+     * Gets the number of waiting items.
+     *
+     * @return
+     */
+    int size() {
+        m_lock.lock();
+        try {
+            return m_items.size();
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of items put so far.
+     *
+     * @return
+     */
+    long getPutCount() {
+        m_lock.lock();
+        try {
+            return m_putCount;
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an item, waiting as long as necessary for room.
+     *
+     * @param item
+     * @throws InterruptedException
+     * @throws TeardownException if the queue is closed
+     */
+    public void put(ItemWrapper item) throws InterruptedException {
+        m_lock.lockInterruptibly();
+        try {
+            while (!m_closed && isFull()) {
+                m_notFull.await();
+            }
+            if (m_closed) {
+                throw new TeardownException("Teardown");
+            }
+            m_items.addLast(item);
+            ++m_putCount;
+            m_notEmpty.signal();
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Removes an item, waiting as long as necessary for one to arrive.
+     *
+     * @return item
+     * @throws InterruptedException
+     * @throws TeardownException if the queue is closed
+     */
+    ItemWrapper take() throws InterruptedException {
+        m_lock.lockInterruptibly();
+        try {
+            while (!m_closed && m_items.isEmpty()) {
+                m_notEmpty.await();
+            }
+            if (m_closed) {
+                throw new TeardownException("Teardown");
+            }
+            ItemWrapper item = m_items.removeFirst();
+            m_notFull.signal();
+            return item;
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Adds several items under one lock acquisition, waiting as long as
+     * necessary for room.
+     *
+     * @param items
+     * @param count number of items to add from the start of the array
+     * @throws InterruptedException
+     * @throws TeardownException if the queue is closed
+     */
+    public void putAll(ItemWrapper[] items, int count) throws InterruptedException {
+        m_lock.lockInterruptibly();
+        try {
+            int i = 0;
+            while (i < count) {
+                while (!m_closed && isFull()) {
+                    m_notFull.await();
+                }
+                if (m_closed) {
+                    throw new TeardownException("Teardown");
+                }
+                do {
+                    m_items.addLast(items[i++]);
+                    ++m_putCount;
+                }
+                while (i < count && !isFull());
+                m_notEmpty.signal();
+            }
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Removes several items under one lock acquisition.  Waits as long as
+     * necessary for the minimum number, then up to the linger time for the
+     * maximum number.
+     *
+     * @param items receives the items
+     * @param min minimum number of items
+     * @param max maximum number of items
+     * @param lingerNanos how long to wait for more than the minimum
+     * @return number of items
+     * @throws InterruptedException
+     * @throws TeardownException if the queue is closed
+     */
+    int takeAll(ItemWrapper[] items, int min, int max, long lingerNanos) throws InterruptedException {
+        m_lock.lockInterruptibly();
+        try {
+            int count = 0;
+            long deadline = 0;
+            boolean lingering = false;
+            while (true) {
+                if (m_closed) {
+                    throw new TeardownException("Teardown");
+                }
+                boolean took = false;
+                while (count < max && !m_items.isEmpty()) {
+                    items[count++] = m_items.removeFirst();
+                    took = true;
+                }
+                if (took) {
+                    // there may be room for several producers
+                    m_notFull.signalAll();
+                }
+                if (count >= max) {
+                    break;
+                }
+                if (count < min) {
+                    m_notEmpty.await();
+                }
+                else {
+                    if (!lingering) {
+                        deadline = System.nanoTime() + lingerNanos;
+                        lingering = true;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    m_notEmpty.awaitNanos(remaining);
+                }
+            }
+            return count;
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the queue.  Discards waiting items and wakes up all blocked
+     * producers and consumers, who get a TeardownException.
+     */
+    void close() {
+        m_lock.lock();
+        try {
+            m_closed = true;
+            m_items.clear();
+            m_notEmpty.signalAll();
+            m_notFull.signalAll();
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    private boolean isFull() {
+        return PluginScheduler.UNBOUNDED != m_capacity && m_items.size() >= m_capacity;
+    }
+}
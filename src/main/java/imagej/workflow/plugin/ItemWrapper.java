@@ -30,6 +30,8 @@
 
 package imagej.workflow.plugin;
 
+import imagej.workflow.trace.TraceContext;
+
 import imagej.workflow.util.properties.IPropertyCollection;
 import imagej.workflow.util.properties.PropertyCollection;
 
@@ -48,8 +50,12 @@ import imagej.workflow.util.properties.PropertyCollection;
  */
 public class ItemWrapper
 {
-    private final PropertyCollection m_properties = new PropertyCollection();
+    public static final long NO_SEQUENCE = -1;
     private final Object m_item;
+    private PropertyCollection m_properties; // created when first asked for
+    private long m_sequence = NO_SEQUENCE;
+    private TraceContext m_trace;
+    long m_enqueueNanos; // when put to a queue, if traced
 
     /**
      * Creates an ItemWrapper based on an ImageJ ImageProcessor.
@@ -62,13 +68,18 @@ public class ItemWrapper
     }
 
     /**
-     * Creates an ItemWrapper based on another ItemWrapper.
+     * Creates an ItemWrapper based on another ItemWrapper.  Properties are
+     * shared until either wrapper changes them.
      *
      * @param other
      */
     public ItemWrapper(ItemWrapper other) {
         m_item = other.getItem();
-        m_properties.setAll(other.getProperties().getAll());
+        m_sequence = other.m_sequence;
+        m_trace = other.m_trace;
+        if (other.hasProperties()) {
+            m_properties = new PropertyCollection(other.m_properties);
+        }
     }
 
     /**
@@ -86,6 +97,56 @@ public class ItemWrapper
      * @return properties
      */
     public IPropertyCollection getProperties() {
+        if (null == m_properties) {
+            m_properties = new PropertyCollection();
+        }
         return m_properties;
     }
+
+    /**
+     * Whether any properties are associated with this image.  Unlike
+     * getProperties() this never creates the collection.
+     *
+     * @return
+     */
+    public boolean hasProperties() {
+        return null != m_properties && !m_properties.isEmpty();
+    }
+
+    /**
+     * Gets the sequence number, i.e. the place of the image that this item
+     * was derived from among the inputs to an ordered workflow.
+     *
+     * @return sequence number or NO_SEQUENCE
+     */
+    public long getSequence() {
+        return m_sequence;
+    }
+
+    /**
+     * Sets the sequence number.
+     *
+     * @param sequence
+     */
+    public void setSequence(long sequence) {
+        m_sequence = sequence;
+    }
+
+    /**
+     * Gets the trace of the image that this item was derived from.
+     *
+     * @return trace context or null if not traced
+     */
+    public TraceContext getTrace() {
+        return m_trace;
+    }
+
+    /**
+     * Sets the trace context.
+     *
+     * @param trace
+     */
+    public void setTrace(TraceContext trace) {
+        m_trace = trace;
+    }
 }
@@ -0,0 +1,70 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.plugin;
+
+import imagej.workflow.IOutputListener;
+
+/**
+ * Stands in for a queue where an output is passed on to a listener rather
+ * than to another plugin.  Putting an item calls the listener right away, on
+ * the calling thread.
+ *
+ * @author Aivar Grislis
+ */
+class ListenerTarget implements IOutputTarget {
+    private final String m_outName;
+    private final IOutputListener m_listener;
+
+    /**
+     * Creates a target that feeds a listener.
+     *
+     * @param outName output name passed to the listener
+     * @param listener
+     */
+    ListenerTarget(String outName, IOutputListener listener) {
+        m_outName = outName;
+        m_listener = listener;
+    }
+
+    public String getInName() {
+        return m_outName;
+    }
+
+    public void put(ItemWrapper item) {
+        m_listener.outputImage(m_outName, item);
+    }
+
+    public void putAll(ItemWrapper[] items, int count) {
+        for (int i = 0; i < count; ++i) {
+            m_listener.outputImage(m_outName, items[i]);
+        }
+    }
+}
@@ -33,35 +33,89 @@ package imagej.workflow.plugin;
 import imagej.workflow.plugin.annotations.Input;
 import imagej.workflow.plugin.annotations.Item;
 import imagej.workflow.plugin.annotations.Output;
+import imagej.workflow.plugin.annotations.Setup;
+import imagej.workflow.plugin.annotations.Teardown;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * The PluginAnnotations class keeps sets of input and output names based
- * on plugin class annotations.
+ * on plugin class annotations.  Also keeps the plugin's lifecycle methods,
+ * annotated with @Setup and @Teardown.
+ * <p>
+ * Inputs and outputs are numbered in the order they are annotated; this
+ * number is the slot for that input or output.  Launchers and plugins pass
+ * items in arrays indexed by slot.
+ * <p>
+ * Instances are immutable.  Use getInstance() to share one instance per
+ * plugin class, rather than reflecting over the annotations again.
  *
  * @author Aivar Grislis
  */
 public class PluginAnnotations {
     enum InputOutput { INPUT, OUTPUT };
-    Set<String> m_inputNames;
-    Set<String> m_outputNames;
+    private static final ConcurrentMap<Class<?>, PluginAnnotations> s_cache
+            = new ConcurrentHashMap<Class<?>, PluginAnnotations>();
+    private static final Item[] NO_ITEMS = new Item[0];
+    final String[] m_inputSlots;
+    final String[] m_outputSlots;
+    final Item[] m_inputItems;
+    final Item[] m_outputItems;
+    final Set<String> m_inputNames;
+    final Set<String> m_outputNames;
+    final List<Method> m_setupMethods;
+    final List<Method> m_teardownMethods;
+
+    /**
+     * Gets the shared instance for a given plugin class.
+     *
+     * @param pluginClass
+     * @return annotations
+     */
+    public static PluginAnnotations getInstance(Class<?> pluginClass) {
+        PluginAnnotations annotations = s_cache.get(pluginClass);
+        if (null == annotations) {
+            annotations = new PluginAnnotations(pluginClass);
+            PluginAnnotations previous = s_cache.putIfAbsent(pluginClass, annotations);
+            if (null != previous) {
+                annotations = previous;
+            }
+        }
+        return annotations;
+    }
 
     /**
      * Creates an instance for a given plugin class.
      *
      * @param pluginClass
      */
-    public PluginAnnotations(Class pluginClass) {
-        // build sets of input and output names from annotations
-        m_inputNames = getInputNamesFromAnnotations(pluginClass);
-        m_outputNames = getOutputNamesFromAnnotations(pluginClass);
+    public PluginAnnotations(Class<?> pluginClass) {
+        // build arrays of input and output items from annotations
+        m_inputItems = getInputItemsFromAnnotations(pluginClass);
+        m_outputItems = getOutputItemsFromAnnotations(pluginClass);
+        m_inputSlots = getSlots(pluginClass, Input.class, m_inputItems, Input.DEFAULT);
+        m_outputSlots = getSlots(pluginClass, Output.class, m_outputItems, Output.DEFAULT);
+        m_inputNames = Collections.unmodifiableSet(new LinkedHashSet<String>(Arrays.asList(m_inputSlots)));
+        m_outputNames = Collections.unmodifiableSet(new LinkedHashSet<String>(Arrays.asList(m_outputSlots)));
+
+        // find lifecycle methods
+        m_setupMethods = Collections.unmodifiableList(getAnnotatedMethods(pluginClass, Setup.class));
+        m_teardownMethods = Collections.unmodifiableList(getAnnotatedMethods(pluginClass, Teardown.class));
     }
 
     /**
-     * Gets the set of annotated input names.
+     * Gets the set of annotated input names, in slot order.
      *
      * @return set of names
      */
@@ -70,7 +124,7 @@ public class PluginAnnotations {
     }
 
     /**
-     * Gets the set of annotated output names.
+     * Gets the set of annotated output names, in slot order.
      *
      * @return set of names
      */
@@ -78,6 +132,101 @@ public class PluginAnnotations {
         return m_outputNames;
     }
 
+    /**
+     * Gets the number of input slots.
+     *
+     * @return
+     */
+    public int getInputCount() {
+        return m_inputSlots.length;
+    }
+
+    /**
+     * Gets the number of output slots.
+     *
+     * @return
+     */
+    public int getOutputCount() {
+        return m_outputSlots.length;
+    }
+
+    /**
+     * Gets the input name for a slot.
+     *
+     * @param slot
+     * @return name
+     */
+    public String getInputName(int slot) {
+        return m_inputSlots[slot];
+    }
+
+    /**
+     * Gets the output name for a slot.
+     *
+     * @param slot
+     * @return name
+     */
+    public String getOutputName(int slot) {
+        return m_outputSlots[slot];
+    }
+
+    /**
+     * Gets the slot for an input name.
+     *
+     * @param name
+     * @return slot or -1 if not annotated
+     */
+    public int getInputSlot(String name) {
+        return getSlot(m_inputSlots, name);
+    }
+
+    /**
+     * Gets the slot for an output name.
+     *
+     * @param name
+     * @return slot or -1 if not annotated
+     */
+    public int getOutputSlot(String name) {
+        return getSlot(m_outputSlots, name);
+    }
+
+    /**
+     * Gets the annotated input items, in slot order.  Gives types and default
+     * values.
+     *
+     * @return items, empty if the plugin just has the default input
+     */
+    public Item[] getInputItems() {
+        return m_inputItems.clone();
+    }
+
+    /**
+     * Gets the annotated output items, in slot order.
+     *
+     * @return items, empty if the plugin just has the default output
+     */
+    public Item[] getOutputItems() {
+        return m_outputItems.clone();
+    }
+
+    /**
+     * Gets the methods annotated with @Setup, superclass methods first.
+     *
+     * @return list of methods
+     */
+    public List<Method> getSetupMethods() {
+        return m_setupMethods;
+    }
+
+    /**
+     * Gets the methods annotated with @Teardown, subclass methods first.
+     *
+     * @return list of methods
+     */
+    public List<Method> getTeardownMethods() {
+        return m_teardownMethods;
+    }
+
     /**
      * Checks whether a given name appears in the annotations for input or
      * output images.  Puts out an error message.
@@ -88,8 +237,8 @@ public class PluginAnnotations {
      */
     public boolean isAnnotatedName(InputOutput inOut, String name) {
         boolean returnValue = true;
-        Set<String> names = (InputOutput.INPUT == inOut) ? getInputNames() : getOutputNames();
-        if (!names.contains(name)) {
+        int slot = (InputOutput.INPUT == inOut) ? getInputSlot(name) : getOutputSlot(name);
+        if (-1 == slot) {
             nameNotAnnotated(inOut, name);
             returnValue = false;
         }
@@ -109,55 +258,138 @@ public class PluginAnnotations {
     }
 
     /**
-     * Builds a set of input object names from the subclass annotations.
+     * Looks up the slot for a name.  There are only a few names and they
+     * are usually the same constant strings, so try identity first.
+     *
+     * @param slots
+     * @param name
+     * @return slot or -1
+     */
+    private static int getSlot(String[] slots, String name) {
+        for (int i = 0; i < slots.length; ++i) {
+            if (slots[i] == name) {
+                return i;
+            }
+        }
+        for (int i = 0; i < slots.length; ++i) {
+            if (slots[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Builds an array of slot names from the annotated items.
      *
      * @param pluginClass
-     * @return set of names
+     * @param annotationClass Input or Output
+     * @param items
+     * @param defaultName name if annotation has no items
+     * @return slot names
      */
-    private Set<String> getInputNamesFromAnnotations(Class pluginClass) {
-        Set<String> set = new HashSet<String>();
+    private String[] getSlots(Class<?> pluginClass, Class<? extends Annotation> annotationClass, Item[] items, String defaultName) {
+        Set<String> names = new LinkedHashSet<String>();
+        if (0 == items.length) {
+            if (null != pluginClass && null != pluginClass.getAnnotation(annotationClass)) {
+                names.add(defaultName);
+            }
+        }
+        else {
+            for (Item item : items) {
+                //TODO if (Item.Type.IMAGE == item.type())
+                names.add(item.name());
+            }
+        }
+        return names.toArray(new String[0]);
+    }
+
+    /**
+     * Gets the input items from the subclass annotations.
+     *
+     * @param pluginClass
+     * @return array of items
+     */
+    private Item[] getInputItemsFromAnnotations(Class<?> pluginClass) {
+        Item[] items = NO_ITEMS;
         if (null != pluginClass) {
             Annotation annotation = pluginClass.getAnnotation(Input.class);
             if (annotation instanceof Input) {
-                Input inputs = (Input) annotation;
-                Item items[] = inputs.value();
-                if (0 == items.length) {
-                    set.add(Input.DEFAULT);
-                }
-                else {
-                    for (Item item : items) {
-                        //TODO if (Item.Type.IMAGE == item.type())
-                        set.add(item.name());
-                    }
-                }
+                items = ((Input) annotation).value();
             }
         }
-        return set;
+        return items;
     }
 
     /**
-     * Builds a set of output image names from the subclass annotations.
+     * Gets the output items from the subclass annotations.
      *
      * @param pluginClass
-     * @return set of names
+     * @return array of items
      */
-    private Set<String> getOutputNamesFromAnnotations(Class pluginClass) {
-        Set<String> set = new HashSet<String>();
+    private Item[] getOutputItemsFromAnnotations(Class<?> pluginClass) {
+        Item[] items = NO_ITEMS;
         if (null != pluginClass) {
             Annotation annotation = pluginClass.getAnnotation(Output.class);
             if (annotation instanceof Output) {
-                Output inputs = (Output) annotation;
-                Item items[] = inputs.value();
-                if (0 == items.length) {
-                    set.add(Output.DEFAULT);
+                items = ((Output) annotation).value();
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Builds a list of the no-argument methods with a given annotation.
+     * Superclass methods come before subclass methods.  A superclass method
+     * that is overridden is left out, whether or not the override is
+     * annotated; calling it would call the override anyway.
+     *
+     * @param pluginClass
+     * @param annotationClass
+     * @return list of methods
+     */
+    private List<Method> getAnnotatedMethods(Class<?> pluginClass, Class<? extends Annotation> annotationClass) {
+        List<Method> list = new ArrayList<Method>();
+        Set<String> overridden = new HashSet<String>();
+        for (Class<?> c = pluginClass; null != c && Object.class != c; c = c.getSuperclass()) {
+            List<Method> methods = new ArrayList<Method>();
+            for (Method method : c.getDeclaredMethods()) {
+                if (0 == method.getParameterTypes().length
+                        && overridden.contains(method.getName()) && isOverridable(method)) {
+                    continue;
                 }
-                else {
-                    for (Item item : items) {
-                        set.add(item.name());
+                if (method.isAnnotationPresent(annotationClass)) {
+                    if (0 != method.getParameterTypes().length) {
+                        System.out.println("@" + annotationClass.getSimpleName() + " method " + method.getName() + " should take no arguments");
                     }
+                    else {
+                        method.setAccessible(true);
+                        methods.add(method);
+                    }
+                }
+            }
+            list.addAll(0, methods);
+            for (Method method : c.getDeclaredMethods()) {
+                if (0 == method.getParameterTypes().length && isOverridable(method)) {
+                    overridden.add(method.getName());
                 }
             }
         }
-        return set;
+        if (Teardown.class == annotationClass) {
+            // undo in reverse order
+            Collections.reverse(list);
+        }
+        return list;
+    }
+
+    /**
+     * Whether a method could be overridden in a subclass.
+     *
+     * @param method
+     * @return
+     */
+    private static boolean isOverridable(Method method) {
+        int modifiers = method.getModifiers();
+        return !Modifier.isPrivate(modifiers) && !Modifier.isStatic(modifiers);
     }
 }
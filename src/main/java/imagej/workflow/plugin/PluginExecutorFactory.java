@@ -0,0 +1,152 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.plugin;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executors that run plugin instances on behalf of a plugin
+ * launcher.
+ * <p>
+ * The work-stealing and virtual thread executors are looked up reflectively
+ * since they are not available on every JVM we run on.  If they are missing
+ * we fall back to a fixed pool and a cached pool respectively.
+ *
+ * @author Aivar Grislis
+ */
+public class PluginExecutorFactory {
+    public enum Type { FIXED, WORK_STEALING, VIRTUAL };
+    public static final Type DEFAULT_TYPE = Type.FIXED;
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Static methods only.
+     */
+    private PluginExecutorFactory() { }
+
+    /**
+     * Creates an executor.
+     *
+     * @param type kind of executor
+     * @param parallelism maximum number of concurrent plugin instances
+     * @param name used to name the threads
+     * @return the executor
+     */
+    public static ExecutorService create(Type type, int parallelism, String name) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        ExecutorService executor = null;
+        switch (type) {
+            case WORK_STEALING:
+                executor = invoke("newWorkStealingPool",
+                        new Class<?>[] { int.class }, new Object[] { parallelism });
+                break;
+            case VIRTUAL:
+                executor = invoke("newVirtualThreadPerTaskExecutor",
+                        new Class<?>[0], new Object[0]);
+                if (null == executor) {
+                    // launcher still bounds the number of concurrent tasks
+                    executor = Executors.newCachedThreadPool(new DaemonThreadFactory(name));
+                }
+                break;
+        }
+        if (null == executor) {
+            executor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory(name));
+        }
+        return executor;
+    }
+
+    /**
+     * Creates an executor that is shared by all the launchers of a workflow.
+     * Waiting tasks run highest priority first.  Only PluginLauncher tasks
+     * may be executed, since they carry the priority.
+     *
+     * @param threads number of threads
+     * @param name used to name the threads
+     * @return the executor
+     */
+    public static ExecutorService createPrioritized(int threads, String name) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be at least 1");
+        }
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new DaemonThreadFactory(name));
+    }
+
+    /**
+     * Invokes a static factory method of Executors, if present.
+     *
+     * @param methodName
+     * @param parameterTypes
+     * @param args
+     * @return null or executor
+     */
+    private static ExecutorService invoke(String methodName, Class<?>[] parameterTypes, Object[] args) {
+        ExecutorService executor = null;
+        try {
+            Method method = Executors.class.getMethod(methodName, parameterTypes);
+            executor = (ExecutorService) method.invoke(null, args);
+        }
+        catch (NoSuchMethodException e) {
+            // expected on older JVMs, fall back quietly
+        }
+        catch (Exception e) {
+            System.err.println("Problem creating executor " + methodName + ", using fallback " + e.getMessage());
+        }
+        return executor;
+    }
+
+    /**
+     * Creates named daemon threads, so plugins don't keep the JVM alive.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String m_name;
+        private final AtomicInteger m_count = new AtomicInteger();
+
+        DaemonThreadFactory(String name) {
+            m_name = name;
+        }
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, m_name + '-' + m_count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -30,24 +30,97 @@
 
 package imagej.workflow.plugin;
 
+import imagej.workflow.metrics.Histogram;
+import imagej.workflow.metrics.MetricsRegistry;
+import imagej.workflow.trace.TraceContext;
+import imagej.workflow.trace.Tracer;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The PluginLauncher talks to the PluginScheduler and launches new instances of
  * the plugin as needed.
+ * <p>
+ * Plugin instances run on an executor.  At most "parallelism" instances run
+ * at the same time; when that many are busy the launcher stops taking inputs
+ * from its queues until one finishes.
+ * <p>
+ * Plugin instances are pooled and reused for later sets of inputs, so the
+ * pool never holds more than "parallelism" instances.  The arrays that pass
+ * input images to them, indexed by input slot, are reused as well.  Each instance has its
+ * @Setup methods called when created and its @Teardown methods called when
+ * the launcher shuts down.
+ * <p>
+ * The launcher may take a batch of input sets at once and hand the whole
+ * batch to one plugin instance.  The batch size and linger time come from the
+ * launcher's own settings, or failing that from the wires that feed it.
+ * <p>
+ * A launcher may be fused to the launcher before it.  Its plugin then runs
+ * on the previous plugin's thread, right when the previous plugin puts an
+ * item, and the launcher starts no thread of its own.
+ * <p>
+ * A workflow may give all its launchers a shared executor, in which case the
+ * launcher's priority decides which waiting plugin instances run first.
+ * <p>
+ * In an ordered workflow each plugin instance holds back its outputs until
+ * the instances launched before it have passed theirs on, so outputs leave in
+ * the order inputs arrived.  Inputs from several queues are matched up by
+ * sequence number.
+ * <p>
+ * The launcher reports how long it waits for inputs, how long instances wait
+ * for a thread and how long they run, as histograms "plugin.&lt;class&gt;.&lt;id&gt;"
+ * followed by ".wait", ".queued" and ".run".
+ * <p>
+ * With a tracer set on the scheduler, each run of the plugin on traced
+ * inputs is recorded as a span.
  *
  * @author Aivar Grislis
  */
 public class PluginLauncher implements IPluginLauncher {
-    public static boolean s_singleInstance = false;
-    private Class m_pluginClass;
+    public static final String PLUGIN = "plugin.";
+    public static final String WAIT = ".wait";
+    public static final String QUEUED = ".queued";
+    public static final String RUN = ".run";
+    private Class<?> m_pluginClass;
     private String m_uniqueId;
     private PluginAnnotations m_annotations;
+    private PluginScheduler m_scheduler;
     private Thread m_thread;
+    private boolean m_started = false;
+    private volatile boolean m_fused = false;
     private volatile boolean m_quit = false;
-    private Map<String, String> m_outputNames = new HashMap<String, String>();
+    private volatile PluginExecutorFactory.Type m_executorType = PluginExecutorFactory.DEFAULT_TYPE;
+    private volatile int m_parallelism = PluginExecutorFactory.DEFAULT_PARALLELISM;
+    private volatile int m_batchSize = 1;
+    private volatile long m_lingerNanos = 0;
+    private volatile boolean m_tornDown = false;
+    private volatile int m_priority = 0;
+    private volatile ExecutorService m_sharedExecutor;
+    private volatile boolean m_ordered = false;
+    private final Object m_turnLock = new Object();
+    private long m_nextTurn = 0;
+    private volatile Histogram m_waitTime;
+    private volatile Histogram m_queueTime;
+    private volatile Histogram m_runTime;
+    private ExecutorService m_executor;
+    private Semaphore m_permits;
+    private int m_permitCount;
+    private final Queue<IPluginInternal> m_idleInstances = new ConcurrentLinkedQueue<IPluginInternal>();
+    private final Queue<PluginTask> m_idleTasks = new ConcurrentLinkedQueue<PluginTask>();
+    private volatile IOutputTarget[][] m_outputQueues;
+    private Map<String, ItemQueue> m_externalQueues = new ConcurrentHashMap<String, ItemQueue>();
     private Map<String, Object> m_inputs = new HashMap<String, Object>();
 
     /**
@@ -57,7 +130,7 @@ public class PluginLauncher implements IPluginLauncher {
      * @param pluginClass
      * @param annotations
      */
-    public PluginLauncher(Class pluginClass, String uniqueId, PluginAnnotations annotations) {
+    public PluginLauncher(Class<?> pluginClass, String uniqueId, PluginAnnotations annotations) {
         m_pluginClass = pluginClass;
         m_uniqueId = uniqueId;
         //TODO
@@ -65,9 +138,54 @@ public class PluginLauncher implements IPluginLauncher {
             System.out.println("Creating PluginLauncher w/o uniqueId!!");
         }
         m_annotations = annotations;
-        m_thread = new LauncherThread();
-        m_thread.setDaemon(true);
-        m_thread.start();
+        m_outputQueues = new IOutputTarget[annotations.getOutputCount()][];
+    }
+
+    /**
+     * Sets the scheduler that passes images to and from this plugin.  Must be
+     * called before processing starts.
+     *
+     * @param scheduler
+     */
+    public synchronized void setScheduler(PluginScheduler scheduler) {
+        if (m_started) {
+            throw new IllegalStateException("Launcher already started");
+        }
+        m_scheduler = scheduler;
+    }
+
+    /**
+     * Gets the scheduler.  A launcher used on its own gets a scheduler of its
+     * own.
+     *
+     * @return scheduler
+     */
+    public synchronized PluginScheduler getScheduler() {
+        if (null == m_scheduler) {
+            m_scheduler = new PluginScheduler();
+        }
+        return m_scheduler;
+    }
+
+    /**
+     * Starts the launcher thread, which waits for inputs.  Does nothing if
+     * already started.  A fused launcher gets its inputs from the previous
+     * plugin and needs no thread.
+     */
+    public synchronized void start() {
+        if (!m_started) {
+            m_started = true;
+            MetricsRegistry metrics = getScheduler().getMetrics();
+            String prefix = PLUGIN + m_pluginClass.getSimpleName() + '.' + m_uniqueId;
+            m_waitTime = metrics.getHistogram(prefix + WAIT);
+            m_queueTime = metrics.getHistogram(prefix + QUEUED);
+            m_runTime = metrics.getHistogram(prefix + RUN);
+            if (!m_fused) {
+                m_thread = new LauncherThread();
+                m_thread.setDaemon(true);
+                m_thread.start();
+            }
+        }
     }
 
 
@@ -80,6 +198,126 @@ public class PluginLauncher implements IPluginLauncher {
         m_inputs = inputs;
     }
 
+    /**
+     * Sets the kind of executor used to run plugin instances.  Takes effect
+     * if called before the first set of inputs arrives.
+     *
+     * @param type
+     */
+    public void setExecutorType(PluginExecutorFactory.Type type) {
+        m_executorType = type;
+    }
+
+    /**
+     * Sets the maximum number of plugin instances that run concurrently.  Takes
+     * effect if called before the first set of inputs arrives.
+     *
+     * @param parallelism 1 runs one plugin instance at a time
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        m_parallelism = parallelism;
+    }
+
+    /**
+     * Sets how many sets of inputs to take at once and hand to one plugin
+     * instance, and how long to wait for that many.  Overrides the batch
+     * settings of the wires that feed this launcher.
+     *
+     * @param batchSize 1 for no batching
+     * @param lingerMicros
+     */
+    public void setBatch(int batchSize, int lingerMicros) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        if (lingerMicros < 0) {
+            throw new IllegalArgumentException("Linger time must not be negative");
+        }
+        m_lingerNanos = TimeUnit.MICROSECONDS.toNanos(lingerMicros);
+        m_batchSize = batchSize;
+    }
+
+    /**
+     * Sets the priority of this launcher's plugin instances on a shared
+     * executor.
+     *
+     * @param priority higher runs first
+     */
+    public void setPriority(int priority) {
+        m_priority = priority;
+    }
+
+    /**
+     * Sets an executor shared with other launchers, used instead of an
+     * executor of this launcher's own.  Ignored if the launcher is set to a
+     * kind of executor other than the default.  Takes effect if called
+     * before the first set of inputs arrives.
+     *
+     * @param executor null for an executor of our own
+     */
+    public void setSharedExecutor(ExecutorService executor) {
+        m_sharedExecutor = executor;
+    }
+
+    /**
+     * Sets whether outputs leave in the order inputs arrived, and inputs
+     * are matched up by sequence number.  Must be called before the launcher
+     * starts.
+     *
+     * @param ordered
+     */
+    public void setOrdered(boolean ordered) {
+        m_ordered = ordered;
+    }
+
+    /**
+     * Fuses this launcher to the previous one, for a given input.  Only a
+     * launcher with a single, piped input, no batching, and the same
+     * parallelism and kind of executor as the previous one may be fused.
+     * Must be called before this launcher starts.
+     *
+     * @param inName
+     * @param previous
+     * @return target that runs the plugin when put to, or null if not fusable
+     */
+    public synchronized IOutputTarget fuse(String inName, IPluginLauncher previous) {
+        if (m_started || !(previous instanceof PluginLauncher)) {
+            return null;
+        }
+        PluginLauncher previousLauncher = (PluginLauncher) previous;
+        if (1 != m_annotations.getInputCount()
+                || m_inputs.containsKey(inName)
+                || 1 != m_batchSize
+                || previousLauncher.m_parallelism != m_parallelism
+                || previousLauncher.m_executorType != m_executorType) {
+            return null;
+        }
+        m_fused = true;
+        return new FusedTarget(inName, this);
+    }
+
+    /**
+     * Runs the plugin for a single input item on the calling thread.  This
+     * is how a fused launcher gets its input.
+     *
+     * @param item
+     * @throws TeardownException if quitting
+     */
+    void runInline(ItemWrapper item) {
+        if (m_quit) {
+            throw new TeardownException("Teardown");
+        }
+        PluginTask task = m_idleTasks.poll();
+        if (null == task) {
+            task = new PluginTask(m_annotations.getInputCount());
+        }
+        task.m_inputImages[0] = item;
+        task.runPlugin();
+    }
+
     /**
      * Chains this launcher to next one.
      *
@@ -88,7 +326,7 @@ public class PluginLauncher implements IPluginLauncher {
      * @param inName
      */
     public void chainNext(String outName, IPluginLauncher next, String inName) {
-        PluginScheduler.getInstance().chain(this, outName, next, inName);
+        getScheduler().chain(this, outName, next, inName);
     }
 
     /**
@@ -99,7 +337,7 @@ public class PluginLauncher implements IPluginLauncher {
      * @param outName
      */
     public void chainPrevious(String inName, IPluginLauncher previous, String outName) {
-        PluginScheduler.getInstance().chain(previous, outName, this, inName);
+        getScheduler().chain(previous, outName, this, inName);
     }
 
     /**
@@ -109,8 +347,13 @@ public class PluginLauncher implements IPluginLauncher {
      * @param image
      */
     public void externalPut(String name, ItemWrapper image) {
-        String fullInName = uniqueName(name);
-        PluginScheduler.getInstance().put(m_uniqueId, name, fullInName, image);
+        start();
+        ItemQueue queue = m_externalQueues.get(name);
+        if (null == queue) {
+            queue = m_scheduler.resolve(uniqueName(name));
+            m_externalQueues.put(name, queue);
+        }
+        m_scheduler.put(m_uniqueId, name, queue, image);
     }
 
     /**
@@ -124,96 +367,333 @@ public class PluginLauncher implements IPluginLauncher {
     }
 
     /**
-     * Associates a unique input image name for some other launcher to our
-     * output image name.
+     * Associates the queue for a unique input image name for some other
+     * launcher to our output image name.  Associating more queues with the
+     * same output name fans the output out to all of them.
      *
      * @param outName
-     * @param fullInName
+     * @param queue
      */
-    public void associate(String outName, String fullInName) {
-        m_outputNames.put(outName, fullInName);
+    public synchronized void associate(String outName, IOutputTarget queue) {
+        int slot = m_annotations.getOutputSlot(outName);
+        if (-1 == slot) {
+            PluginAnnotations.nameNotAnnotated(PluginAnnotations.InputOutput.OUTPUT, outName);
+            return;
+        }
+
+        // copy on write, plugins may be reading the old arrays
+        IOutputTarget[][] outputQueues = m_outputQueues.clone();
+        IOutputTarget[] queues = outputQueues[slot];
+        if (null == queues) {
+            queues = new IOutputTarget[] { queue };
+        }
+        else {
+            IOutputTarget[] newQueues = new IOutputTarget[queues.length + 1];
+            System.arraycopy(queues, 0, newQueues, 0, queues.length);
+            newQueues[queues.length] = queue;
+            queues = newQueues;
+        }
+        outputQueues[slot] = queues;
+        m_outputQueues = outputQueues;
     }
 
     /**
-     * Quits processing the chain.
+     * Quits processing the chain.  Plugin instances that are already running
+     * are allowed to finish.
      */
     public void quit() {
         m_quit = true;
+        synchronized (this) {
+            if (null != m_executor) {
+                m_executor.shutdown();
+            }
+        }
+        if (m_fused) {
+            // no launcher thread to do this
+            m_tornDown = true;
+            tearDownInstances();
+        }
+    }
+
+    /**
+     * Runs a plugin instance for a set of inputs on the executor.  Blocks
+     * while the maximum number of plugin instances are already running.
+     *
+     * @param task with its set of inputs filled in
+     * @throws InterruptedException
+     */
+    private void launch(PluginTask task) throws InterruptedException {
+        ExecutorService executor;
+        synchronized (this) {
+            if (null == m_permits) {
+                m_permitCount = m_parallelism;
+                m_permits = new Semaphore(m_permitCount);
+                if (null == m_sharedExecutor || PluginExecutorFactory.DEFAULT_TYPE != m_executorType) {
+                    m_executor = PluginExecutorFactory.create(
+                            m_executorType, m_parallelism, m_pluginClass.getSimpleName());
+                }
+            }
+            executor = (null != m_executor) ? m_executor : m_sharedExecutor;
+        }
+        task.m_launchNanos = System.nanoTime();
+        m_permits.acquire();
+        try {
+            task.prioritize(m_priority);
+            executor.execute(task);
+        }
+        catch (RejectedExecutionException e) {
+            // executor was shut down by quit(), or by the workflow
+            if (0 <= task.m_ticket) {
+                // let later instances have their turn
+                awaitTurn(task.m_ticket);
+                endTurn(task.m_ticket);
+                task.m_ticket = -1;
+            }
+            m_permits.release();
+        }
     }
 
     /**
      * Processing thread for launcher.  Waits for a complete set of input
-     * images, then spawns a thread with a new instance of the plugin to
+     * images, then hands a new instance of the plugin to the executor to
      * process them.
      */
     private class LauncherThread extends Thread {
 
         @Override
         public void run() {
-            Set<String> inputNames = m_annotations.getInputNames();
-
-            //TODO
-            System.out.println("INPUT NAMES");
-            for (String name: inputNames) {
-                System.out.println("INPUT NAME IS " + name);
-            }
-            while (!m_quit) {
-                // assemble a set of input images
-                Map<String, ItemWrapper> inputImages = new HashMap();
-                for (String inputName : inputNames) {
-                    ItemWrapper item = null;
-                    if (m_inputs.containsKey(inputName)) {
-                        // already specified for this instance
-                        item = new ItemWrapper(m_inputs.get(inputName));
+            String[] names = new String[m_annotations.getInputCount()];
+            for (int i = 0; i < names.length; ++i) {
+                names[i] = m_annotations.getInputName(i);
+            }
+
+            // resolve queues once, up front; wrap preset inputs once too
+            ItemQueue[] queues = new ItemQueue[names.length];
+            ItemWrapper[] presetItems = new ItemWrapper[names.length];
+            int pipedInputs = 0;
+            for (int i = 0; i < names.length; ++i) {
+                if (m_inputs.containsKey(names[i])) {
+                    presetItems[i] = new ItemWrapper(m_inputs.get(names[i]));
+                }
+                else {
+                    queues[i] = m_scheduler.resolve(uniqueName(names[i]));
+                    queues[i].setLabel(m_pluginClass.getSimpleName() + '.' + names[i]);
+                    ++pipedInputs;
+                }
+            }
+
+            boolean ordered = m_ordered;
+            long ticket = 0;
+
+            try {
+                while (!m_quit) {
+                    PluginTask task = m_idleTasks.poll();
+                    if (null == task) {
+                        task = new PluginTask(names.length);
                     }
-                    else {
-                        // get from pipes
-                        String fullInName = uniqueName(inputName);
-                        item = PluginScheduler.getInstance().get(fullInName);
+                    if (ordered) {
+                        task.m_ticket = ticket++;
                     }
-                    inputImages.put(inputName, item);
-                }
 
-                // if we didn't actually wait for any inputs, run once only.
-                if (inputNames.size() == inputNames.size()) {
-                    m_quit = true;
-                }
+                    long waitStart = System.nanoTime();
 
-                //TODO Good place to throttle thread creation here
-                PluginScheduler.getInstance().reportNewPlugin(m_pluginClass.getSimpleName());
+                    // batch settings may come from wires chained later on
+                    int batchSize = m_batchSize;
+                    long lingerNanos = m_lingerNanos;
+                    if (1 == batchSize) {
+                        for (ItemQueue queue : queues) {
+                            if (null != queue && queue.getBatchSize() > batchSize) {
+                                batchSize = queue.getBatchSize();
+                                lingerNanos = Math.max(lingerNanos, queue.getLingerNanos());
+                            }
+                        }
+                    }
+                    // matching by sequence number is done one set at a time
+                    if (1 < batchSize && 0 < pipedInputs && !(ordered && 1 < pipedInputs)) {
+                        getBatch(task, batchSize, lingerNanos, queues, presetItems);
+                        m_waitTime.record(System.nanoTime() - waitStart);
+                        launch(task);
+                        continue;
+                    }
 
-                // launch the plugin for this set of images
-                Thread pluginThread = new PluginThread(inputImages);
-                pluginThread.start();
+                    // assemble a set of input images, in a reused frame
+                    ItemWrapper[] inputImages = task.m_inputImages;
+                    for (int i = 0; i < names.length; ++i) {
+                        ItemWrapper item = null;
+                        if (null == queues[i]) {
+                            // already specified for this instance
+                            item = presetItems[i];
+                        }
+                        else {
+                            // get from pipes
+                            item = m_scheduler.get(queues[i]);
+                        }
+                        inputImages[i] = item;
+                    }
+                    if (ordered && 1 < pipedInputs) {
+                        matchSequences(inputImages, queues);
+                    }
+                    m_waitTime.record(System.nanoTime() - waitStart);
+
+                    // if we didn't actually wait for any inputs, run once only.
+                    if (0 == pipedInputs) {
+                        m_quit = true;
+                    }
 
-                // Only run one plugin instance at a time?
-                if (s_singleInstance) { //TODO implemented in a quick & dirty way
-                    // wait for plugin to finish
-                    // (Note: this is all a kludge for now:  you might as well just run the plugin
-                    //  on this launcher thread.)
+                    // launch the plugin for this set of images
+                    launch(task);
+                }
+            }
+            catch (TeardownException e) {
+                // normal shutdown
+            }
+            catch (InterruptedException e) {
+                System.out.println("LauncherThread.run() interrupted");
+            }
+            finally {
+                // let running plugin instances finish, then free the threads
+                ExecutorService executor = null;
+                Semaphore permits = null;
+                synchronized (PluginLauncher.this) {
+                    executor = m_executor;
+                    permits = m_permits;
+                }
+                if (null == executor && null != permits) {
+                    // on a shared executor, wait for all our permits back
+                    permits.acquireUninterruptibly(m_permitCount);
+                }
+                else if (null != executor) {
+                    executor.shutdown();
                     try {
-                        pluginThread.join();
+                        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                            System.out.println("Waiting for " + m_pluginClass.getSimpleName() + " to finish");
+                        }
                     }
                     catch (InterruptedException e) {
-                        System.out.println("LauncherThread.run() insterrupted on join");
+                        Thread.currentThread().interrupt();
                     }
                 }
+                // a plugin that was running may still return instances after this
+                m_tornDown = true;
+                tearDownInstances();
             }
         }
     }
 
     /**
-     * Processing thread for a plugin instance.  Instantiates and runs the plugin.
+     * Matches up a set of inputs by sequence number.  An input that is behind
+     * the others is dropped and replaced with the next one from its queue;
+     * the image it came from must have been dropped on the way to one of the
+     * other inputs.  Inputs without sequence numbers are matched in the order
+     * they arrive.
+     *
+     * @param inputImages
+     * @param queues queue for each piped input
      */
-    private class PluginThread extends Thread {
-        Map<String, ItemWrapper> m_inputImages;
-        IPluginInternal m_pluginInstance;
+    private void matchSequences(ItemWrapper[] inputImages, ItemQueue[] queues) {
+        while (true) {
+            long highest = ItemWrapper.NO_SEQUENCE;
+            boolean matched = true;
+            for (int i = 0; i < queues.length; ++i) {
+                if (null != queues[i]) {
+                    long sequence = inputImages[i].getSequence();
+                    if (ItemWrapper.NO_SEQUENCE == sequence) {
+                        return;
+                    }
+                    if (ItemWrapper.NO_SEQUENCE != highest && sequence != highest) {
+                        matched = false;
+                    }
+                    highest = Math.max(highest, sequence);
+                }
+            }
+            if (matched) {
+                return;
+            }
+            for (int i = 0; i < queues.length; ++i) {
+                if (null != queues[i] && inputImages[i].getSequence() < highest) {
+                    inputImages[i] = m_scheduler.get(queues[i]);
+                }
+            }
+        }
+    }
 
-        PluginThread(Map<String, ItemWrapper> inputImages) {
-            m_inputImages = inputImages;
-            m_pluginInstance = null;
+    /**
+     * Waits until the instances launched before a given ticket have passed
+     * on their outputs.
+     *
+     * @param ticket
+     */
+    private void awaitTurn(long ticket) {
+        synchronized (m_turnLock) {
+            boolean interrupted = false;
+            while (m_nextTurn != ticket) {
+                try {
+                    m_turnLock.wait();
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Lets the instance launched after a given ticket pass on its outputs.
+     *
+     * @param ticket
+     */
+    private void endTurn(long ticket) {
+        synchronized (m_turnLock) {
+            m_nextTurn = ticket + 1;
+            m_turnLock.notifyAll();
+        }
+    }
+
+    /**
+     * Assembles a batch of input sets.  The first piped input decides how
+     * many sets there are; the others then supply just as many.
+     *
+     * @param task gets the batch
+     * @param batchSize maximum number of input sets
+     * @param lingerNanos how long to wait for more than one
+     * @param queues queue for each piped input
+     * @param presetItems item for each preset input
+     */
+    private void getBatch(PluginTask task, int batchSize, long lingerNanos,
+            ItemQueue[] queues, ItemWrapper[] presetItems) {
+        ItemWrapper[][] inputBatch = task.getInputBatch(batchSize);
+        int count = 0;
+        for (int i = 0; i < queues.length; ++i) {
+            if (null != queues[i]) {
+                if (0 == count) {
+                    count = m_scheduler.get(queues[i], inputBatch[i], 1, batchSize, lingerNanos);
+                }
+                else {
+                    m_scheduler.get(queues[i], inputBatch[i], count, count, 0);
+                }
+            }
+        }
+        for (int i = 0; i < presetItems.length; ++i) {
+            if (null != presetItems[i]) {
+                Arrays.fill(inputBatch[i], 0, count, presetItems[i]);
+            }
+        }
+        task.m_batchCount = count;
+    }
+
+    /**
+     * Gets an idle plugin instance, or creates and sets up a new one.
+     *
+     * @return null or plugin instance
+     */
+    private IPluginInternal getInstance() {
+        IPluginInternal pluginInstance = m_idleInstances.poll();
+        if (null == pluginInstance) {
             try {
-                m_pluginInstance = (IPluginInternal) m_pluginClass.newInstance();
+                pluginInstance = (IPluginInternal) m_pluginClass.newInstance();
             }
             catch (InstantiationException e) {
                 System.out.println("Problem instantiating plugin " + m_pluginClass.getSimpleName() + ' ' + e.getMessage());
@@ -221,12 +701,194 @@ public class PluginLauncher implements IPluginLauncher {
             catch (IllegalAccessException e) {
                 System.out.println("Illegal access instantiating plugin " + m_pluginClass.getSimpleName() + ' ' + e.getMessage());
             }
+            if (null != pluginInstance
+                    && !invoke(m_annotations.getSetupMethods(), pluginInstance)) {
+                pluginInstance = null;
+            }
+        }
+        return pluginInstance;
+    }
+
+    /**
+     * Tears down all the idle plugin instances.
+     */
+    private void tearDownInstances() {
+        IPluginInternal pluginInstance;
+        while (null != (pluginInstance = m_idleInstances.poll())) {
+            invoke(m_annotations.getTeardownMethods(), pluginInstance);
+        }
+    }
+
+    /**
+     * Invokes lifecycle methods on a plugin instance.
+     *
+     * @param methods
+     * @param pluginInstance
+     * @return whether all succeeded
+     */
+    private boolean invoke(List<Method> methods, IPluginInternal pluginInstance) {
+        boolean success = true;
+        for (Method method : methods) {
+            try {
+                method.invoke(pluginInstance);
+            }
+            catch (InvocationTargetException e) {
+                System.out.println("Plugin " + m_pluginClass.getSimpleName() + '.' + method.getName() + " exception " + e.getCause());
+                success = false;
+            }
+            catch (IllegalAccessException e) {
+                System.out.println("Illegal access invoking " + m_pluginClass.getSimpleName() + '.' + method.getName());
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Processing task for a plugin instance.  Runs a pooled instance of the
+     * plugin and returns it to the pool.  Tasks are pooled too, so the frame
+     * of input images is reused for later sets of inputs.  A task may
+     * instead carry a batch of input sets, indexed by input slot and then by
+     * index within the batch.
+     */
+    private class PluginTask extends PrioritizedTask {
+        final ItemWrapper[] m_inputImages;
+        ItemWrapper[][] m_inputBatch;
+        int m_batchCount;
+        long m_ticket = -1; // launch order, in an ordered workflow
+        long m_launchNanos;
+
+        PluginTask(int inputCount) {
+            m_inputImages = new ItemWrapper[inputCount];
+        }
+
+        /**
+         * Gets the arrays for a batch, big enough for the given size.
+         *
+         * @param batchSize
+         * @return
+         */
+        ItemWrapper[][] getInputBatch(int batchSize) {
+            if (null == m_inputBatch || m_inputBatch[0].length < batchSize) {
+                m_inputBatch = new ItemWrapper[m_inputImages.length][batchSize];
+            }
+            return m_inputBatch;
         }
 
-        @Override
         public void run() {
-            if (null != m_pluginInstance) {
-                m_pluginInstance.start(m_uniqueId, m_inputImages, m_outputNames);
+            m_queueTime.record(System.nanoTime() - m_launchNanos);
+            try {
+                runPlugin();
+            }
+            finally {
+                m_permits.release();
+            }
+        }
+
+        /**
+         * Gets the distinct traces of the inputs.
+         *
+         * @return trace identifiers or null if none traced
+         */
+        private long[] getTraceIds() {
+            long[] traceIds = new long[0];
+            if (0 < m_batchCount) {
+                for (ItemWrapper[] items : m_inputBatch) {
+                    for (int i = 0; i < m_batchCount; ++i) {
+                        traceIds = addTraceId(traceIds, items[i]);
+                    }
+                }
+            }
+            else {
+                for (ItemWrapper item : m_inputImages) {
+                    traceIds = addTraceId(traceIds, item);
+                }
+            }
+            return (0 == traceIds.length) ? null : traceIds;
+        }
+
+        private long[] addTraceId(long[] traceIds, ItemWrapper item) {
+            TraceContext trace = (null == item) ? null : item.getTrace();
+            if (null != trace) {
+                long traceId = trace.getTraceId();
+                for (long id : traceIds) {
+                    if (id == traceId) {
+                        return traceIds;
+                    }
+                }
+                traceIds = Arrays.copyOf(traceIds, traceIds.length + 1);
+                traceIds[traceIds.length - 1] = traceId;
+            }
+            return traceIds;
+        }
+
+        /**
+         * Runs the plugin on the current thread.
+         */
+        void runPlugin() {
+            boolean ordered = 0 <= m_ticket;
+            IPluginInternal pluginInstance = null;
+            try {
+                pluginInstance = getInstance();
+                if (null != pluginInstance) {
+                    if (ordered) {
+                        pluginInstance.holdOutputs(m_annotations);
+                    }
+                    Tracer tracer = m_scheduler.getTracer();
+                    long[] traceIds = (null == tracer) ? null : getTraceIds();
+                    long runStart = System.nanoTime();
+                    if (0 < m_batchCount) {
+                        pluginInstance.startBatch(m_scheduler, m_uniqueId, m_annotations,
+                                m_inputBatch, m_batchCount, m_outputQueues);
+                    }
+                    else {
+                        pluginInstance.start(m_scheduler, m_uniqueId, m_annotations, m_inputImages, m_outputQueues);
+                    }
+                    long runEnd = System.nanoTime();
+                    Histogram runTime = m_runTime;
+                    if (null != runTime) {
+                        // a fused plugin may run before its launcher starts
+                        runTime.record(runEnd - runStart);
+                    }
+                    if (null != traceIds) {
+                        tracer.addPluginSpan(m_pluginClass.getSimpleName(), traceIds, runStart, runEnd);
+                    }
+                }
+            }
+            finally {
+                if (ordered) {
+                    // pass on outputs in launch order
+                    awaitTurn(m_ticket);
+                    try {
+                        if (null != pluginInstance) {
+                            pluginInstance.releaseOutputs();
+                        }
+                    }
+                    catch (RuntimeException e) {
+                        System.out.println("Plugin exception " + e.getMessage());
+                    }
+                    finally {
+                        endTurn(m_ticket);
+                        m_ticket = -1;
+                    }
+                }
+                if (null != pluginInstance) {
+                    m_idleInstances.offer(pluginInstance);
+                    if (m_tornDown) {
+                        // too late to pool it
+                        tearDownInstances();
+                    }
+                }
+
+                // don't hold on to the images
+                Arrays.fill(m_inputImages, null);
+                if (0 < m_batchCount) {
+                    for (ItemWrapper[] items : m_inputBatch) {
+                        Arrays.fill(items, 0, m_batchCount, null);
+                    }
+                    m_batchCount = 0;
+                }
+                m_idleTasks.offer(this);
             }
         }
     }
@@ -30,56 +30,119 @@
 
 package imagej.workflow.plugin;
 
+import imagej.workflow.IOutputListener;
 import imagej.workflow.debug.DebugInfo;
 import imagej.workflow.debug.WorkflowDebugger;
+import imagej.workflow.metrics.IGauge;
+import imagej.workflow.metrics.MetricsRegistry;
+import imagej.workflow.trace.TraceContext;
+import imagej.workflow.trace.Tracer;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Schedules named image passing among plugins.
+ * <p>
+ * Each workflow has its own scheduler, with its own queues, lifecycle and
+ * debugger.  Quitting one workflow leaves the others running.
+ * <p>
+ * Wires are resolved to their queues once, when chaining.  Passing an image
+ * along a resolved queue takes no scheduler lock and builds no names.
+ * <p>
+ * The scheduler keeps the workflow's metrics.  Each queue reports its depth
+ * and the number of images put to it, as "wire.&lt;fullInName&gt;.depth" and
+ * "wire.&lt;fullInName&gt;.items".
+ * <p>
+ * With a tracer set, the scheduler records how long each traced image waits
+ * in each queue.
  *
  * @author Aivar Grislis
  */
 public class PluginScheduler {
-    private static PluginScheduler INSTANCE = null;
-    private static final Object m_synchObject = new Object();
-    private WorkflowDebugger m_debugger = null;
+    public static final int UNBOUNDED = 0;
+    public static final String WIRE = "wire.";
+    public static final String DEPTH = ".depth";
+    public static final String ITEMS = ".items";
+    private volatile WorkflowDebugger m_debugger = null;
+    private volatile Tracer m_tracer = null;
     private volatile boolean m_quit;
-    private Map<String, BlockingQueue<ItemWrapper>> m_queueMap = new HashMap<String, BlockingQueue<ItemWrapper>>();
+    private volatile boolean m_sharedFanOut = false;
+    private final ConcurrentMap<String, ItemQueue> m_queueMap = new ConcurrentHashMap<String, ItemQueue>();
+    private final MetricsRegistry m_metrics = new MetricsRegistry();
 
     /**
-     * Singleton, with private constructor.
+     * Creates a scheduler.
      */
-    private PluginScheduler() { }
+    public PluginScheduler() { }
 
     /**
-     * Gets the singleton.
+     * Sets the debugger, or null to stop debugging.
      *
-     * @return singleton instance
+     * @param debugger
      */
-    public static synchronized PluginScheduler getInstance() {
-       if (null == INSTANCE) {
-            INSTANCE = new PluginScheduler();
-       }
-       return INSTANCE;
-    }
-
     public void setDebugger(WorkflowDebugger debugger) {
         m_debugger = debugger;
     }
 
+    /**
+     * Sets the tracer, or null to stop tracing.
+     *
+     * @param tracer
+     */
+    public void setTracer(Tracer tracer) {
+        m_tracer = tracer;
+    }
+
+    /**
+     * Gets the tracer.
+     *
+     * @return tracer or null if not tracing
+     */
+    public Tracer getTracer() {
+        return m_tracer;
+    }
+
+    /**
+     * Gets the metrics for this scheduler's workflow.
+     *
+     * @return
+     */
+    public MetricsRegistry getMetrics() {
+        return m_metrics;
+    }
+
+    /**
+     * Sets how an image is passed on when one output is wired to several
+     * inputs.  The image itself is never copied.  By default each input gets
+     * its own wrapper with its own copy of the properties.  When shared, all
+     * inputs get the very same wrapper, which they must not modify.
+     *
+     * @param shared whether to share a single wrapper
+     */
+    public void setSharedFanOut(boolean shared) {
+        m_sharedFanOut = shared;
+    }
+
+    /**
+     * Gets whether a single wrapper is shared when one output is wired to
+     * several inputs.
+     *
+     * @return
+     */
+    public boolean isSharedFanOut() {
+        return m_sharedFanOut;
+    }
+
     /**
      * Tears down the chained nodes.
      */
     public void quit() {
         m_quit = true;
-        // delete the queues; they will be rebuilt on demand
-        synchronized (m_synchObject) {
-            m_queueMap.clear();
+        // wake up everyone waiting on a queue
+        for (ItemQueue queue : m_queueMap.values()) {
+            queue.close();
         }
     }
 
@@ -92,6 +155,39 @@ public class PluginScheduler {
      * @param inName destination plugin's name
      */
     public void chain(IPluginLauncher out, String outName, IPluginLauncher in, String inName) {
+        chain(out, outName, in, inName, UNBOUNDED);
+    }
+
+    /**
+     * Chains the named image from one plugin to another, through a queue of
+     * limited size.  When the queue is full the source plugin blocks on put
+     * until the destination plugin takes an image.
+     *
+     * @param out source plugin
+     * @param outName source plugin's name
+     * @param in destination plugin
+     * @param inName destination plugin's name
+     * @param capacity maximum number of waiting images or UNBOUNDED
+     */
+    public void chain(IPluginLauncher out, String outName, IPluginLauncher in, String inName, int capacity) {
+        chain(out, outName, in, inName, capacity, 1, 0);
+    }
+
+    /**
+     * Chains the named image from one plugin to another, through a queue of
+     * limited size, from which the destination plugin takes batches of
+     * images.
+     *
+     * @param out source plugin
+     * @param outName source plugin's name
+     * @param in destination plugin
+     * @param inName destination plugin's name
+     * @param capacity maximum number of waiting images or UNBOUNDED
+     * @param batchSize maximum number of images taken at once, 1 for none
+     * @param lingerMicros how long to wait for a batch to fill up
+     */
+    public void chain(IPluginLauncher out, String outName, IPluginLauncher in, String inName,
+            int capacity, int batchSize, int lingerMicros) {
         // patch for test components that don't actually have a launcher
         if (null == in) {
             return;
@@ -100,48 +196,201 @@ public class PluginScheduler {
         // build a fully-qualified destination name
         String fullInName = in.uniqueName(inName);
 
-        // make sure there is a queue for this name
-        getQueue(fullInName);
+        // make sure there is a queue of the proper size for this name
+        ItemQueue queue = getQueue(fullInName);
+        queue.setCapacity(capacity);
+        queue.setBatch(batchSize, TimeUnit.MICROSECONDS.toNanos(lingerMicros));
 
         // within the source plugin instance, save the association of its output
-        // name with fully-qualified input name
-        out.associate(outName, fullInName);
+        // name with the destination queue
+        out.associate(outName, queue);
+    }
+
+    /**
+     * Fuses the named image from one plugin to another.  The destination
+     * plugin then runs on the source plugin's thread, whenever the source
+     * plugin puts an image.
+     *
+     * @param out source plugin
+     * @param outName source plugin's name
+     * @param in destination plugin
+     * @param inName destination plugin's name
+     * @return whether fused, otherwise use chain
+     */
+    public boolean fuse(IPluginLauncher out, String outName, IPluginLauncher in, String inName) {
+        if (null == out || null == in) {
+            return false;
+        }
+        IOutputTarget target = in.fuse(inName, out);
+        if (null == target) {
+            return false;
+        }
+        out.associate(outName, target);
+        return true;
+    }
+
+    /**
+     * Passes the named image from a plugin to a listener.
+     *
+     * @param out source plugin
+     * @param outName source plugin's name
+     * @param listener
+     */
+    public void listen(IPluginLauncher out, String outName, IOutputListener listener) {
+        out.associate(outName, new ListenerTarget(outName, listener));
+    }
+
+    /**
+     * Resolves a fully-qualified input name to its queue.  The queue is the
+     * handle used to put and get images.
+     *
+     * @param fullInName
+     * @return the queue
+     */
+    public ItemQueue resolve(String fullInName) {
+        return getQueue(fullInName);
     }
 
     /**
      * Passes image to fully-qualified name.
      *
      * @param instanceId
+     * @param outName
      * @param fullInName
-     * @param image
+     * @param item
      */
     public void put(String instanceId, String outName, String fullInName, ItemWrapper item) {
+        put(instanceId, outName, getQueue(fullInName), item);
+    }
+
+    /**
+     * Passes image to a resolved queue.
+     *
+     * @param instanceId
+     * @param outName
+     * @param queue
+     * @param item
+     */
+    public void put(String instanceId, String outName, IOutputTarget queue, ItemWrapper item) {
+        WorkflowDebugger debugger = m_debugger;
+        put(instanceId, outName, queue, item,
+                null != debugger && debugger.sample(instanceId, outName));
+    }
+
+    /**
+     * Passes image to a resolved queue, showing debugging information if this
+     * image was sampled.
+     *
+     * @param instanceId
+     * @param outName
+     * @param queue
+     * @param item
+     * @param sampled
+     */
+    private void put(String instanceId, String outName, IOutputTarget queue, ItemWrapper item, boolean sampled) {
         // show debugging information
-        if (null != m_debugger) {
-            String inName = fullInName;
-            int index = fullInName.indexOf('.');
-            if (index > 0) {
-                inName = fullInName.substring(++index);
+        WorkflowDebugger debugger = m_debugger;
+        if (sampled && null != debugger) {
+            DebugInfo debugInfo = new DebugInfo(instanceId, outName + " to " + queue.getInName(), item);
+            debugger.addDebugInfo(debugInfo);
+        }
+        if (null != item.getTrace()) {
+            item.m_enqueueNanos = System.nanoTime();
+        }
+
+        try {
+            // blocks while a bounded queue is full
+            queue.put(item);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Put interrupted");
+        }
+    }
+
+    /**
+     * Passes image to all the queues wired to one output.
+     *
+     * @param instanceId
+     * @param outName
+     * @param queues
+     * @param item
+     */
+    public void put(String instanceId, String outName, IOutputTarget[] queues, ItemWrapper item) {
+        if (1 == queues.length) {
+            put(instanceId, outName, queues[0], item);
+        }
+        else {
+            // make all the wrappers before any input can modify one
+            ItemWrapper[] items = new ItemWrapper[queues.length];
+            for (int i = 0; i < queues.length; ++i) {
+                items[i] = (0 == i || m_sharedFanOut) ? item : new ItemWrapper(item);
+            }
+            // sample the image once, for all its wires
+            WorkflowDebugger debugger = m_debugger;
+            boolean sampled = null != debugger && debugger.sample(instanceId, outName);
+            for (int i = 0; i < queues.length; ++i) {
+                put(instanceId, outName, queues[i], items[i], sampled);
             }
-            DebugInfo debugInfo = new DebugInfo(instanceId, outName + " to " + inName, item);
-            m_debugger.addDebugInfo(debugInfo);
         }
+    }
 
-        boolean success = false;
-        BlockingQueue<ItemWrapper> queue = getQueue(fullInName);
-        //TODO currently using an unlimited LinkedBlockingQueue, so will never block
-        while (!success) {
-            try {
-                success = queue.offer(item, 100, TimeUnit.MILLISECONDS);
+    /**
+     * Passes a batch of images to all the queues wired to one output.  Each
+     * queue gets the whole batch at once.
+     *
+     * @param instanceId
+     * @param outName
+     * @param queues
+     * @param items
+     * @param count number of images from the start of the array
+     */
+    public void put(String instanceId, String outName, IOutputTarget[] queues, ItemWrapper[] items, int count) {
+        // show debugging information, for a sample of images
+        WorkflowDebugger debugger = m_debugger;
+        if (null != debugger) {
+            for (int i = 0; i < count; ++i) {
+                if (debugger.sample(instanceId, outName)) {
+                    for (IOutputTarget queue : queues) {
+                        DebugInfo debugInfo = new DebugInfo(instanceId, outName + " to " + queue.getInName(), items[i]);
+                        debugger.addDebugInfo(debugInfo);
+                    }
+                }
             }
-            catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException("Put interrupted");
+        }
+
+        // make all the wrappers before any input can modify one
+        ItemWrapper[][] batches = new ItemWrapper[queues.length][];
+        for (int i = 0; i < queues.length; ++i) {
+            if (0 == i || m_sharedFanOut) {
+                batches[i] = items;
             }
-            if (m_quit) {
-                throw new TeardownException("Teardown");
+            else {
+                batches[i] = new ItemWrapper[count];
+                for (int j = 0; j < count; ++j) {
+                    batches[i][j] = new ItemWrapper(items[j]);
+                }
             }
         }
+
+        if (null != m_tracer) {
+            long now = System.nanoTime();
+            for (ItemWrapper[] batch : batches) {
+                for (int i = 0; i < count; ++i) {
+                    batch[i].m_enqueueNanos = now;
+                }
+            }
+        }
+
+        try {
+            for (int i = 0; i < queues.length; ++i) {
+                queues[i].putAll(batches[i], count);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Put interrupted");
+        }
     }
 
     /**
@@ -151,30 +400,58 @@ public class PluginScheduler {
      * @return image
      */
     public ItemWrapper get(String fullInName) {
-        ItemWrapper image = null;
-        BlockingQueue<ItemWrapper> queue = getQueue(fullInName);
-        while (null == image) {
-            try {
-                image = queue.poll(100, TimeUnit.MILLISECONDS);
-            }
-            catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException("Get interrupted");
-            }
-            if (m_quit) {
-                throw new TeardownException("Teardown");
+        return get(getQueue(fullInName));
+    }
+
+    /**
+     * Gets image from a resolved queue.
+     *
+     * @param queue
+     * @return image
+     */
+    public ItemWrapper get(ItemQueue queue) {
+        try {
+            ItemWrapper item = queue.take();
+            Tracer tracer = m_tracer;
+            if (null != tracer) {
+                traceWait(tracer, queue, item, System.nanoTime());
             }
+            return item;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Get interrupted");
         }
-        return image;
     }
 
     /**
-     * This is just for debugging.
+     * Gets a batch of images from a resolved queue.  Waits as long as
+     * necessary for the minimum number, then up to the linger time for the
+     * maximum number.
      *
-     * @param name
+     * @param queue
+     * @param items receives the images
+     * @param min
+     * @param max
+     * @param lingerNanos
+     * @return number of images
      */
-    public synchronized void reportNewPlugin(String name) {
-        System.out.println("Running " + name);
+    public int get(ItemQueue queue, ItemWrapper[] items, int min, int max, long lingerNanos) {
+        try {
+            int count = queue.takeAll(items, min, max, lingerNanos);
+            Tracer tracer = m_tracer;
+            if (null != tracer) {
+                long now = System.nanoTime();
+                for (int i = 0; i < count; ++i) {
+                    traceWait(tracer, queue, items[i], now);
+                }
+            }
+            return count;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Get interrupted");
+        }
     }
 
     /**
@@ -184,15 +461,53 @@ public class PluginScheduler {
      * @param fullInName
      * @return the queue
      */
-    private BlockingQueue<ItemWrapper> getQueue(String fullInName) {
-        BlockingQueue<ItemWrapper> queue = null;
-        synchronized (m_synchObject) {
-            queue = m_queueMap.get(fullInName);
+    private ItemQueue getQueue(String fullInName) {
+        ItemQueue queue = m_queueMap.get(fullInName);
+        if (null == queue) {
+            ItemQueue newQueue = new ItemQueue(fullInName, UNBOUNDED);
+            queue = m_queueMap.putIfAbsent(fullInName, newQueue);
             if (null == queue) {
-                queue = new LinkedBlockingQueue<ItemWrapper>();
-                m_queueMap.put(fullInName, queue);
+                queue = newQueue;
+                addGauges(newQueue);
+            }
+            if (m_quit) {
+                // too late, fail right away
+                queue.close();
             }
         }
         return queue;
     }
+
+    /**
+     * Records how long a traced image waited in a queue.
+     *
+     * @param tracer
+     * @param queue
+     * @param item
+     * @param now when taken
+     */
+    private void traceWait(Tracer tracer, ItemQueue queue, ItemWrapper item, long now) {
+        TraceContext trace = item.getTrace();
+        if (null != trace && 0 != item.m_enqueueNanos) {
+            tracer.addQueueSpan(queue.getLabel(), trace.getTraceId(), item.m_enqueueNanos, now);
+        }
+    }
+
+    /**
+     * Reports the depth of a new queue and the number of images put to it.
+     *
+     * @param queue
+     */
+    private void addGauges(final ItemQueue queue) {
+        m_metrics.setGauge(WIRE + queue.getFullInName() + DEPTH, new IGauge() {
+            public long getValue() {
+                return queue.size();
+            }
+        });
+        m_metrics.setGauge(WIRE + queue.getFullInName() + ITEMS, new IGauge() {
+            public long getValue() {
+                return queue.getPutCount();
+            }
+        });
+    }
 }
@@ -0,0 +1,62 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.plugin;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A task for a prioritized executor.  Tasks of higher priority run first;
+ * tasks of equal priority run in the order they were prioritized.
+ *
+ * @author Aivar Grislis
+ */
+abstract class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+    private static final AtomicLong s_sequence = new AtomicLong();
+    private int m_priority;
+    private long m_sequence;
+
+    /**
+     * Sets the priority, just before the task is handed to the executor.
+     *
+     * @param priority
+     */
+    void prioritize(int priority) {
+        m_priority = priority;
+        m_sequence = s_sequence.getAndIncrement();
+    }
+
+    public int compareTo(PrioritizedTask other) {
+        if (m_priority != other.m_priority) {
+            return (m_priority > other.m_priority) ? -1 : 1;
+        }
+        return (m_sequence < other.m_sequence) ? -1 : ((m_sequence == other.m_sequence) ? 0 : 1);
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.trace;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records where traced images spend their time:  waiting in queues and
+ * running in plugins.  The spans can be written as Chrome trace-event JSON,
+ * to be opened in a trace viewer such as chrome://tracing or Perfetto.
+ * <p>
+ * Plugin runs are shown on the thread that ran them, tagged with the traces
+ * of their inputs.  Queue waits are shown as asynchronous spans, grouped by
+ * trace.
+ * <p>
+ * Recording never blocks.  Once the tracer holds its maximum number of spans,
+ * further spans are counted and dropped.
+ *
+ * @author Aivar Grislis
+ */
+public class Tracer {
+    public static final int DEFAULT_CAPACITY = 100000;
+    public static final String PLUGIN = "plugin";
+    public static final String QUEUE = "queue";
+    private static final int PID = 1;
+    private final int m_capacity;
+    private final long m_originNanos = System.nanoTime();
+    private final Queue<Span> m_spans = new ConcurrentLinkedQueue<Span>();
+    private final AtomicInteger m_spanCount = new AtomicInteger();
+    private final AtomicLong m_droppedCount = new AtomicLong();
+    private final AtomicLong m_traceCount = new AtomicLong();
+    private final AtomicLong m_inputCount = new AtomicLong();
+    private final Map<Long, String> m_threadNames = new ConcurrentHashMap<Long, String>();
+    private volatile int m_everyNth = 1;
+
+    /**
+     * Creates a tracer.
+     */
+    public Tracer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a tracer that keeps a limited number of spans.
+     *
+     * @param capacity
+     */
+    public Tracer(int capacity) {
+        m_capacity = capacity;
+    }
+
+    /**
+     * Traces only every Nth input image.
+     *
+     * @param everyNth 1 to trace all
+     */
+    public void setSampling(int everyNth) {
+        m_everyNth = Math.max(1, everyNth);
+    }
+
+    /**
+     * Starts a trace for an input image, if sampled.
+     *
+     * @return context or null if not traced
+     */
+    public TraceContext startTrace() {
+        int everyNth = m_everyNth;
+        if (1 != everyNth && 0 != m_inputCount.getAndIncrement() % everyNth) {
+            return null;
+        }
+        return new TraceContext(m_traceCount.incrementAndGet());
+    }
+
+    /**
+     * Records a plugin run on the current thread.
+     *
+     * @param name plugin name
+     * @param traceIds traces of the inputs
+     * @param startNanos
+     * @param endNanos
+     */
+    public void addPluginSpan(String name, long[] traceIds, long startNanos, long endNanos) {
+        Thread thread = Thread.currentThread();
+        long threadId = thread.getId();
+        if (!m_threadNames.containsKey(threadId)) {
+            m_threadNames.put(threadId, thread.getName());
+        }
+        add(new Span(name, PLUGIN, threadId, traceIds, startNanos, endNanos));
+    }
+
+    /**
+     * Records the time a traced image waited in a queue.
+     *
+     * @param name queue name
+     * @param traceId
+     * @param startNanos when put
+     * @param endNanos when taken
+     */
+    public void addQueueSpan(String name, long traceId, long startNanos, long endNanos) {
+        add(new Span(name, QUEUE, 0, new long[] { traceId }, startNanos, endNanos));
+    }
+
+    /**
+     * Gets the number of spans recorded.
+     *
+     * @return
+     */
+    public int getSpanCount() {
+        return m_spanCount.get();
+    }
+
+    /**
+     * Gets the number of spans dropped because the tracer was full.
+     *
+     * @return
+     */
+    public long getDroppedCount() {
+        return m_droppedCount.get();
+    }
+
+    /**
+     * Discards all spans.
+     */
+    public void clear() {
+        while (null != m_spans.poll()) {
+            m_spanCount.decrementAndGet();
+        }
+        m_droppedCount.set(0);
+    }
+
+    /**
+     * Writes the spans recorded so far as Chrome trace-event JSON.
+     *
+     * @param writer
+     * @throws IOException
+     */
+    public void writeChromeTrace(Writer writer) throws IOException {
+        writer.write("{\"traceEvents\":[");
+        boolean first = true;
+        for (Map.Entry<Long, String> entry : m_threadNames.entrySet()) {
+            first = separate(writer, first);
+            writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":" + PID
+                    + ",\"tid\":" + entry.getKey()
+                    + ",\"args\":{\"name\":" + quote(entry.getValue()) + "}}");
+        }
+        for (Span span : m_spans) {
+            first = separate(writer, first);
+            if (PLUGIN.equals(span.m_category)) {
+                writer.write("{\"name\":" + quote(span.m_name)
+                        + ",\"cat\":\"" + PLUGIN + "\",\"ph\":\"X\""
+                        + ",\"ts\":" + micros(span.m_startNanos - m_originNanos)
+                        + ",\"dur\":" + micros(span.m_endNanos - span.m_startNanos)
+                        + ",\"pid\":" + PID + ",\"tid\":" + span.m_threadId
+                        + ",\"args\":{\"traces\":" + traceList(span.m_traceIds) + "}}");
+            }
+            else {
+                // asynchronous begin and end, grouped by trace
+                String common = "{\"name\":" + quote(span.m_name)
+                        + ",\"cat\":\"" + QUEUE + "\",\"id\":" + span.m_traceIds[0]
+                        + ",\"pid\":" + PID + ",\"tid\":0";
+                writer.write(common + ",\"ph\":\"b\",\"ts\":" + micros(span.m_startNanos - m_originNanos)
+                        + ",\"args\":{\"trace\":" + span.m_traceIds[0] + "}},");
+                writer.write(common + ",\"ph\":\"e\",\"ts\":" + micros(span.m_endNanos - m_originNanos) + "}");
+            }
+        }
+        writer.write("],\"displayTimeUnit\":\"ms\"}");
+        writer.flush();
+    }
+
+    /**
+     * Adds a span, unless full.
+     *
+     * @param span
+     */
+    private void add(Span span) {
+        if (m_spanCount.incrementAndGet() > m_capacity) {
+            m_spanCount.decrementAndGet();
+            m_droppedCount.incrementAndGet();
+        }
+        else {
+            m_spans.add(span);
+        }
+    }
+
+    /**
+     * Writes a separator between events.
+     *
+     * @param writer
+     * @param first
+     * @return false
+     * @throws IOException
+     */
+    private boolean separate(Writer writer, boolean first) throws IOException {
+        if (!first) {
+            writer.write(",\n");
+        }
+        return false;
+    }
+
+    /**
+     * Formats a time or duration in microseconds, without exponent.
+     *
+     * @param nanos
+     * @return
+     */
+    private static String micros(long nanos) {
+        long elapsed = Math.max(0, nanos);
+        long fraction = elapsed % 1000;
+        return (elapsed / 1000) + "." + (fraction < 10 ? "00" : (fraction < 100 ? "0" : "")) + fraction;
+    }
+
+    /**
+     * Formats trace identifiers as a JSON array.
+     *
+     * @param traceIds
+     * @return
+     */
+    private static String traceList(long[] traceIds) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < traceIds.length; ++i) {
+            if (0 < i) {
+                builder.append(',');
+            }
+            builder.append(traceIds[i]);
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * Quotes a string for JSON.
+     *
+     * @param string
+     * @return
+     */
+    private static String quote(String string) {
+        StringBuilder builder = new StringBuilder("\"");
+        for (int i = 0; i < string.length(); ++i) {
+            char c = string.charAt(i);
+            if ('"' == c || '\\' == c) {
+                builder.append('\\').append(c);
+            }
+            else if (c < ' ') {
+                builder.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    /**
+     * One recorded span.
+     */
+    private static class Span {
+        final String m_name;
+        final String m_category;
+        final long m_threadId;
+        final long[] m_traceIds;
+        final long m_startNanos;
+        final long m_endNanos;
+
+        Span(String name, String category, long threadId, long[] traceIds, long startNanos, long endNanos) {
+            m_name = name;
+            m_category = category;
+            m_threadId = threadId;
+            m_traceIds = traceIds;
+            m_startNanos = startNanos;
+            m_endNanos = endNanos;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.util.binary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the compact binary workflow format written by BinaryWriter.
+ *
+ * Reads from any ByteBuffer, including one mapped from a file with map().
+ * The reader works on its own view of the buffer, so the same buffer may be
+ * read by several readers at once.
+ *
+ * @author Aivar Grislis
+ */
+public class BinaryReader {
+    private final ByteBuffer m_buffer;
+    private int m_version = BinaryWriter.VERSION;
+
+    /**
+     * Constructs a reader for the given buffer, starting at its current
+     * position.
+     *
+     * @param buffer
+     */
+    public BinaryReader(ByteBuffer buffer) {
+        m_buffer = buffer.duplicate();
+    }
+
+    /**
+     * Maps a file into memory for reading.
+     *
+     * @param file
+     * @return read-only buffer
+     * @throws IOException
+     */
+    public static ByteBuffer map(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Reads and checks the magic number and format version.  Any version
+     * from BinaryWriter.FIRST_VERSION up to the current one is accepted.
+     *
+     * @return format version
+     * @throws BinaryException
+     */
+    public int readHeader() throws BinaryException {
+        if (BinaryWriter.MAGIC != readInt()) {
+            throw new BinaryException("Not a binary workflow");
+        }
+        int version = readInt();
+        if (version < BinaryWriter.FIRST_VERSION || version > BinaryWriter.VERSION) {
+            throw new BinaryException("Unsupported binary workflow version " + version);
+        }
+        m_version = version;
+        return version;
+    }
+
+    /**
+     * Gets the format version of the records being read.  This is the
+     * current version unless a header said otherwise.
+     *
+     * @return format version
+     */
+    public int getVersion() {
+        return m_version;
+    }
+
+    /**
+     * Reads an integer.
+     *
+     * @return
+     * @throws BinaryException
+     */
+    public int readInt() throws BinaryException {
+        try {
+            return m_buffer.getInt();
+        }
+        catch (BufferUnderflowException e) {
+            throw new BinaryException("Truncated binary workflow");
+        }
+    }
+
+    /**
+     * Reads a string.
+     *
+     * @return string or null
+     * @throws BinaryException
+     */
+    public String readString() throws BinaryException {
+        int length = readInt();
+        if (-1 == length) {
+            return null;
+        }
+        if (length < 0 || length > m_buffer.remaining()) {
+            throw new BinaryException("Truncated binary workflow");
+        }
+        String value;
+        if (m_buffer.hasArray()) {
+            value = new String(m_buffer.array(), m_buffer.arrayOffset() + m_buffer.position(), length, BinaryWriter.UTF8);
+            m_buffer.position(m_buffer.position() + length);
+        }
+        else {
+            byte[] bytes = new byte[length];
+            m_buffer.get(bytes);
+            value = new String(bytes, BinaryWriter.UTF8);
+        }
+        return value;
+    }
+
+    /**
+     * Reads the tag and length that start a record.  The record body follows.
+     *
+     * @return record
+     * @throws BinaryException
+     */
+    public Record readRecord() throws BinaryException {
+        String tag = readString();
+        int length = readInt();
+        if (length < 0 || length > m_buffer.remaining()) {
+            throw new BinaryException("Truncated <" + tag + "> record");
+        }
+        return new Record(tag, m_buffer.position() + length);
+    }
+
+    /**
+     * Moves past the end of a record, skipping anything left unread.
+     *
+     * @param record
+     */
+    public void skipRecord(Record record) {
+        m_buffer.position(record.getEnd());
+    }
+
+    /**
+     * Tag and extent of a record.
+     */
+    public static class Record {
+        private final String m_tag;
+        private final int m_end;
+
+        Record(String tag, int end) {
+            m_tag = tag;
+            m_end = end;
+        }
+
+        public String getTag() {
+            return m_tag;
+        }
+
+        int getEnd() {
+            return m_end;
+        }
+    }
+}
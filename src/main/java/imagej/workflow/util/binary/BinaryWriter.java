@@ -0,0 +1,157 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.util.binary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Writes the compact binary workflow format.
+ *
+ * The format is a header followed by records.  The header is a magic number
+ * and a format version.  A record is a tag string, such as "workflow" or
+ * "plugin", then the length of the record body, then the body.  The length
+ * lets a reader skip over a record it doesn't need to look inside.
+ *
+ * Readers accept all versions from FIRST_VERSION on.  A record written by an
+ * older version lacks the fields added since, which take their defaults.
+ *
+ * Integers are big-endian.  Strings are an integer byte count, or -1 for
+ * null, followed by UTF-8 bytes.
+ *
+ * @author Aivar Grislis
+ */
+public class BinaryWriter {
+    public static final int MAGIC = 0x494A5746; // "IJWF"
+    public static final int VERSION = 2;       // 2 added wire batch and linger
+    public static final int FIRST_VERSION = 1;
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int INITIAL_CAPACITY = 256;
+    private ByteBuffer m_buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+    /**
+     * Writes the magic number and format version.
+     */
+    public void writeHeader() {
+        writeInt(MAGIC);
+        writeInt(VERSION);
+    }
+
+    /**
+     * Writes an integer.
+     *
+     * @param value
+     */
+    public void writeInt(int value) {
+        ensureCapacity(4);
+        m_buffer.putInt(value);
+    }
+
+    /**
+     * Writes a string, which may be null.
+     *
+     * @param value
+     */
+    public void writeString(String value) {
+        if (null == value) {
+            writeInt(-1);
+        }
+        else {
+            byte[] bytes = value.getBytes(UTF8);
+            writeInt(bytes.length);
+            ensureCapacity(bytes.length);
+            m_buffer.put(bytes);
+        }
+    }
+
+    /**
+     * Starts a record with the given tag.
+     *
+     * @param tag
+     * @return record handle to pass to endRecord()
+     */
+    public int startRecord(String tag) {
+        writeString(tag);
+        int lengthIndex = m_buffer.position();
+        writeInt(0);
+        return lengthIndex;
+    }
+
+    /**
+     * Ends a record, filling in its length.
+     *
+     * @param record handle from startRecord()
+     */
+    public void endRecord(int record) {
+        m_buffer.putInt(record, m_buffer.position() - record - 4);
+    }
+
+    /**
+     * Gets what has been written so far.
+     *
+     * @return read-only buffer
+     */
+    public ByteBuffer toByteBuffer() {
+        ByteBuffer buffer = m_buffer.duplicate();
+        buffer.flip();
+        return buffer.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes what has been written so far to a channel, i.e. a file.
+     *
+     * @param channel
+     * @throws IOException
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = toByteBuffer();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Grows the buffer if need be.
+     *
+     * @param count number of bytes about to be written
+     */
+    private void ensureCapacity(int count) {
+        if (m_buffer.remaining() < count) {
+            int capacity = Math.max(2 * m_buffer.capacity(), m_buffer.position() + count);
+            ByteBuffer buffer = ByteBuffer.allocate(capacity);
+            m_buffer.flip();
+            buffer.put(m_buffer);
+            m_buffer = buffer;
+        }
+    }
+}
@@ -69,6 +69,57 @@ public abstract interface IPropertyCollection
      */
     public abstract void setAll(Map<String, Object> map);
 
+    /**
+     * Gets an int value.  Other numeric values are converted.
+     *
+     * @param string
+     * @param defaultValue returned if there is no numeric value
+     * @return value
+     */
+    public abstract int getInt(String string, int defaultValue);
+
+    /**
+     * Gets a long value.  Other numeric values are converted.
+     *
+     * @param string
+     * @param defaultValue returned if there is no numeric value
+     * @return value
+     */
+    public abstract long getLong(String string, long defaultValue);
+
+    /**
+     * Gets a double value.  Other numeric values are converted.
+     *
+     * @param string
+     * @param defaultValue returned if there is no numeric value
+     * @return value
+     */
+    public abstract double getDouble(String string, double defaultValue);
+
+    /**
+     * Sets an int value without boxing it.
+     *
+     * @param string
+     * @param value
+     */
+    public abstract void setInt(String string, int value);
+
+    /**
+     * Sets a long value without boxing it.
+     *
+     * @param string
+     * @param value
+     */
+    public abstract void setLong(String string, long value);
+
+    /**
+     * Sets a double value without boxing it.
+     *
+     * @param string
+     * @param value
+     */
+    public abstract void setDouble(String string, double value);
+
     /**
      * Clears the map.
      */
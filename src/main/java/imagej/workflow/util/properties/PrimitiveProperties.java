@@ -0,0 +1,273 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.util.properties;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing table of int, long and double properties.  Values are kept
+ * as raw long bits alongside a type tag, so nothing gets boxed.  Keys are
+ * interned when first added so that lookups with constant keys usually match
+ * by identity.
+ *
+ * @author Aivar Grislis
+ */
+class PrimitiveProperties
+{
+    static final byte INT = 1;
+    static final byte LONG = 2;
+    static final byte DOUBLE = 3;
+    private static final int INITIAL_CAPACITY = 8;
+
+    private String[] m_keys;
+    private long[] m_bits;
+    private byte[] m_types;
+    private int m_size;
+
+    /**
+     * Creates an empty table.
+     */
+    PrimitiveProperties() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates a copy of another table.
+     *
+     * @param other
+     */
+    PrimitiveProperties(PrimitiveProperties other) {
+        m_keys = other.m_keys.clone();
+        m_bits = other.m_bits.clone();
+        m_types = other.m_types.clone();
+        m_size = other.m_size;
+    }
+
+    /**
+     * Gets the number of properties.
+     *
+     * @return
+     */
+    int size() {
+        return m_size;
+    }
+
+    /**
+     * Gets the number of slots, for iterating with getKey.
+     *
+     * @return
+     */
+    int capacity() {
+        return m_keys.length;
+    }
+
+    /**
+     * Finds the slot of a key.
+     *
+     * @param key
+     * @return slot or -1 if not present
+     */
+    int find(String key) {
+        int mask = m_keys.length - 1;
+        int i = hash(key) & mask;
+        String k;
+        while (null != (k = m_keys[i])) {
+            if (k == key || k.equals(key)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the key in a slot.
+     *
+     * @param slot
+     * @return key or null if slot is empty
+     */
+    String getKey(int slot) {
+        return m_keys[slot];
+    }
+
+    /**
+     * Gets the value in a slot as an int.
+     *
+     * @param slot
+     * @return
+     */
+    int getInt(int slot) {
+        return (DOUBLE == m_types[slot])
+                ? (int) Double.longBitsToDouble(m_bits[slot])
+                : (int) m_bits[slot];
+    }
+
+    /**
+     * Gets the value in a slot as a long.
+     *
+     * @param slot
+     * @return
+     */
+    long getLong(int slot) {
+        return (DOUBLE == m_types[slot])
+                ? (long) Double.longBitsToDouble(m_bits[slot])
+                : m_bits[slot];
+    }
+
+    /**
+     * Gets the value in a slot as a double.
+     *
+     * @param slot
+     * @return
+     */
+    double getDouble(int slot) {
+        return (DOUBLE == m_types[slot])
+                ? Double.longBitsToDouble(m_bits[slot])
+                : (double) m_bits[slot];
+    }
+
+    /**
+     * Gets the value in a slot boxed as its original type.
+     *
+     * @param slot
+     * @return
+     */
+    Object getObject(int slot) {
+        switch (m_types[slot]) {
+            case INT:
+                return Integer.valueOf((int) m_bits[slot]);
+            case LONG:
+                return Long.valueOf(m_bits[slot]);
+            default:
+                return Double.valueOf(Double.longBitsToDouble(m_bits[slot]));
+        }
+    }
+
+    /**
+     * Sets a value.
+     *
+     * @param key
+     * @param type INT, LONG or DOUBLE
+     * @param bits value, doubles as raw long bits
+     */
+    void put(String key, byte type, long bits) {
+        int slot = find(key);
+        if (slot < 0) {
+            if (2 * (m_size + 1) > m_keys.length) {
+                resize(2 * m_keys.length);
+            }
+            key = key.intern();
+            int mask = m_keys.length - 1;
+            slot = hash(key) & mask;
+            while (null != m_keys[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            m_keys[slot] = key;
+            ++m_size;
+        }
+        m_types[slot] = type;
+        m_bits[slot] = bits;
+    }
+
+    /**
+     * Removes a value.
+     *
+     * @param key
+     * @return whether the key was present
+     */
+    boolean remove(String key) {
+        int hole = find(key);
+        if (hole < 0) {
+            return false;
+        }
+        // shift back any later entries of the same probe run
+        int mask = m_keys.length - 1;
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            String k = m_keys[i];
+            if (null == k) {
+                break;
+            }
+            int home = hash(k) & mask;
+            boolean stays = (hole <= i)
+                    ? (hole < home && home <= i)
+                    : (hole < home || home <= i);
+            if (!stays) {
+                m_keys[hole] = k;
+                m_bits[hole] = m_bits[i];
+                m_types[hole] = m_types[i];
+                hole = i;
+            }
+        }
+        m_keys[hole] = null;
+        --m_size;
+        return true;
+    }
+
+    /**
+     * Removes all values.
+     */
+    void clear() {
+        Arrays.fill(m_keys, null);
+        m_size = 0;
+    }
+
+    private void resize(int capacity) {
+        String[] keys = m_keys;
+        long[] bits = m_bits;
+        byte[] types = m_types;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < keys.length; ++i) {
+            if (null != keys[i]) {
+                int slot = hash(keys[i]) & mask;
+                while (null != m_keys[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                m_keys[slot] = keys[i];
+                m_bits[slot] = bits[i];
+                m_types[slot] = types[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        m_keys = new String[capacity];
+        m_bits = new long[capacity];
+        m_types = new byte[capacity];
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
@@ -36,19 +36,70 @@ import java.util.Map;
 /**
  * Concrete class for the property collection.
  *
+ * Nothing is allocated until the first property is set, and a copy shares
+ * the storage of the original until either one is changed.  Most items never
+ * have any properties, so this costs nothing for them.
+ *
+ * Values set through the typed setters are kept unboxed in a separate table.
+ * A key lives in only one of the two stores.
+ *
  * @author Aivar Grislis
  */
 public class PropertyCollection implements IPropertyCollection
 {
-    Map<String, Object> m_properties = new HashMap();
+    Map<String, Object> m_properties;
+    PrimitiveProperties m_primitives;
+    boolean m_shared;
+
+    /**
+     * Creates an empty collection.
+     */
+    public PropertyCollection() {
+    }
 
     /**
-     * Gets the entire string/object map.
+     * Creates a copy of another collection.  The storage is shared, copy on
+     * write.
+     *
+     * @param other
+     */
+    public PropertyCollection(PropertyCollection other) {
+        if (null != other.m_properties || null != other.m_primitives) {
+            other.m_shared = true;
+            m_properties = other.m_properties;
+            m_primitives = other.m_primitives;
+            m_shared = true;
+        }
+    }
+
+    /**
+     * Whether there are no properties.
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return (null == m_properties || m_properties.isEmpty())
+                && (null == m_primitives || 0 == m_primitives.size());
+    }
+
+    /**
+     * Gets the entire string/object map.  Any typed values are boxed and
+     * moved into the map, since the caller may change it.
      *
      * @return map
      */
     public Map<String, Object> getAll() {
-        return m_properties;
+        Map<String, Object> map = getOwnMap();
+        if (null != m_primitives && 0 < m_primitives.size()) {
+            for (int i = 0; i < m_primitives.capacity(); ++i) {
+                String key = m_primitives.getKey(i);
+                if (null != key) {
+                    map.put(key, m_primitives.getObject(i));
+                }
+            }
+            m_primitives.clear();
+        }
+        return map;
     }
 
     /**
@@ -58,7 +109,13 @@ public class PropertyCollection implements IPropertyCollection
      * @return value object
      */
     public Object get(String key) {
-        return m_properties.get(key);
+        if (null != m_primitives) {
+            int slot = m_primitives.find(key);
+            if (0 <= slot) {
+                return m_primitives.getObject(slot);
+            }
+        }
+        return (null == m_properties) ? null : m_properties.get(key);
     }
 
     /**
@@ -67,7 +124,13 @@ public class PropertyCollection implements IPropertyCollection
      * @param properties
      */
     public void setAll(Map<String, Object> properties) {
-        m_properties.putAll(properties);
+        Map<String, Object> map = getOwnMap();
+        if (null != m_primitives) {
+            for (String key : properties.keySet()) {
+                m_primitives.remove(key);
+            }
+        }
+        map.putAll(properties);
     }
 
     /**
@@ -77,18 +140,176 @@ public class PropertyCollection implements IPropertyCollection
      * @param value object
      */
     public void set(String key, Object value) {
-        m_properties.put(key, value);
+        Map<String, Object> map = getOwnMap();
+        if (null != m_primitives) {
+            m_primitives.remove(key);
+        }
+        map.put(key, value);
+    }
+
+    /**
+     * Gets an int value.
+     *
+     * @param key string
+     * @param defaultValue returned if there is no numeric value
+     * @return value
+     */
+    public int getInt(String key, int defaultValue) {
+        if (null != m_primitives) {
+            int slot = m_primitives.find(key);
+            if (0 <= slot) {
+                return m_primitives.getInt(slot);
+            }
+        }
+        Number number = getNumber(key);
+        return (null == number) ? defaultValue : number.intValue();
+    }
+
+    /**
+     * Gets a long value.
+     *
+     * @param key string
+     * @param defaultValue returned if there is no numeric value
+     * @return value
+     */
+    public long getLong(String key, long defaultValue) {
+        if (null != m_primitives) {
+            int slot = m_primitives.find(key);
+            if (0 <= slot) {
+                return m_primitives.getLong(slot);
+            }
+        }
+        Number number = getNumber(key);
+        return (null == number) ? defaultValue : number.longValue();
+    }
+
+    /**
+     * Gets a double value.
+     *
+     * @param key string
+     * @param defaultValue returned if there is no numeric value
+     * @return value
+     */
+    public double getDouble(String key, double defaultValue) {
+        if (null != m_primitives) {
+            int slot = m_primitives.find(key);
+            if (0 <= slot) {
+                return m_primitives.getDouble(slot);
+            }
+        }
+        Number number = getNumber(key);
+        return (null == number) ? defaultValue : number.doubleValue();
+    }
+
+    /**
+     * Sets an int value.
+     *
+     * @param key string
+     * @param value
+     */
+    public void setInt(String key, int value) {
+        putPrimitive(key, PrimitiveProperties.INT, value);
+    }
+
+    /**
+     * Sets a long value.
+     *
+     * @param key string
+     * @param value
+     */
+    public void setLong(String key, long value) {
+        putPrimitive(key, PrimitiveProperties.LONG, value);
+    }
+
+    /**
+     * Sets a double value.
+     *
+     * @param key string
+     * @param value
+     */
+    public void setDouble(String key, double value) {
+        putPrimitive(key, PrimitiveProperties.DOUBLE,
+                Double.doubleToRawLongBits(value));
     }
 
     /**
      * Clears all the properties.
      */
     public void clear() {
-        try {
-            m_properties.clear();
+        if (m_shared) {
+            // leave the shared storage alone
+            m_properties = null;
+            m_primitives = null;
+            m_shared = false;
+        }
+        else {
+            if (null != m_properties) {
+                try {
+                    m_properties.clear();
+                }
+                catch (UnsupportedOperationException e) {
+                    System.out.println("UNABLE TO CLEAR PROPERTIES");
+                }
+            }
+            if (null != m_primitives) {
+                m_primitives.clear();
+            }
+        }
+    }
+
+    /**
+     * Looks for a boxed numeric value in the map.
+     *
+     * @param key
+     * @return number or null
+     */
+    private Number getNumber(String key) {
+        if (null != m_properties) {
+            Object value = m_properties.get(key);
+            if (value instanceof Number) {
+                return (Number) value;
+            }
         }
-        catch (UnsupportedOperationException e) {
-            System.out.println("UNABLE TO CLEAR PROPERTIES");
+        return null;
+    }
+
+    private void putPrimitive(String key, byte type, long bits) {
+        unshare();
+        if (null != m_properties) {
+            m_properties.remove(key);
+        }
+        if (null == m_primitives) {
+            m_primitives = new PrimitiveProperties();
+        }
+        m_primitives.put(key, type, bits);
+    }
+
+    /**
+     * Gets a map that this collection may change, creating or copying it as
+     * need be.
+     *
+     * @return map
+     */
+    private Map<String, Object> getOwnMap() {
+        unshare();
+        if (null == m_properties) {
+            m_properties = new HashMap<String, Object>();
+        }
+        return m_properties;
+    }
+
+    /**
+     * Takes private copies of any storage shared with another collection.
+     */
+    private void unshare() {
+        if (m_shared) {
+            if (null != m_properties) {
+                m_properties = new HashMap<String, Object>(m_properties);
+            }
+            if (null != m_primitives) {
+                m_primitives = new PrimitiveProperties(m_primitives);
+            }
+            m_shared = false;
         }
     }
 }
@@ -33,6 +33,9 @@ package imagej.workflow.util.xmllight;
 /**
  * XML-light Parser.
  *
+ * Each call copies the content and remainder of the tag, so parsing a
+ * whole document this way is quadratic.  Use XMLReader for large documents.
+ *
  * @author Aivar Grislis
  */
 public class XMLParser {
@@ -57,27 +60,13 @@ public class XMLParser {
         if (!xml.startsWith("<") || !xml.endsWith(">")) {
             throw new XMLException("Mismatched '<' '>'");
         }
-        try {
-            int endBracketIndex = xml.indexOf('>');
-            int startContentIndex = endBracketIndex + 1;
-
-            String name = xml.substring(1, endBracketIndex);
-
-            String endTag = "</" + name + ">";
-            int endTagIndex = xml.indexOf(endTag);
-            if (-1 == endTagIndex) {
-                throw new XMLException("Missing " + endTag);
-            }
-            int remainderIndex = endTagIndex + endTag.length();
-
-            String content = xml.substring(startContentIndex, endTagIndex);
-
-            String remainder = xml.substring(remainderIndex, xml.length());
-
-            return new XMLTag(name.trim(), content.trim(), remainder.trim());
-        }
-        catch (IndexOutOfBoundsException e) {
+        XMLReader reader = new XMLReader(xml);
+        String name = reader.peekTag();
+        if (name.isEmpty()) {
             throw new XMLException("Improper XML");
         }
+        String content = reader.readContent(name);
+        String remainder = xml.substring(reader.getIndex());
+        return new XMLTag(name, content, remainder.trim());
     }
 }
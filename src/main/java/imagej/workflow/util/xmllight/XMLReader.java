@@ -0,0 +1,244 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow.util.xmllight;
+
+/**
+ * XML-light streaming reader.
+ *
+ * Walks the XML string once with a cursor, rather than copying the content
+ * and remainder of every tag as XMLParser does.  End tags are matched by
+ * nesting depth, so a tag may contain other tags of the same name.
+ *
+ * For "<one><two>abc</two></one><three>def</three>":
+ *   startTag("one");
+ *   String two = readContent("two"); // "abc"
+ *   endTag("one");
+ *
+ * @author Aivar Grislis
+ */
+public class XMLReader {
+    private final String m_xml;
+    private final int m_end;
+    private int m_index;
+
+    /**
+     * Constructs a reader for the given XML string.
+     *
+     * @param xml
+     */
+    public XMLReader(String xml) {
+        m_xml = xml;
+        m_end = xml.length();
+        m_index = 0;
+    }
+
+    /**
+     * Gets the current position within the XML string.
+     *
+     * @return
+     */
+    public int getIndex() {
+        return m_index;
+    }
+
+    /**
+     * Whether the whole XML string has been read.
+     *
+     * @return
+     */
+    public boolean isAtEnd() {
+        skipWhitespace();
+        return m_index >= m_end;
+    }
+
+    /**
+     * Whether the next thing is an end tag or the end of the XML string, i.e.
+     * there are no more tags at this level.
+     *
+     * @return
+     */
+    public boolean isEndTag() {
+        skipWhitespace();
+        return m_index >= m_end || m_xml.startsWith("</", m_index);
+    }
+
+    /**
+     * Gets the name of the next start tag, without reading it.
+     *
+     * @return name or empty string if no more tags at this level
+     * @throws XMLException
+     */
+    public String peekTag() throws XMLException {
+        if (isEndTag()) {
+            return XMLTag.EMPTY_STRING;
+        }
+        if ('<' != m_xml.charAt(m_index)) {
+            throw new XMLException("Expected '<' at " + m_index);
+        }
+        return m_xml.substring(m_index + 1, closeBracket(m_index)).trim();
+    }
+
+    /**
+     * Reads the next start tag, which must have the given name.
+     *
+     * @param name
+     * @throws XMLException
+     */
+    public void startTag(String name) throws XMLException {
+        if (!name.equals(peekTag())) {
+            throw new XMLException("Missing <" + name + ">");
+        }
+        m_index = closeBracket(m_index) + 1;
+    }
+
+    /**
+     * Reads the next end tag, which must have the given name.
+     *
+     * @param name
+     * @throws XMLException
+     */
+    public void endTag(String name) throws XMLException {
+        skipWhitespace();
+        if (!m_xml.startsWith("</", m_index)) {
+            throw new XMLException("Missing </" + name + ">");
+        }
+        int closeIndex = closeBracket(m_index);
+        if (!name.equals(m_xml.substring(m_index + 2, closeIndex).trim())) {
+            throw new XMLException("Missing </" + name + ">");
+        }
+        m_index = closeIndex + 1;
+    }
+
+    /**
+     * Reads a tag with the given name and returns its content.
+     *
+     * For "<one>abc</one>" returns "abc".
+     *
+     * @param name
+     * @return trimmed content
+     * @throws XMLException
+     */
+    public String readContent(String name) throws XMLException {
+        startTag(name);
+        int contentIndex = m_index;
+        int endTagIndex = findEndTag(name, contentIndex);
+        m_index = endTagIndex;
+        endTag(name);
+        return m_xml.substring(contentIndex, endTagIndex).trim();
+    }
+
+    /**
+     * Reads the next tag and returns it whole, start and end tags included.
+     *
+     * For "<one>abc</one><two>def</two>" returns "<one>abc</one>".
+     *
+     * @return element XML
+     * @throws XMLException
+     */
+    public String readElement() throws XMLException {
+        skipWhitespace();
+        int startIndex = m_index;
+        skipElement();
+        return m_xml.substring(startIndex, m_index);
+    }
+
+    /**
+     * Skips over the next tag, start and end tags included, without copying
+     * it.
+     *
+     * @throws XMLException
+     */
+    public void skipElement() throws XMLException {
+        String name = peekTag();
+        if (name.isEmpty()) {
+            throw new XMLException("Missing tag at " + m_index);
+        }
+        startTag(name);
+        m_index = findEndTag(name, m_index);
+        endTag(name);
+    }
+
+    /**
+     * Finds the end tag that matches a start tag, skipping over any nested
+     * tags.
+     *
+     * @param name of start tag
+     * @param index just past start tag
+     * @return index of matching end tag
+     * @throws XMLException
+     */
+    private int findEndTag(String name, int index) throws XMLException {
+        int depth = 1;
+        while (true) {
+            int tagIndex = m_xml.indexOf('<', index);
+            if (-1 == tagIndex) {
+                throw new XMLException("Missing </" + name + ">");
+            }
+            int closeIndex = closeBracket(tagIndex);
+            if ('/' == m_xml.charAt(tagIndex + 1)) {
+                if (0 == --depth) {
+                    if (!name.equals(m_xml.substring(tagIndex + 2, closeIndex).trim())) {
+                        throw new XMLException("Mismatched <" + name + "> at " + tagIndex);
+                    }
+                    return tagIndex;
+                }
+            }
+            else {
+                ++depth;
+            }
+            index = closeIndex + 1;
+        }
+    }
+
+    /**
+     * Finds the '>' that closes the tag starting at a given index.
+     *
+     * @param index of '<'
+     * @return index of '>'
+     * @throws XMLException
+     */
+    private int closeBracket(int index) throws XMLException {
+        int closeIndex = m_xml.indexOf('>', index);
+        if (-1 == closeIndex) {
+            throw new XMLException("Mismatched '<' '>'");
+        }
+        return closeIndex;
+    }
+
+    /**
+     * Skips whitespace, as defined by String.trim().
+     */
+    private void skipWhitespace() {
+        while (m_index < m_end && m_xml.charAt(m_index) <= ' ') {
+            ++m_index;
+        }
+    }
+}
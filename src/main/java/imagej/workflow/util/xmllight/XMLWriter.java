@@ -30,14 +30,22 @@
 
 package imagej.workflow.util.xmllight;
 
+import java.io.IOException;
+
 /**
  * XML-light Writer.
  *
+ * Writes to any Appendable, such as a StringBuilder or a java.io.Writer.
+ * Since the tag methods don't throw, the first IOException is kept and may
+ * be checked with getException() when done.
+ *
  * @author Aivar Grislis
  */
 public class XMLWriter {
-    StringBuilder m_string;
+    private static final String SPACES = "                                ";
+    Appendable m_string;
     int m_indent = 0;
+    IOException m_exception;
 
     /**
      * Constructs a helper for writing to given
@@ -49,6 +57,25 @@ public class XMLWriter {
         m_string = string;
     }
 
+    /**
+     * Constructs a helper for writing to given
+     * Appendable, i.e. a java.io.Writer.
+     *
+     * @param appendable
+     */
+    public XMLWriter(Appendable appendable) {
+        m_string = appendable;
+    }
+
+    /**
+     * Gets the first exception thrown while writing.
+     *
+     * @return exception or null
+     */
+    public IOException getException() {
+        return m_exception;
+    }
+
     /**
      * Starts a new tag.
      *
@@ -56,10 +83,10 @@ public class XMLWriter {
      */
     public void addTag(String name) {
         doIndent();
-        m_string.append('<');
-        m_string.append(name);
-        m_string.append('>');
-        m_string.append('\n');
+        append('<');
+        append(name);
+        append('>');
+        append('\n');
         ++m_indent;
     }
 
@@ -71,11 +98,11 @@ public class XMLWriter {
     public void addEndTag(String name) {
         --m_indent;
         doIndent();
-        m_string.append('<');
-        m_string.append('/');
-        m_string.append(name);
-        m_string.append('>');
-        m_string.append('\n');
+        append('<');
+        append('/');
+        append(name);
+        append('>');
+        append('\n');
     }
 
     /**
@@ -86,15 +113,15 @@ public class XMLWriter {
      */
     public void addTagWithContent(String name, String content) {
         doIndent();
-        m_string.append('<');
-        m_string.append(name);
-        m_string.append('>');
-        m_string.append(content);
-        m_string.append('<');
-        m_string.append('/');
-        m_string.append(name);
-        m_string.append('>');
-        m_string.append('\n');
+        append('<');
+        append(name);
+        append('>');
+        append(content);
+        append('<');
+        append('/');
+        append(name);
+        append('>');
+        append('\n');
     }
 
     /**
@@ -103,20 +130,75 @@ public class XMLWriter {
      * @param output
      */
     public void add(String output) {
-        String lines[] = output.split("\n");
-        for (String line: lines) {
+        // trailing blank lines are dropped
+        int end = output.length();
+        while (end > 0 && '\n' == output.charAt(end - 1)) {
+            --end;
+        }
+        int start = 0;
+        while (start < end) {
+            int newline = output.indexOf('\n', start);
+            if (-1 == newline || newline > end) {
+                newline = end;
+            }
             doIndent();
-            m_string.append(line);
-            m_string.append('\n');
+            append(output, start, newline);
+            append('\n');
+            start = newline + 1;
         }
     }
 
+    /**
+     * Adds an embedded XML writable, with proper indent.
+     *
+     * @param writable
+     */
+    public void add(IXMLWritable writable) {
+        writable.toXML(this);
+    }
+
     /**
      * Does indentation.
      */
     private void doIndent() {
-        for (int i = 0; i < 2 * m_indent; ++i) {
-            m_string.append(' ');
+        int count = 2 * m_indent;
+        while (count > SPACES.length()) {
+            append(SPACES);
+            count -= SPACES.length();
+        }
+        append(SPACES, 0, count);
+    }
+
+    private void append(char c) {
+        try {
+            m_string.append(c);
+        }
+        catch (IOException e) {
+            saveException(e);
+        }
+    }
+
+    private void append(CharSequence string) {
+        try {
+            m_string.append(string);
+        }
+        catch (IOException e) {
+            saveException(e);
+        }
+    }
+
+    private void append(CharSequence string, int start, int end) {
+        try {
+            m_string.append(string, start, end);
+        }
+        catch (IOException e) {
+            saveException(e);
+        }
+    }
+
+    private void saveException(IOException e) {
+        if (null == m_exception) {
+            m_exception = e;
         }
     }
 }
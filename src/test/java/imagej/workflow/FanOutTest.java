@@ -0,0 +1,91 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow;
+
+import imagej.workflow.plugin.ItemWrapper;
+import imagej.workflow.plugin.annotations.Input;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests wiring one output to several inputs.
+ *
+ * @author aivar
+ */
+public class FanOutTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public FanOutTest(String testName) {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(FanOutTest.class);
+    }
+
+    public void testFanOut() throws InterruptedException
+    {
+        System.out.println("testFanOut");
+        RecordingPlugin.s_records.clear();
+
+        PluginModule module1 = new PluginModule("imagej.workflow.DummyPlugin");
+        PluginModule module2 = new PluginModule(RecordingPlugin.class);
+        module2.setName("first");
+        PluginModule module3 = new PluginModule(RecordingPlugin.class);
+        module3.setName("second");
+
+        Workflow workflow = new Workflow();
+        workflow.setName("Fan Out");
+        workflow.add(module1);
+        workflow.add(module2);
+        workflow.add(module3);
+        workflow.wire(module1, DummyPlugin.UPPER, module2, Input.DEFAULT);
+        workflow.wire(module1, DummyPlugin.UPPER, module3, Input.DEFAULT);
+        workflow.finalize();
+
+        workflow.input(new ItemWrapper("hello"));
+
+        // both branches get the output
+        assertTrue("HELLO".equals(RecordingPlugin.s_records.poll(10, TimeUnit.SECONDS)));
+        assertTrue("HELLO".equals(RecordingPlugin.s_records.poll(10, TimeUnit.SECONDS)));
+        workflow.quit();
+    }
+}
@@ -83,4 +83,53 @@ public class FinalizeTest extends TestCase {
         assertTrue(workFlow1.getOutputNames().length == 1);
         assertTrue(workFlow1.getOutputNames()[0].equals("OUTPUT"));
     }
+
+    /**
+     * Wires and inputs that don't end at a module's input or output fail;
+     * inputs with no wire become workflow inputs instead.
+     */
+    public void testUnconnected()
+    {
+        System.out.println("testUnconnected");
+        DummyComponent testComponentA = new DummyComponent();
+        testComponentA.setName("A");
+        testComponentA.setInputNames(new String[] { Input.DEFAULT });
+        testComponentA.setOutputNames(new String[] { Output.DEFAULT });
+        DummyComponent testComponentB = new DummyComponent();
+        testComponentB.setName("B");
+        testComponentB.setInputNames(new String[] { "ONE", "TWO" } );
+        testComponentB.setOutputNames(new String[] { Output.DEFAULT });
+
+        Workflow workFlow1 = new Workflow();
+        workFlow1.add(testComponentA);
+        workFlow1.add(testComponentB);
+        workFlow1.wire(testComponentA, testComponentB, "THREE");
+        try {
+            workFlow1.finalize();
+            fail("expected IllegalStateException");
+        }
+        catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("B.THREE"));
+        }
+
+        Workflow workFlow2 = new Workflow();
+        workFlow2.add(testComponentA);
+        workFlow2.wireInput("IN", testComponentA, "MISSING");
+        try {
+            workFlow2.finalize();
+            fail("expected IllegalStateException");
+        }
+        catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("A.MISSING"));
+        }
+
+        // TWO is left over and promoted
+        Workflow workFlow3 = new Workflow();
+        workFlow3.add(testComponentA);
+        workFlow3.add(testComponentB);
+        workFlow3.wire(testComponentA, testComponentB, "ONE");
+        workFlow3.wireInput(testComponentA);
+        workFlow3.finalize();
+        assertEquals(2, workFlow3.getInputNames().length);
+    }
 }
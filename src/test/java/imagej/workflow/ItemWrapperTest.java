@@ -0,0 +1,134 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow;
+
+import imagej.workflow.plugin.ItemWrapper;
+import imagej.workflow.util.properties.IPropertyCollection;
+import java.util.Map;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ *
+ * @author aivar
+ */
+public class ItemWrapperTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ItemWrapperTest(String testName) {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ItemWrapperTest.class);
+    }
+
+    public void testCopyOnWrite()
+    {
+        System.out.println("testCopyOnWrite");
+        ItemWrapper plain = new ItemWrapper("item");
+        assertFalse(plain.hasProperties());
+        assertFalse(new ItemWrapper(plain).hasProperties());
+        assertFalse(plain.hasProperties());
+
+        ItemWrapper original = new ItemWrapper("item");
+        original.getProperties().set("width", 640);
+        ItemWrapper copy = new ItemWrapper(original);
+        assertEquals(640, copy.getProperties().get("width"));
+
+        // changing either one leaves the other alone
+        copy.getProperties().set("width", 320);
+        original.getProperties().set("height", 480);
+        assertEquals(640, original.getProperties().get("width"));
+        assertEquals(320, copy.getProperties().get("width"));
+        assertNull(copy.getProperties().get("height"));
+
+        ItemWrapper cleared = new ItemWrapper(original);
+        cleared.getProperties().clear();
+        assertFalse(cleared.hasProperties());
+        assertEquals(480, original.getProperties().get("height"));
+    }
+
+    public void testTypedProperties()
+    {
+        System.out.println("testTypedProperties");
+        ItemWrapper original = new ItemWrapper("item");
+        IPropertyCollection properties = original.getProperties();
+        properties.setInt("channel", 2);
+        properties.setLong("timestamp", 1234567890123L);
+        properties.setDouble("pixelSize", 0.25);
+        assertEquals(2, properties.getInt("channel", -1));
+        assertEquals(1234567890123L, properties.getLong("timestamp", -1));
+        assertEquals(0.25, properties.getDouble("pixelSize", -1), 0.0);
+        assertEquals(2.0, properties.getDouble("channel", -1), 0.0);
+        assertEquals(-1, properties.getInt("missing", -1));
+        assertEquals(Integer.valueOf(2), properties.get("channel"));
+
+        // boxed numbers still read through the typed getters
+        properties.set("width", 640);
+        assertEquals(640, properties.getInt("width", -1));
+
+        // an object value replaces a typed one
+        properties.set("channel", "red");
+        assertEquals(-1, properties.getInt("channel", -1));
+        assertEquals("red", properties.get("channel"));
+
+        // copies are still copy-on-write
+        ItemWrapper copy = new ItemWrapper(original);
+        copy.getProperties().setDouble("pixelSize", 0.5);
+        assertEquals(0.25, properties.getDouble("pixelSize", -1), 0.0);
+        assertEquals(0.5, copy.getProperties().getDouble("pixelSize", -1), 0.0);
+
+        // enough keys to grow the table, then remove most of them
+        for (int i = 0; i < 100; ++i) {
+            properties.setInt("key" + i, i);
+        }
+        for (int i = 0; i < 100; i += 3) {
+            properties.set("key" + i, null);
+        }
+        for (int i = 0; i < 100; ++i) {
+            int expected = (0 == i % 3) ? -1 : i;
+            assertEquals(expected, properties.getInt("key" + i, -1));
+        }
+
+        Map<String, Object> all = properties.getAll();
+        assertEquals(Long.valueOf(1234567890123L), all.get("timestamp"));
+        assertEquals(Integer.valueOf(98), all.get("key98"));
+        assertEquals(1234567890123L, properties.getLong("timestamp", -1));
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package imagej.workflow;
+
+import imagej.workflow.metrics.Histogram;
+import imagej.workflow.metrics.MetricsRegistry;
+import imagej.workflow.plugin.ItemWrapper;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests workflow metrics.
+ *
+ * @author aivar
+ */
+public class MetricsTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public MetricsTest(String testName) {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(MetricsTest.class);
+    }
+
+    public void testHistogram()
+    {
+        System.out.println("testHistogram");
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(0.5));
+        for (int i = 1; i <= 100; ++i) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(50500, histogram.getMean());
+        assertEquals(100000, histogram.getMax());
+
+        // accurate to within a factor of two
+        long median = histogram.getPercentile(0.5);
+        assertTrue(median >= 50000 && median < 100000);
+        assertEquals(100000, histogram.getPercentile(1.0));
+    }
+
+    public void testWorkflowMetrics() throws Exception
+    {
+        System.out.println("testWorkflowMetrics");
+        RecordingPlugin.s_records.clear();
+
+        PluginModule module1 = new PluginModule(ThreadPlugin.class);
+        PluginModule module2 = new PluginModule(RecordingPlugin.class);
+
+        Workflow workflow = new Workflow();
+        workflow.setName("Metrics");
+        workflow.setFusion(false);
+        workflow.add(module1);
+        workflow.add(module2);
+        workflow.wire(module1, module2);
+        workflow.finalize();
+
+        for (int i = 0; i < 5; ++i) {
+            workflow.input(new ItemWrapper("item"));
+        }
+        for (int i = 0; i < 5; ++i) {
+            assertNotNull(RecordingPlugin.s_records.poll(10, TimeUnit.SECONDS));
+        }
+
+        MetricsRegistry metrics = workflow.getMetrics();
+        assertEquals(Long.valueOf(5), metrics.getValue(Workflow.INPUT_COUNT));
+        int wires = 0;
+        int plugins = 0;
+        for (Map.Entry<String, Long> entry : metrics.getValues().entrySet()) {
+            String name = entry.getKey();
+            if (name.startsWith("wire.") && name.endsWith(".items")) {
+                // one wire from the workflow input, one between the plugins
+                assertEquals(Long.valueOf(5), entry.getValue());
+                ++wires;
+            }
+            if (name.startsWith("plugin.") && name.endsWith(".wait.count")) {
+                ++plugins;
+            }
+        }
+        assertEquals(2, wires);
+        assertEquals(2, plugins);
+
+        // same values through JMX
+        ObjectName objectName = metrics.getObjectName();
+        assertNotNull(objectName);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(5L, server.getAttribute(objectName, Workflow.INPUT_COUNT));
+        try {
+            server.invoke(objectName, "reset", null, null);
+            fail("expected ReflectionException");
+        }
+        catch (ReflectionException e) {
+            assertTrue(e.getCause() instanceof NoSuchMethodException);
+        }
+
+        workflow.quit();
+        assertNull(metrics.getObjectName());
+        assertFalse(server.isRegistered(objectName));
+    }
+
+    /**
+     * Workflows that are quit and collected stay unregistered, even though
+     * the collector calls finalize() again.
+     */
+    public void testUnregisterAfterQuit() throws Exception
+    {
+        System.out.println("testUnregisterAfterQuit");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName(MetricsRegistry.DOMAIN + ":*");
+        int before = server.queryNames(pattern, null).size();
+
+        for (int i = 0; i < 20; ++i) {
+            Workflow workflow = new Workflow();
+            workflow.setName("Collected" + i);
+            workflow.add(new PluginModule(DummyPlugin.class));
+            workflow.finalize();
+            workflow.input(new ItemWrapper("item"));
+            workflow.quit();
+        }
+        assertEquals(before, server.queryNames(pattern, null).size());
+
+        for (int i = 0; i < 5; ++i) {
+            System.gc();
+            System.runFinalization();
+            Thread.sleep(50);
+        }
+        assertEquals(before, server.queryNames(pattern, null).size());
+    }
+}
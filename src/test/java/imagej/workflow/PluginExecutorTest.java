@@ -0,0 +1,148 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package imagej.workflow;
+
+import imagej.workflow.plugin.ItemWrapper;
+import imagej.workflow.plugin.PluginExecutorFactory;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the executors that run plugin instances.
+ *
+ * @author aivar
+ */
+public class PluginExecutorTest extends TestCase {
+    private static final int ITEMS = 10;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public PluginExecutorTest(String testName) {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(PluginExecutorTest.class);
+    }
+
+    /**
+     * Every kind of executor runs tasks, falling back if need be.
+     */
+    public void testExecutorTypes() throws Exception
+    {
+        System.out.println("testExecutorTypes");
+        for (PluginExecutorFactory.Type type : PluginExecutorFactory.Type.values()) {
+            ExecutorService executor = PluginExecutorFactory.create(type, 2, "test");
+            Boolean daemon = executor.submit(new Callable<Boolean>() {
+                public Boolean call() {
+                    return Thread.currentThread().isDaemon();
+                }
+            }).get(10, TimeUnit.SECONDS);
+            assertTrue(type.toString(), daemon);
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        try {
+            PluginExecutorFactory.create(PluginExecutorFactory.Type.FIXED, 0, "test");
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+        }
+    }
+
+    /**
+     * No more plugin instances run at once than the parallelism allows.
+     */
+    public void testParallelismCap() throws InterruptedException
+    {
+        System.out.println("testParallelismCap");
+        assertEquals(ITEMS, run(2));
+        assertEquals(2, ConcurrencyPlugin.s_maxRunning.get());
+        assertEquals(ITEMS, run(1));
+        assertEquals(1, ConcurrencyPlugin.s_maxRunning.get());
+    }
+
+    /**
+     * A launcher keeps running after its first set of inputs.
+     */
+    public void testRunsEveryInput() throws InterruptedException
+    {
+        System.out.println("testRunsEveryInput");
+        assertEquals(ITEMS, run(PluginExecutorFactory.DEFAULT_PARALLELISM));
+    }
+
+    /**
+     * Runs items through a plugin.
+     *
+     * @param parallelism
+     * @return number of items that came out
+     */
+    private int run(int parallelism) throws InterruptedException {
+        ConcurrencyPlugin.reset();
+        PluginModule module = new PluginModule(ConcurrencyPlugin.class);
+        module.setParallelism(parallelism);
+
+        Workflow workflow = new Workflow();
+        workflow.setName("Executor");
+        workflow.add(module);
+        workflow.finalize();
+
+        final BlockingQueue<Object> outputs = new LinkedBlockingQueue<Object>();
+        workflow.setOutputListener(new IOutputListener() {
+            public void outputImage(String name, ItemWrapper image) {
+                outputs.add(image.getItem());
+            }
+        });
+        for (int i = 0; i < ITEMS; ++i) {
+            workflow.input(new ItemWrapper(i));
+        }
+        int count = 0;
+        while (count < ITEMS && null != outputs.poll(10, TimeUnit.SECONDS)) {
+            ++count;
+        }
+        workflow.quit();
+        return count;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package imagej.workflow;
+
+import imagej.workflow.plugin.ItemWrapper;
+import imagej.workflow.plugin.PluginAnnotations;
+import imagej.workflow.plugin.PluginScheduler;
+import imagej.workflow.plugin.annotations.Setup;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests that plugin instances are set up once and reused.
+ *
+ * @author aivar
+ */
+public class PluginLifecycleTest extends TestCase {
+    private static final int ITEMS = 20;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public PluginLifecycleTest(String testName) {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(PluginLifecycleTest.class);
+    }
+
+    public void testReuse() throws InterruptedException
+    {
+        System.out.println("testReuse");
+        LifecyclePlugin.s_setups.set(0);
+        LifecyclePlugin.s_teardowns.set(0);
+        LifecyclePlugin.s_processed.set(0);
+
+        PluginModule module = new PluginModule(LifecyclePlugin.class);
+        module.setParallelism(1);
+        Workflow workflow = new Workflow();
+        workflow.setName("Lifecycle");
+        workflow.add(module);
+        workflow.finalize();
+
+        for (int i = 0; i < ITEMS; ++i) {
+            workflow.input(new ItemWrapper(i));
+        }
+        for (int i = 0; i < 100 && LifecyclePlugin.s_processed.intValue() < ITEMS; ++i) {
+            Thread.sleep(100);
+        }
+        assertTrue(ITEMS == LifecyclePlugin.s_processed.intValue());
+        assertTrue(1 == LifecyclePlugin.s_setups.intValue());
+
+        workflow.quit();
+        for (int i = 0; i < 100 && 0 == LifecyclePlugin.s_teardowns.intValue(); ++i) {
+            Thread.sleep(100);
+        }
+        assertTrue(1 == LifecyclePlugin.s_teardowns.intValue());
+    }
+
+    /**
+     * A fused plugin has no input queue and is torn down on quit().
+     */
+    public void testFusedTeardown() throws InterruptedException
+    {
+        System.out.println("testFusedTeardown");
+        LifecyclePlugin.s_setups.set(0);
+        LifecyclePlugin.s_teardowns.set(0);
+        LifecyclePlugin.s_processed.set(0);
+
+        PluginModule module1 = new PluginModule(ThreadPlugin.class);
+        module1.setParallelism(1);
+        PluginModule module2 = new PluginModule(LifecyclePlugin.class);
+        module2.setParallelism(1);
+        Workflow workflow = new Workflow();
+        workflow.setName("FusedLifecycle");
+        workflow.add(module1);
+        workflow.add(module2);
+        workflow.wire(module1, module2);
+        workflow.finalize();
+
+        for (int i = 0; i < ITEMS; ++i) {
+            workflow.input(new ItemWrapper(i));
+        }
+        for (int i = 0; i < 100 && LifecyclePlugin.s_processed.intValue() < ITEMS; ++i) {
+            Thread.sleep(100);
+        }
+        assertTrue(ITEMS == LifecyclePlugin.s_processed.intValue());
+        assertTrue(1 == LifecyclePlugin.s_setups.intValue());
+
+        // only the first plugin waits on a queue
+        int depthGauges = 0;
+        for (String name : workflow.getMetrics().getValues().keySet()) {
+            if (name.startsWith(PluginScheduler.WIRE) && name.endsWith(PluginScheduler.DEPTH)) {
+                ++depthGauges;
+            }
+        }
+        assertEquals(1, depthGauges);
+
+        workflow.quit();
+        for (int i = 0; i < 100 && 0 == LifecyclePlugin.s_teardowns.intValue(); ++i) {
+            Thread.sleep(100);
+        }
+        assertTrue(1 == LifecyclePlugin.s_teardowns.intValue());
+    }
+
+    /**
+     * A lifecycle method overridden in a subclass runs once.
+     */
+    public void testOverride()
+    {
+        System.out.println("testOverride");
+        PluginAnnotations annotations = PluginAnnotations.getInstance(OverridingPlugin.class);
+        assertEquals(1, annotations.getSetupMethods().size());
+        assertEquals(OverridingPlugin.class, annotations.getSetupMethods().get(0).getDeclaringClass());
+        assertEquals(1, annotations.getTeardownMethods().size());
+        assertEquals(LifecyclePlugin.class, annotations.getTeardownMethods().get(0).getDeclaringClass());
+    }
+
+    public static class OverridingPlugin extends LifecyclePlugin {
+        @Setup
+        @Override
+        public void setup() {
+            super.setup();
+        }
+    }
+}
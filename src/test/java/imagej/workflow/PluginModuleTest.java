@@ -30,6 +30,8 @@
 
 package imagej.workflow;
 
+import imagej.workflow.plugin.PluginAnnotations;
+import imagej.workflow.plugin.annotations.Input;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -73,4 +75,22 @@ public class PluginModuleTest extends TestCase {
 
         System.out.println("XML is [[" + xml2 + "]]");
     }
+
+    /**
+     * Annotations are shared per class; slots follow annotation order.
+     */
+    public void testAnnotationSlots()
+    {
+        System.out.println("testAnnotationSlots");
+        PluginAnnotations annotations = PluginAnnotations.getInstance(DummyPlugin.class);
+        assertSame(annotations, PluginAnnotations.getInstance(DummyPlugin.class));
+        assertSame(annotations, new PluginModule(DummyPlugin.class).m_annotations);
+
+        assertEquals(1, annotations.getInputCount());
+        assertEquals(0, annotations.getInputSlot(Input.DEFAULT));
+        assertEquals(2, annotations.getOutputCount());
+        assertEquals(0, annotations.getOutputSlot(DummyPlugin.UPPER));
+        assertEquals(1, annotations.getOutputSlot(new String(DummyPlugin.LOWER)));
+        assertEquals(-1, annotations.getOutputSlot("MISSING"));
+    }
 }
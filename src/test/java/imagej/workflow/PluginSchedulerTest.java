@@ -0,0 +1,178 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package imagej.workflow;
+
+import imagej.workflow.plugin.IPluginLauncher;
+import imagej.workflow.plugin.ItemQueue;
+import imagej.workflow.plugin.ItemWrapper;
+import imagej.workflow.plugin.PluginAnnotations;
+import imagej.workflow.plugin.PluginLauncher;
+import imagej.workflow.plugin.PluginScheduler;
+import imagej.workflow.plugin.TeardownException;
+import imagej.workflow.plugin.annotations.Input;
+import imagej.workflow.plugin.annotations.Output;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests how the scheduler passes images along its queues.
+ *
+ * @author aivar
+ */
+public class PluginSchedulerTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public PluginSchedulerTest(String testName) {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(PluginSchedulerTest.class);
+    }
+
+    /**
+     * A full bounded queue blocks the producer until the consumer takes.
+     */
+    public void testBackpressure() throws InterruptedException
+    {
+        System.out.println("testBackpressure");
+        final PluginScheduler scheduler = new PluginScheduler();
+        final ItemQueue queue = chain(scheduler, "queue", 1);
+
+        final AtomicInteger puts = new AtomicInteger();
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 2; ++i) {
+                    scheduler.put("out", Output.DEFAULT, queue, new ItemWrapper(i));
+                    puts.incrementAndGet();
+                }
+            }
+        };
+        producer.setDaemon(true);
+        producer.start();
+
+        // the second put waits for room
+        for (int i = 0; i < 100 && 0 == puts.get(); ++i) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(1, puts.get());
+        assertTrue(producer.isAlive());
+
+        assertEquals(0, scheduler.get(queue).getItem());
+        producer.join(10000);
+        assertFalse(producer.isAlive());
+        assertEquals(2, puts.get());
+        assertEquals(1, scheduler.get(queue).getItem());
+        scheduler.quit();
+    }
+
+    /**
+     * Quitting promptly wakes producers blocked on a full queue and consumers
+     * blocked on an empty one.
+     */
+    public void testQuitWakes() throws InterruptedException
+    {
+        System.out.println("testQuitWakes");
+        final PluginScheduler scheduler = new PluginScheduler();
+        final ItemQueue full = chain(scheduler, "full", 1);
+        final ItemQueue empty = chain(scheduler, "empty", 1);
+        scheduler.put("out", Output.DEFAULT, full, new ItemWrapper("item"));
+
+        final AtomicInteger tornDown = new AtomicInteger();
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    scheduler.put("out", Output.DEFAULT, full, new ItemWrapper("blocked"));
+                }
+                catch (TeardownException e) {
+                    tornDown.incrementAndGet();
+                }
+            }
+        };
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    scheduler.get(empty);
+                }
+                catch (TeardownException e) {
+                    tornDown.incrementAndGet();
+                }
+            }
+        };
+        producer.setDaemon(true);
+        consumer.setDaemon(true);
+        producer.start();
+        consumer.start();
+        Thread.sleep(100);
+        assertTrue(producer.isAlive());
+        assertTrue(consumer.isAlive());
+
+        long start = System.currentTimeMillis();
+        scheduler.quit();
+        producer.join(10000);
+        consumer.join(10000);
+        assertFalse(producer.isAlive());
+        assertFalse(consumer.isAlive());
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(2, tornDown.get());
+    }
+
+    /**
+     * Chains two launchers that are never started, so the test plays both
+     * plugins.
+     *
+     * @param scheduler
+     * @param name makes the launchers unique
+     * @param capacity
+     * @return queue between them
+     */
+    private ItemQueue chain(PluginScheduler scheduler, String name, int capacity) {
+        IPluginLauncher out = new PluginLauncher(ThreadPlugin.class, name + "Out",
+                PluginAnnotations.getInstance(ThreadPlugin.class));
+        IPluginLauncher in = new PluginLauncher(ThreadPlugin.class, name + "In",
+                PluginAnnotations.getInstance(ThreadPlugin.class));
+        scheduler.chain(out, Output.DEFAULT, in, Input.DEFAULT, capacity);
+        return scheduler.resolve(in.uniqueName(Input.DEFAULT));
+    }
+}
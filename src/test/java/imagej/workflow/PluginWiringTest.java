@@ -31,7 +31,14 @@
 package imagej.workflow;
 
 import imagej.workflow.plugin.ItemWrapper;
+import imagej.workflow.plugin.annotations.Input;
+import imagej.workflow.plugin.annotations.Output;
 import imagej.workflow.util.xmllight.XMLException;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -92,4 +99,269 @@ public class PluginWiringTest extends TestCase {
 
         System.out.println("workflow [" + workflow.toXML() + "]");
     }
+
+    /**
+     * Gets and puts by slot number.
+     */
+    public void testSlots() throws InterruptedException
+    {
+        System.out.println("testSlots");
+        RecordingPlugin.s_records.clear();
+
+        PluginModule module1 = new PluginModule(SlotPlugin.class);
+        PluginModule module2 = new PluginModule(RecordingPlugin.class);
+
+        // one at a time, to keep outputs in order
+        module1.setParallelism(1);
+        module2.setParallelism(1);
+
+        Workflow workflow = new Workflow();
+        workflow.setName("Slots");
+        workflow.add(module1);
+        workflow.add(module2);
+        workflow.wire(module1, module2);
+        workflow.finalize();
+
+        for (int i = 0; i < 3; ++i) {
+            workflow.input(new ItemWrapper("hello" + i), SlotPlugin.FIRST);
+            workflow.input(new ItemWrapper("world" + i), SlotPlugin.SECOND);
+        }
+        for (int i = 0; i < 3; ++i) {
+            assertEquals("hello" + i + " world" + i, RecordingPlugin.s_records.poll(10, TimeUnit.SECONDS));
+        }
+        workflow.quit();
+    }
+
+    /**
+     * Batches set on a plugin module and on a wire.
+     */
+    public void testBatch() throws InterruptedException
+    {
+        System.out.println("testBatch");
+        RecordingPlugin.s_records.clear();
+        UpperCaseBatchPlugin.s_largestBatch = 0;
+
+        PluginModule module1 = new PluginModule(UpperCaseBatchPlugin.class);
+        PluginModule module2 = new PluginModule(RecordingPlugin.class);
+
+        // one at a time, to keep outputs in order
+        module1.setParallelism(1);
+        module2.setParallelism(1);
+
+        // linger long enough for all the inputs to arrive
+        module1.setBatch(8, 100000);
+
+        Workflow workflow = new Workflow();
+        workflow.setName("Batch");
+        workflow.add(module1);
+        workflow.add(module2);
+        workflow.wire(module1, Output.DEFAULT, module2, Input.DEFAULT, Wire.UNBOUNDED, 4, 1000);
+        workflow.finalize();
+
+        for (int i = 0; i < 20; ++i) {
+            workflow.input(new ItemWrapper("item" + i));
+        }
+        for (int i = 0; i < 20; ++i) {
+            assertEquals("ITEM" + i, RecordingPlugin.s_records.poll(10, TimeUnit.SECONDS));
+        }
+        assertTrue(UpperCaseBatchPlugin.s_largestBatch > 1);
+        assertTrue(UpperCaseBatchPlugin.s_largestBatch <= 8);
+        workflow.quit();
+    }
+
+    /**
+     * A linear chain of plugins runs on a single thread when fused, and on
+     * a thread per plugin otherwise.
+     */
+    public void testFusion() throws InterruptedException
+    {
+        System.out.println("testFusion");
+        assertEquals(1, countThreads(true));
+        assertEquals(2, countThreads(false));
+    }
+
+    private int countThreads(boolean fusion) throws InterruptedException {
+        RecordingPlugin.s_records.clear();
+
+        PluginModule module1 = new PluginModule(ThreadPlugin.class);
+        module1.setName("ONE");
+        PluginModule module2 = new PluginModule(ThreadPlugin.class);
+        module2.setName("TWO");
+        PluginModule module3 = new PluginModule(RecordingPlugin.class);
+
+        Workflow workflow = new Workflow();
+        workflow.setName("Fusion");
+        workflow.setFusion(fusion);
+        workflow.add(module1);
+        workflow.add(module2);
+        workflow.add(module3);
+        workflow.wire(module1, module2);
+        workflow.wire(module2, module3);
+        workflow.finalize();
+
+        workflow.input(new ItemWrapper("item"));
+        String record = RecordingPlugin.s_records.poll(10, TimeUnit.SECONDS);
+        workflow.quit();
+
+        String[] words = record.split(" ");
+        assertEquals("item", words[0]);
+        return words[1].equals(words[2]) ? 1 : 2;
+    }
+
+    /**
+     * Priorities follow the longest path to the end of the workflow, and a
+     * cycle fails finalize().
+     */
+    public void testCriticalPath()
+    {
+        System.out.println("testCriticalPath");
+
+        // A feeds a long branch B -> C -> D and a short branch E
+        PluginModule a = new PluginModule(DummyPlugin.class);
+        a.setName("A");
+        PluginModule b = threadPlugin("B");
+        PluginModule c = threadPlugin("C");
+        PluginModule d = threadPlugin("D");
+        PluginModule e = threadPlugin("E");
+
+        Workflow workflow = new Workflow();
+        workflow.setName("CriticalPath");
+        workflow.setFusion(false);
+        workflow.setSharedPool(true);
+        workflow.add(a);
+        workflow.add(b);
+        workflow.add(c);
+        workflow.add(d);
+        workflow.add(e);
+        workflow.wire(a, DummyPlugin.LOWER, b, Input.DEFAULT);
+        workflow.wire(b, c);
+        workflow.wire(c, d);
+        workflow.wire(a, DummyPlugin.UPPER, e, Input.DEFAULT);
+        workflow.finalize();
+
+        assertEquals(4, workflow.getPriority(a));
+        assertEquals(3, workflow.getPriority(b));
+        assertEquals(1, workflow.getPriority(d));
+        assertEquals(1, workflow.getPriority(e));
+        workflow.quit();
+
+        // C feeds back into B
+        Workflow cyclic = new Workflow();
+        cyclic.setName("Cyclic");
+        b = threadPlugin("B");
+        c = threadPlugin("C");
+        cyclic.add(b);
+        cyclic.add(c);
+        cyclic.wire(b, c);
+        cyclic.wire(c, b);
+        try {
+            cyclic.finalize();
+            fail("Cycle not detected");
+        }
+        catch (IllegalStateException exception) {
+            assertTrue(exception.getMessage().contains("cycle"));
+        }
+    }
+
+    /**
+     * An ordered workflow outputs images in the order they were input, even
+     * though parallel instances finish out of order.
+     */
+    public void testOrdered() throws InterruptedException
+    {
+        System.out.println("testOrdered");
+
+        PluginModule module = new PluginModule(DelayPlugin.class);
+        module.setParallelism(4);
+
+        Workflow workflow = new Workflow();
+        workflow.setName("Ordered");
+        workflow.setOrdered(true);
+        workflow.add(module);
+        workflow.finalize();
+
+        final BlockingQueue<String> outputs = new LinkedBlockingQueue<String>();
+        workflow.setOutputListener(new IOutputListener() {
+            public void outputImage(String name, ItemWrapper image) {
+                outputs.add((String) image.getItem());
+            }
+        });
+        for (int i = 0; i < DelayPlugin.COUNT; ++i) {
+            workflow.input(new ItemWrapper(String.valueOf(i)));
+        }
+        for (int i = 0; i < DelayPlugin.COUNT; ++i) {
+            assertEquals(String.valueOf(i), outputs.poll(10, TimeUnit.SECONDS));
+        }
+        workflow.quit();
+    }
+
+    /**
+     * A listener set before the module is added to a workflow still hears
+     * its outputs.
+     */
+    public void testEarlyListener() throws InterruptedException
+    {
+        System.out.println("testEarlyListener");
+
+        final BlockingQueue<String> outputs = new LinkedBlockingQueue<String>();
+        PluginModule module = new PluginModule(DummyPlugin.class);
+        module.setOutputListener(DummyPlugin.LOWER, new IOutputListener() {
+            public void outputImage(String name, ItemWrapper image) {
+                outputs.add((String) image.getItem());
+            }
+        });
+
+        Workflow workflow = new Workflow();
+        workflow.add(module);
+        // not finalized, that would promote the output and replace the listener
+        workflow.wireInput(module);
+        workflow.input(new ItemWrapper("Early"));
+        assertEquals("early", outputs.poll(10, TimeUnit.SECONDS));
+        workflow.quit();
+    }
+
+    /**
+     * Workflows have schedulers of their own; quitting one leaves the other
+     * running.
+     */
+    public void testIndependentWorkflows() throws InterruptedException
+    {
+        System.out.println("testIndependentWorkflows");
+        BlockingQueue<String> outputs1 = new LinkedBlockingQueue<String>();
+        BlockingQueue<String> outputs2 = new LinkedBlockingQueue<String>();
+        Workflow workflow1 = upperCaseWorkflow("One", outputs1);
+        Workflow workflow2 = upperCaseWorkflow("Two", outputs2);
+        assertNotSame(workflow1.getScheduler(), workflow2.getScheduler());
+
+        workflow1.input(new ItemWrapper("one"));
+        workflow2.input(new ItemWrapper("two"));
+        assertEquals("ONE", outputs1.poll(10, TimeUnit.SECONDS));
+        assertEquals("TWO", outputs2.poll(10, TimeUnit.SECONDS));
+
+        workflow1.quit();
+        workflow2.input(new ItemWrapper("again"));
+        assertEquals("AGAIN", outputs2.poll(10, TimeUnit.SECONDS));
+        assertTrue(outputs1.isEmpty());
+        workflow2.quit();
+    }
+
+    private Workflow upperCaseWorkflow(String workflowName, final BlockingQueue<String> outputs) {
+        PluginModule module = new PluginModule(DummyPlugin.class);
+        Workflow workflow = new Workflow();
+        workflow.setName(workflowName);
+        workflow.add(module);
+        workflow.finalize();
+        workflow.setOutputListener(DummyPlugin.UPPER, new IOutputListener() {
+            public void outputImage(String name, ItemWrapper image) {
+                outputs.add((String) image.getItem());
+            }
+        });
+        return workflow;
+    }
+
+    private PluginModule threadPlugin(String name) {
+        PluginModule module = new PluginModule(ThreadPlugin.class);
+        module.setName(name);
+        return module;
+    }
 }
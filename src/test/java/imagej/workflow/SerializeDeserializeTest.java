@@ -32,6 +32,14 @@ package imagej.workflow;
 
 import imagej.workflow.plugin.annotations.Input;
 import imagej.workflow.plugin.annotations.Output;
+import imagej.workflow.util.binary.BinaryException;
+import imagej.workflow.util.binary.BinaryWriter;
+import imagej.workflow.util.xmllight.XMLReader;
+import imagej.workflow.util.xmllight.XMLWriter;
+
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -101,4 +109,310 @@ public class SerializeDeserializeTest extends TestCase
         assertTrue(xml1.equals(xml2));
     }
 
+    /**
+     * Round trip a bounded wire to/from XML.
+     */
+    public void testWireCapacity()
+    {
+        System.out.println("testWireCapacity");
+
+        DummyComponent testComponentA = new DummyComponent();
+        testComponentA.setName("A");
+        testComponentA.setInputNames(new String[] { Input.DEFAULT });
+        testComponentA.setOutputNames(new String[] { Output.DEFAULT });
+        DummyComponent testComponentB = new DummyComponent();
+        testComponentB.setName("B");
+        testComponentB.setInputNames(new String[] { Input.DEFAULT } );
+        testComponentB.setOutputNames(new String[] { Output.DEFAULT });
+
+        ModuleFactory.getInstance().register(DummyComponent.TESTCOMPONENT, DummyComponentFactory.getInstance());
+
+        Workflow workFlow1 = new Workflow();
+        workFlow1.setName("workFlow1");
+        workFlow1.add(testComponentA);
+        workFlow1.add(testComponentB);
+        workFlow1.wire(testComponentA, Output.DEFAULT, testComponentB, Input.DEFAULT, 5);
+        workFlow1.wireInput(testComponentA);
+        workFlow1.wireOutput(testComponentB);
+
+        String xml1 = workFlow1.toXML();
+        assertTrue(xml1.contains("<capacity>5</capacity>"));
+
+        Workflow workFlow2 = new Workflow();
+        workFlow2.fromXML(xml1);
+        assertTrue(5 == workFlow2.getWires()[0].getCapacity());
+        assertTrue(xml1.equals(workFlow2.toXML()));
+    }
+
+    /**
+     * Round trip a batched wire to/from XML and binary.
+     */
+    public void testWireBatch() throws Exception
+    {
+        System.out.println("testWireBatch");
+
+        DummyComponent testComponentA = new DummyComponent();
+        testComponentA.setName("A");
+        testComponentA.setInputNames(new String[] { Input.DEFAULT });
+        testComponentA.setOutputNames(new String[] { Output.DEFAULT });
+        DummyComponent testComponentB = new DummyComponent();
+        testComponentB.setName("B");
+        testComponentB.setInputNames(new String[] { Input.DEFAULT } );
+        testComponentB.setOutputNames(new String[] { Output.DEFAULT });
+
+        ModuleFactory.getInstance().register(DummyComponent.TESTCOMPONENT, DummyComponentFactory.getInstance());
+
+        Workflow workFlow1 = new Workflow();
+        workFlow1.setName("workFlow1");
+        workFlow1.add(testComponentA);
+        workFlow1.add(testComponentB);
+        workFlow1.wire(testComponentA, Output.DEFAULT, testComponentB, Input.DEFAULT, 5, 16, 200);
+        workFlow1.wireInput(testComponentA);
+        workFlow1.wireOutput(testComponentB);
+
+        String xml1 = workFlow1.toXML();
+        assertTrue(xml1.contains("<batch>16</batch>"));
+        assertTrue(xml1.contains("<linger>200</linger>"));
+
+        Workflow workFlow2 = new Workflow();
+        workFlow2.fromXML(xml1);
+        assertEquals(16, workFlow2.getWires()[0].getBatchSize());
+        assertEquals(200, workFlow2.getWires()[0].getLingerMicros());
+        assertTrue(xml1.equals(workFlow2.toXML()));
+
+        ByteBuffer binary = workFlow1.toBinary();
+        assertTrue(xml1.equals(ModuleFactory.getInstance().create(binary, null).toXML()));
+        WorkflowInfo workflowInfo = new WorkflowInfo(xml1, binary);
+        assertEquals(16, workflowInfo.getWireInfos()[0].getBatchSize());
+
+        // batch without capacity
+        Workflow workFlow3 = new Workflow();
+        workFlow3.fromXML(xml1.replace("<capacity>5</capacity>", ""));
+        assertEquals(Wire.UNBOUNDED, workFlow3.getWires()[0].getCapacity());
+        assertEquals(16, workFlow3.getWires()[0].getBatchSize());
+    }
+
+    /**
+     * Round trip a workflow nested within a workflow to/from XML.  The inner
+     * workflow has its own <module> and <name> tags within the outer <module>.
+     */
+    public void testNestedWorkflow() throws Exception
+    {
+        System.out.println("testNestedWorkflow");
+
+        DummyComponent testComponentA = new DummyComponent();
+        testComponentA.setName("A");
+        testComponentA.setInputNames(new String[] { Input.DEFAULT });
+        testComponentA.setOutputNames(new String[] { Output.DEFAULT });
+        DummyComponent testComponentB = new DummyComponent();
+        testComponentB.setName("B");
+        testComponentB.setInputNames(new String[] { Input.DEFAULT } );
+        testComponentB.setOutputNames(new String[] { Output.DEFAULT });
+        DummyComponent testComponentC = new DummyComponent();
+        testComponentC.setName("C");
+        testComponentC.setInputNames(new String[] { Input.DEFAULT } );
+        testComponentC.setOutputNames(new String[] { Output.DEFAULT });
+
+        ModuleFactory.getInstance().register(DummyComponent.TESTCOMPONENT, DummyComponentFactory.getInstance());
+
+        Workflow inner = new Workflow();
+        inner.setName("inner");
+        inner.add(testComponentA);
+        inner.add(testComponentB);
+        inner.wire(testComponentA, testComponentB);
+        inner.wireInput(testComponentA);
+        inner.wireOutput(testComponentB);
+
+        Workflow outer1 = new Workflow();
+        outer1.setName("outer");
+        outer1.add(inner);
+        outer1.add(testComponentC);
+        outer1.wire(inner, testComponentC);
+        outer1.wireInput(inner);
+        outer1.wireOutput(testComponentC);
+
+        String xml1 = outer1.toXML();
+        System.out.println("outer1 XML [\n" + xml1 + "]");
+
+        Workflow outer2 = new Workflow();
+        assertTrue(outer2.fromXML(xml1));
+        assertTrue(xml1.equals(outer2.toXML()));
+
+        // nested workflows stream into the same writer
+        StringWriter writer = new StringWriter();
+        XMLWriter xmlWriter = new XMLWriter(writer);
+        outer2.toXML(xmlWriter);
+        assertNull(xmlWriter.getException());
+        assertTrue(xml1.equals(writer.toString()));
+
+        // modules are read in place, leaving the reader just past each one
+        String pluginXML = new PluginModule(DummyPlugin.class).toXML();
+        XMLReader reader = new XMLReader(pluginXML + xml1);
+        IModule plugin = ModuleFactory.getInstance().create(reader, null);
+        IModule outer3 = ModuleFactory.getInstance().create(reader, null);
+        assertTrue(reader.isAtEnd());
+        assertTrue(pluginXML.equals(plugin.toXML()));
+        assertTrue(xml1.equals(outer3.toXML()));
+    }
+
+    /**
+     * Round trip a nested workflow to/from the binary format.  The dummy
+     * components have no binary form and go through as XML.
+     */
+    public void testBinary() throws Exception
+    {
+        System.out.println("testBinary");
+
+        DummyComponent testComponentA = new DummyComponent();
+        testComponentA.setName("A");
+        testComponentA.setInputNames(new String[] { Input.DEFAULT });
+        testComponentA.setOutputNames(new String[] { Output.DEFAULT });
+        DummyComponent testComponentB = new DummyComponent();
+        testComponentB.setName("B");
+        testComponentB.setInputNames(new String[] { Input.DEFAULT } );
+        testComponentB.setOutputNames(new String[] { Output.DEFAULT });
+
+        ModuleFactory.getInstance().register(DummyComponent.TESTCOMPONENT, DummyComponentFactory.getInstance());
+
+        Workflow inner = new Workflow();
+        inner.setName("inner");
+        inner.add(testComponentA);
+        inner.wireInput(testComponentA);
+        inner.wireOutput(testComponentA);
+
+        Workflow outer1 = new Workflow();
+        outer1.setName("outer");
+        outer1.add(inner);
+        outer1.add(testComponentB);
+        outer1.wire(inner, Output.DEFAULT, testComponentB, Input.DEFAULT, 3);
+        outer1.wireInput(inner);
+        outer1.wireOutput(testComponentB);
+
+        String xml1 = outer1.toXML();
+        ByteBuffer binary = outer1.toBinary();
+
+        IModule outer2 = ModuleFactory.getInstance().create(binary, null);
+        assertTrue(xml1.equals(outer2.toXML()));
+
+        WorkflowInfo workflowInfo = new WorkflowInfo(xml1, binary);
+        assertEquals("outer", workflowInfo.getName());
+        assertEquals(2, workflowInfo.getModuleNames().length);
+        assertEquals(3, workflowInfo.getWireInfos()[0].getCapacity());
+    }
+
+    /**
+     * Version 1 binaries, whose wires have no batch or linger, still load.
+     */
+    public void testBinaryVersion1() throws Exception
+    {
+        System.out.println("testBinaryVersion1");
+
+        DummyComponent testComponentA = new DummyComponent();
+        testComponentA.setName("A");
+        testComponentA.setInputNames(new String[] { Input.DEFAULT });
+        testComponentA.setOutputNames(new String[] { Output.DEFAULT });
+        DummyComponent testComponentB = new DummyComponent();
+        testComponentB.setName("B");
+        testComponentB.setInputNames(new String[] { Input.DEFAULT } );
+        testComponentB.setOutputNames(new String[] { Output.DEFAULT });
+
+        ModuleFactory.getInstance().register(DummyComponent.TESTCOMPONENT, DummyComponentFactory.getInstance());
+
+        // write a version 1 binary by hand
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeInt(BinaryWriter.MAGIC);
+        writer.writeInt(1);
+        int record = writer.startRecord(Workflow.WORKFLOW);
+        writer.writeString("workFlow1");
+        writer.writeInt(2);
+        writer.writeString("A");
+        ModuleFactory.toBinary(writer, testComponentA);
+        writer.writeString("B");
+        ModuleFactory.toBinary(writer, testComponentB);
+        writer.writeInt(1);
+        writer.writeString("A");
+        writer.writeString(Output.DEFAULT);
+        writer.writeString("B");
+        writer.writeString(Input.DEFAULT);
+        writer.writeInt(3);
+        writer.writeInt(1);
+        writer.writeString(Input.DEFAULT);
+        writer.writeString("A");
+        writer.writeString(Input.DEFAULT);
+        writer.writeInt(1);
+        writer.writeString(Output.DEFAULT);
+        writer.writeString("B");
+        writer.writeString(Output.DEFAULT);
+        writer.endRecord(record);
+        ByteBuffer binary = writer.toByteBuffer();
+
+        Workflow workFlow1 = new Workflow();
+        workFlow1.setName("workFlow1");
+        workFlow1.add(testComponentA);
+        workFlow1.add(testComponentB);
+        workFlow1.wire(testComponentA, Output.DEFAULT, testComponentB, Input.DEFAULT, 3);
+        workFlow1.wireInput(testComponentA);
+        workFlow1.wireOutput(testComponentB);
+        String xml1 = workFlow1.toXML();
+
+        IModule workFlow2 = ModuleFactory.getInstance().create(binary, null);
+        assertTrue(xml1.equals(workFlow2.toXML()));
+        Wire wire = ((Workflow) workFlow2).getWires()[0];
+        assertEquals(3, wire.getCapacity());
+        assertEquals(Wire.NO_BATCH, wire.getBatchSize());
+        assertEquals(0, wire.getLingerMicros());
+
+        WorkflowInfo workflowInfo = new WorkflowInfo(xml1, binary);
+        assertEquals(3, workflowInfo.getWireInfos()[0].getCapacity());
+        assertEquals(Wire.NO_BATCH, workflowInfo.getWireInfos()[0].getBatchSize());
+
+        // unknown versions are still rejected
+        writer = new BinaryWriter();
+        writer.writeInt(BinaryWriter.MAGIC);
+        writer.writeInt(BinaryWriter.VERSION + 1);
+        try {
+            ModuleFactory.getInstance().create(writer.toByteBuffer(), null);
+            fail("expected BinaryException");
+        }
+        catch (BinaryException e) {
+        }
+    }
+
+    /**
+     * Instances created from a compiled template match the original.
+     */
+    public void testTemplate()
+    {
+        System.out.println("testTemplate");
+
+        DummyComponent testComponentA = new DummyComponent();
+        testComponentA.setName("A");
+        testComponentA.setInputNames(new String[] { "ONE" });
+        testComponentA.setOutputNames(new String[] { "TWO" });
+        PluginModule pluginModule = new PluginModule(DummyPlugin.class);
+        pluginModule.setName("P");
+
+        ModuleFactory.getInstance().register(DummyComponent.TESTCOMPONENT, DummyComponentFactory.getInstance());
+
+        Workflow workFlow1 = new Workflow();
+        workFlow1.setName("workFlow1");
+        workFlow1.add(testComponentA);
+        workFlow1.add(pluginModule);
+        workFlow1.wireInput("ONE", testComponentA, "ONE");
+        workFlow1.wireOutput("TWO", testComponentA, "TWO");
+        workFlow1.finalize();
+
+        String xml1 = workFlow1.toXML();
+        ModuleTemplate template = ModuleTemplate.compile(workFlow1);
+        Workflow workFlow2 = (Workflow) template.instantiate("one");
+        Workflow workFlow3 = (Workflow) template.instantiate("two");
+
+        assertNotSame(workFlow2, workFlow3);
+        assertTrue(xml1.equals(workFlow2.toXML()));
+        assertTrue(xml1.equals(workFlow3.toXML()));
+
+        workFlow1.quit();
+        workFlow2.quit();
+        workFlow3.quit();
+    }
 }
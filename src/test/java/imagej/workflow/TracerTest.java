@@ -0,0 +1,109 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package imagej.workflow;
+
+import imagej.workflow.plugin.ItemWrapper;
+import imagej.workflow.trace.Tracer;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests tracing images through a workflow.
+ *
+ * @author aivar
+ */
+public class TracerTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public TracerTest(String testName) {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(TracerTest.class);
+    }
+
+    public void testTrace() throws Exception
+    {
+        System.out.println("testTrace");
+        RecordingPlugin.s_records.clear();
+
+        PluginModule module1 = new PluginModule(ThreadPlugin.class);
+        PluginModule module2 = new PluginModule(RecordingPlugin.class);
+
+        Workflow workflow = new Workflow();
+        workflow.setName("Trace");
+        workflow.setFusion(false);
+        workflow.add(module1);
+        workflow.add(module2);
+        workflow.wire(module1, module2);
+        workflow.finalize();
+
+        Tracer tracer = new Tracer();
+        tracer.setSampling(2);
+        workflow.setTracer(tracer);
+        for (int i = 0; i < 4; ++i) {
+            workflow.input(new ItemWrapper("item"));
+        }
+        for (int i = 0; i < 4; ++i) {
+            assertNotNull(RecordingPlugin.s_records.poll(10, TimeUnit.SECONDS));
+        }
+        workflow.quit();
+
+        // spans may still be recorded after the last plugin ran
+        long deadline = System.currentTimeMillis() + 10000;
+        while (tracer.getSpanCount() < 8 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // two traces, each waits in two queues and runs in two plugins
+        assertEquals(8, tracer.getSpanCount());
+        StringWriter writer = new StringWriter();
+        tracer.writeChromeTrace(writer);
+        String json = writer.toString();
+        assertTrue(json.startsWith("{\"traceEvents\":["));
+        assertTrue(json.endsWith("],\"displayTimeUnit\":\"ms\"}"));
+        assertTrue(json.contains("\"name\":\"ThreadPlugin\",\"cat\":\"plugin\",\"ph\":\"X\""));
+        assertTrue(json.contains("\"name\":\"RecordingPlugin.INPUT\",\"cat\":\"queue\",\"id\":2"));
+        assertTrue(json.contains("\"traces\":[1]"));
+        assertFalse(json.contains("\"traces\":[3]"));
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2010 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package imagej.workflow;
+
+import imagej.workflow.debug.DebugInfo;
+import imagej.workflow.debug.PreviewInfo;
+import imagej.workflow.debug.WorkflowDebugger;
+import imagej.workflow.plugin.ItemWrapper;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.List;
+import javax.imageio.ImageIO;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the workflow debugger.
+ *
+ * @author aivar
+ */
+public class WorkflowDebuggerTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public WorkflowDebuggerTest(String testName) {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(WorkflowDebuggerTest.class);
+    }
+
+    /**
+     * Only sampled items are captured, and only the latest ones are kept.
+     */
+    public void testSampling()
+    {
+        System.out.println("testSampling");
+        WorkflowDebugger debugger = new WorkflowDebugger(4);
+        debugger.setSampling(2);
+        debugger.setSampling("B", "out", 1);
+
+        for (int i = 0; i < 20; ++i) {
+            for (String instanceId : new String[] { "A", "B" }) {
+                if (debugger.sample(instanceId, "out")) {
+                    debugger.addDebugInfo(new DebugInfo(instanceId, "out to in",
+                            new ItemWrapper(instanceId + i)));
+                }
+            }
+        }
+
+        // A only every second item, B every item; only the latest four kept
+        List<PreviewInfo> previewInfoList = debugger.getPreviewInfoList();
+        assertEquals(4, previewInfoList.size());
+        assertEquals("B17", previewInfoList.get(0).getContent());
+        assertEquals("A18", previewInfoList.get(1).getContent());
+        assertEquals("B18", previewInfoList.get(2).getContent());
+        assertEquals("B19", previewInfoList.get(3).getContent());
+        assertEquals(26, debugger.getLostCount());
+
+        // previews are bounded too
+        for (int i = 0; i < 3; ++i) {
+            debugger.addDebugInfo(new DebugInfo("C", "out to in", new ItemWrapper("C" + i)));
+        }
+        previewInfoList = debugger.getPreviewInfoList();
+        assertEquals(4, previewInfoList.size());
+        assertEquals("B19", previewInfoList.get(0).getContent());
+        assertEquals("C2", previewInfoList.get(3).getContent());
+
+        debugger.clear();
+        assertTrue(debugger.getPreviewInfoList().isEmpty());
+    }
+
+    /**
+     * Images are previewed as thumbnails in the background, once per capture,
+     * and evicted when over the limits.
+     */
+    public void testPreviews() throws Exception
+    {
+        System.out.println("testPreviews");
+        WorkflowDebugger debugger = new WorkflowDebugger(8);
+        debugger.setThumbnailSize(16);
+
+        // same image along two wires
+        BufferedImage image = new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB);
+        debugger.addDebugInfo(new DebugInfo("A", "out to first", new ItemWrapper(image)));
+        debugger.addDebugInfo(new DebugInfo("A", "out to second", new ItemWrapper(image)));
+        debugger.addDebugInfo(new DebugInfo("B", "out to in", new ItemWrapper("text")));
+
+        // text is ready right away
+        debugger.getPreviewInfoList();
+        assertTrue(debugger.awaitPreviews(10000));
+        List<PreviewInfo> previewInfoList = debugger.getPreviewInfoList();
+        assertEquals(3, previewInfoList.size());
+        assertEquals("out to first", previewInfoList.get(0).getDesc());
+        assertEquals("text", previewInfoList.get(2).getContent());
+        String content = previewInfoList.get(0).getContent();
+        assertEquals(content, previewInfoList.get(1).getContent());
+
+        // thumbnail fits the size
+        String webName = content.substring(content.indexOf("src='") + 5, content.indexOf("'/>"));
+        File file = new File("web/" + webName);
+        assertTrue(file.getName().endsWith(".jpg"));
+        BufferedImage thumbnail = ImageIO.read(file);
+        assertEquals(16, thumbnail.getWidth());
+        assertEquals(8, thumbnail.getHeight());
+
+        // an image changed in place is rendered again when captured again
+        image.getGraphics().fillRect(0, 0, 200, 100);
+        debugger.addDebugInfo(new DebugInfo("A", "out to first", new ItemWrapper(image)));
+        debugger.getPreviewInfoList();
+        assertTrue(debugger.awaitPreviews(10000));
+        previewInfoList = debugger.getPreviewInfoList();
+        assertEquals(4, previewInfoList.size());
+        assertFalse(content.equals(previewInfoList.get(3).getContent()));
+
+        // no room for files
+        debugger.setPreviewLimits(0, 0);
+        assertFalse(file.exists());
+        previewInfoList = debugger.getPreviewInfoList();
+        assertEquals(1, previewInfoList.size());
+        assertEquals("text", previewInfoList.get(0).getContent());
+        debugger.clear();
+    }
+
+    /**
+     * Previews may be asked for by instance, and just those since the last
+     * poll.
+     */
+    public void testPreviewsSince()
+    {
+        System.out.println("testPreviewsSince");
+        WorkflowDebugger debugger = new WorkflowDebugger(4);
+        for (int i = 0; i < 3; ++i) {
+            debugger.addDebugInfo(new DebugInfo("A", "out to in", new ItemWrapper("A" + i)));
+            debugger.addDebugInfo(new DebugInfo("B", "out to in", new ItemWrapper("B" + i)));
+        }
+
+        // only the latest four kept
+        List<PreviewInfo> previewInfoList = debugger.getPreviewInfoList("A");
+        assertEquals(2, previewInfoList.size());
+        assertEquals("A1", previewInfoList.get(0).getContent());
+        assertEquals("A2", previewInfoList.get(1).getContent());
+        assertTrue(debugger.getPreviewInfoList("C").isEmpty());
+
+        // poll for deltas
+        previewInfoList = debugger.getPreviewInfoListSince(0);
+        assertEquals(4, previewInfoList.size());
+        long serial = previewInfoList.get(3).getSerial();
+        assertTrue(debugger.getPreviewInfoListSince(serial).isEmpty());
+
+        debugger.addDebugInfo(new DebugInfo("A", "out to in", new ItemWrapper("A3")));
+        previewInfoList = debugger.getPreviewInfoListSince(serial);
+        assertEquals(1, previewInfoList.size());
+        assertEquals("A3", previewInfoList.get(0).getContent());
+        assertEquals(serial + 1, previewInfoList.get(0).getSerial());
+
+        // A1 was dropped
+        previewInfoList = debugger.getPreviewInfoListSince("A", 0);
+        assertEquals(2, previewInfoList.size());
+        assertEquals("A2", previewInfoList.get(0).getContent());
+        assertEquals("A3", previewInfoList.get(1).getContent());
+        assertEquals(2, debugger.getPreviewInfoListSince("B", 0).size());
+        debugger.clear();
+    }
+}